@@ -53,6 +53,8 @@ public interface PropertyController extends PropertyManager {
 
     void setTradingDuration(String site, String instrument, Duration value);
 
+    void setTradingGap(String site, String instrument, Duration value);
+
     void setFundingOffset(String site, String instrument, BigDecimal value);
 
     void setFundingMultiplierProducts(String site, String instrument, List<Composite> values);
@@ -58,6 +58,8 @@ public interface PropertyManager {
 
     Duration getTradingDuration(String site, String instrument);
 
+    Duration getTradingGap(String site, String instrument);
+
     BigDecimal getFundingOffset(String site, String instrument);
 
     List<Composite> getFundingMultiplierProducts(String site, String instrument);
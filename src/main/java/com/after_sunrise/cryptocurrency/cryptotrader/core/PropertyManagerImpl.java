@@ -472,6 +472,20 @@ public class PropertyManagerImpl implements PropertyController {
         set(TRADING_DURATION, site, instrument, value, Duration::toMillis);
     }
 
+    @Override
+    public Duration getTradingGap(String site, String instrument) {
+
+        BigDecimal value = getDecimal(site, instrument, TRADING_GAP, ZERO, null, ZERO);
+
+        return Duration.ofMillis(value.longValue());
+
+    }
+
+    @Override
+    public void setTradingGap(String site, String instrument, Duration value) {
+        set(TRADING_GAP, site, instrument, value, Duration::toMillis);
+    }
+
     @Override
     public BigDecimal getFundingOffset(String site, String instrument) {
         return getDecimal(site, instrument, FUNDING_OFFSET, null, null, ZERO);
@@ -52,6 +52,8 @@ public enum PropertyType {
 
     TRADING_DURATION,
 
+    TRADING_GAP,
+
     FUNDING_OFFSET,
 
     FUNDING_MULTIPLIER_PRODUCTS,
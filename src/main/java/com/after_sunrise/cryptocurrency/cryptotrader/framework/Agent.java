@@ -2,6 +2,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author takanori.takase
@@ -13,4 +14,12 @@ public interface Agent extends Service {
 
     Map<Instruction, Boolean> reconcile(Context context, Request request, Map<Instruction, String> instructions);
 
+    /**
+     * Reconciles without holding the calling thread, where the implementation supports it.
+     */
+    default CompletableFuture<Map<Instruction, Boolean>> reconcileAsync(
+            Context context, Request request, Map<Instruction, String> instructions) {
+        return CompletableFuture.completedFuture(reconcile(context, request, instructions));
+    }
+
 }
@@ -0,0 +1,172 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * OHLCV of the trades within (timestamp - resolution, timestamp].
+ * The close is the average price of the trades at the latest time within the bar,
+ * same as the price of the latest trade in the {@link TradeStore}.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class Bar {
+
+    public static final List<Duration> RESOLUTIONS = Collections.unmodifiableList(Arrays.asList(
+            Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofMinutes(1), Duration.ofMinutes(5)
+    ));
+
+    private final Instant timestamp;
+
+    private final double open;
+
+    private final double high;
+
+    private final double low;
+
+    private final double close;
+
+    private final double volume;
+
+    private final double notional;
+
+    Bar(long time, double open, double high, double low, double close, double volume, double notional) {
+        this.timestamp = Instant.ofEpochMilli(time);
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.notional = notional;
+    }
+
+    public static long ceiling(long time, long resolution) {
+        return -Math.floorDiv(-time, resolution) * resolution;
+    }
+
+    /**
+     * Folds trades, visited in ascending order, into bars within [fromTime, toTime).
+     */
+    public static class Aggregator implements Consumer<Trade> {
+
+        private final long resolution;
+
+        private final long from;
+
+        private final long to;
+
+        private final Consumer<? super Bar> consumer;
+
+        private long time = Long.MIN_VALUE;
+
+        private double open;
+
+        private double high;
+
+        private double low;
+
+        private double close;
+
+        private double closing;
+
+        private long last;
+
+        private double volume;
+
+        private double notional;
+
+        public Aggregator(Duration resolution, Instant fromTime, Instant toTime, Consumer<? super Bar> consumer) {
+            this.resolution = Math.max(resolution.toMillis(), 1);
+            this.from = fromTime == null ? Long.MIN_VALUE : fromTime.toEpochMilli();
+            this.to = toTime == null ? Long.MAX_VALUE : toTime.toEpochMilli();
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(Trade t) {
+
+            if (t == null || t.getTimestamp() == null || t.getPrice() == null || t.getSize() == null) {
+                return;
+            }
+
+            if (t.getPrice().signum() <= 0 || t.getSize().signum() <= 0) {
+                return;
+            }
+
+            long id = ceiling(t.getTimestamp().toEpochMilli(), resolution);
+
+            if (id < from || id >= to || id < time) {
+                return;
+            }
+
+            double price = t.getPrice().doubleValue();
+
+            double size = t.getSize().doubleValue();
+
+            long millis = t.getTimestamp().toEpochMilli();
+
+            if (id != time) {
+
+                flush();
+
+                time = id;
+
+                open = high = low = price;
+
+                volume = notional = 0;
+
+                last = Long.MIN_VALUE;
+
+            }
+
+            high = Math.max(high, price);
+
+            low = Math.min(low, price);
+
+            if (millis == last) {
+
+                close = (close * closing + price * size) / (closing + size);
+
+                closing += size;
+
+            } else {
+
+                close = price;
+
+                closing = size;
+
+                last = millis;
+
+            }
+
+            volume += size;
+
+            notional += size * price;
+
+        }
+
+        public void flush() {
+
+            if (time != Long.MIN_VALUE && volume > 0) {
+                consumer.accept(new Bar(time, open, high, low, close, volume, notional));
+            }
+
+            volume = 0;
+
+        }
+
+    }
+
+}
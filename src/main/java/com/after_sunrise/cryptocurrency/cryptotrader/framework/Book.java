@@ -0,0 +1,585 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static java.math.RoundingMode.CEILING;
+import static java.math.RoundingMode.FLOOR;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public final class Book {
+
+    public static final Book EMPTY = new Book(new Side(true), new Side(false));
+
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final Side asks;
+
+    private final Side bids;
+
+    private Book(Side asks, Side bids) {
+        this.asks = asks;
+        this.bids = bids;
+    }
+
+    public static Book of(Map<BigDecimal, BigDecimal> asks, Map<BigDecimal, BigDecimal> bids) {
+        return new Book(Side.of(asks, true), Side.of(bids, false));
+    }
+
+    public Side getAsks() {
+        return asks;
+    }
+
+    public Side getBids() {
+        return bids;
+    }
+
+    @Override
+    public String toString() {
+        return "Book(asks=" + asks + ", bids=" + bids + ")";
+    }
+
+    public static final class Side {
+
+        private final boolean ascending;
+
+        private final int scale;
+
+        private final long[] keys;
+
+        private final double[] sizes;
+
+        private final double[] volumes;
+
+        private final double[] notionals;
+
+        private Side(boolean ascending) {
+            this(ascending, 0, new long[0], new double[0]);
+        }
+
+        private Side(boolean ascending, int scale, long[] keys, double[] sizes) {
+
+            this.ascending = ascending;
+
+            this.scale = scale;
+
+            this.keys = keys;
+
+            this.sizes = sizes;
+
+            this.volumes = new double[keys.length + 1];
+
+            this.notionals = new double[keys.length + 1];
+
+            for (int i = 0; i < keys.length; i++) {
+
+                volumes[i + 1] = volumes[i] + sizes[i];
+
+                notionals[i + 1] = notionals[i] + sizes[i] * getPrice(i).doubleValue();
+
+            }
+
+        }
+
+        static Side of(Map<BigDecimal, BigDecimal> levels, boolean ascending) {
+
+            if (levels == null || levels.isEmpty()) {
+                return new Side(ascending);
+            }
+
+            List<Map.Entry<BigDecimal, BigDecimal>> entries = new ArrayList<>(levels.size());
+
+            int scale = 0;
+
+            BigDecimal max = BigDecimal.ZERO;
+
+            for (Map.Entry<BigDecimal, BigDecimal> entry : levels.entrySet()) {
+
+                if (entry.getKey() == null || entry.getValue() == null || entry.getValue().signum() <= 0) {
+                    continue;
+                }
+
+                if (entry.getKey().abs().compareTo(LONG_MAX) > 0) {
+                    continue;
+                }
+
+                entries.add(entry);
+
+                scale = Math.max(scale, entry.getKey().stripTrailingZeros().scale());
+
+                max = max.max(entry.getKey().abs());
+
+            }
+
+            // Finest tick is coarsened if the largest price cannot be indexed with it, merging the rounded levels.
+
+            while (scale > 0 && max.movePointRight(scale).compareTo(LONG_MAX) > 0) {
+                scale--;
+            }
+
+            // Tick indexes are negated for descending side, so that the keys are always ascending.
+
+            long[] keys = new long[entries.size()];
+
+            double[] sizes = new double[entries.size()];
+
+            Integer[] order = new Integer[entries.size()];
+
+            for (int i = 0; i < entries.size(); i++) {
+
+                long index = entries.get(i).getKey().movePointRight(scale)
+                        .setScale(0, ascending ? CEILING : FLOOR).longValueExact();
+
+                keys[i] = ascending ? index : -index;
+
+                order[i] = i;
+
+            }
+
+            Arrays.sort(order, (o1, o2) -> Long.compare(keys[o1], keys[o2]));
+
+            long[] sortedKeys = new long[order.length];
+
+            double[] sortedSizes = new double[order.length];
+
+            int count = 0;
+
+            for (Integer i : order) {
+
+                if (count > 0 && sortedKeys[count - 1] == keys[i]) {
+
+                    sortedSizes[count - 1] += entries.get(i).getValue().doubleValue();
+
+                    continue;
+
+                }
+
+                sortedKeys[count] = keys[i];
+
+                sortedSizes[count] = entries.get(i).getValue().doubleValue();
+
+                count++;
+
+            }
+
+            return new Side(ascending, scale, Arrays.copyOf(sortedKeys, count), Arrays.copyOf(sortedSizes, count));
+
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public BigDecimal getPrice(int level) {
+
+            if (level < 0 || level >= keys.length) {
+                return null;
+            }
+
+            return BigDecimal.valueOf(ascending ? keys[level] : -keys[level], scale);
+
+        }
+
+        public double getSize(int level) {
+            return level < 0 || level >= sizes.length ? 0.0 : sizes[level];
+        }
+
+        public BigDecimal getBestPrice() {
+            return getPrice(0);
+        }
+
+        public double getBestSize() {
+            return getSize(0);
+        }
+
+        public int countLevels(BigDecimal price, boolean inclusive) {
+
+            if (price == null) {
+                return 0;
+            }
+
+            BigDecimal signed = ascending ? price.movePointRight(scale) : price.movePointRight(scale).negate();
+
+            if (inclusive) {
+                return upperBound(toLong(signed.setScale(0, FLOOR)));
+            }
+
+            long ceiling = toLong(signed.setScale(0, CEILING));
+
+            return ceiling == Long.MIN_VALUE ? 0 : upperBound(ceiling - 1);
+
+        }
+
+        private long toLong(BigDecimal value) {
+
+            if (value.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0) {
+                return Long.MAX_VALUE;
+            }
+
+            if (value.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) <= 0) {
+                return Long.MIN_VALUE;
+            }
+
+            return value.longValue();
+
+        }
+
+        private int upperBound(long key) {
+
+            int lo = 0;
+
+            int hi = keys.length;
+
+            while (lo < hi) {
+
+                int mid = (lo + hi) >>> 1;
+
+                if (keys[mid] <= key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+
+            }
+
+            return lo;
+
+        }
+
+        public double getCumulativeSize(int levels) {
+            return volumes[Math.max(Math.min(levels, keys.length), 0)];
+        }
+
+        public double getCumulativeNotional(int levels) {
+            return notionals[Math.max(Math.min(levels, keys.length), 0)];
+        }
+
+        public double getCumulativeSize(BigDecimal price) {
+            return getCumulativeSize(countLevels(price, true));
+        }
+
+        public double getCumulativeNotional(BigDecimal price) {
+            return getCumulativeNotional(countLevels(price, true));
+        }
+
+        public int findLevel(double size) {
+
+            if (!(size > 0.0) || size > volumes[keys.length]) {
+                return -1;
+            }
+
+            int lo = 0;
+
+            int hi = keys.length - 1;
+
+            while (lo < hi) {
+
+                int mid = (lo + hi) >>> 1;
+
+                if (volumes[mid + 1] >= size) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+
+            }
+
+            return lo;
+
+        }
+
+        public BigDecimal getPriceAt(double size) {
+            return getPrice(findLevel(size));
+        }
+
+        public double getAverage(double size) {
+
+            int level = findLevel(size);
+
+            if (level < 0) {
+                return Double.NaN;
+            }
+
+            double price = getPrice(level).doubleValue();
+
+            return (notionals[level] + (size - volumes[level]) * price) / size;
+
+        }
+
+        Side slice(int from, int to) {
+
+            int f = Math.max(Math.min(from, keys.length), 0);
+
+            int t = Math.max(Math.min(to, keys.length), f);
+
+            if (f == 0 && t == keys.length) {
+                return this;
+            }
+
+            return new Side(ascending, scale, Arrays.copyOfRange(keys, f, t), Arrays.copyOfRange(sizes, f, t));
+
+        }
+
+        Side reverse() {
+
+            long[] k = new long[keys.length];
+
+            double[] s = new double[sizes.length];
+
+            for (int i = 0; i < keys.length; i++) {
+
+                k[i] = -keys[keys.length - 1 - i];
+
+                s[i] = sizes[sizes.length - 1 - i];
+
+            }
+
+            return new Side(!ascending, scale, k, s);
+
+        }
+
+        public NavigableMap<BigDecimal, BigDecimal> asMap() {
+            return new SideMap(this);
+        }
+
+        @Override
+        public String toString() {
+            return asMap().toString();
+        }
+
+    }
+
+    private static final class SideMap extends AbstractMap<BigDecimal, BigDecimal>
+            implements NavigableMap<BigDecimal, BigDecimal> {
+
+        private final Side side;
+
+        private SideMap(Side side) {
+            this.side = side;
+        }
+
+        private Entry<BigDecimal, BigDecimal> entry(int level) {
+
+            if (level < 0 || level >= side.size()) {
+                return null;
+            }
+
+            return new SimpleImmutableEntry<>(side.getPrice(level), BigDecimal.valueOf(side.getSize(level)));
+
+        }
+
+        private static BigDecimal key(Entry<BigDecimal, BigDecimal> entry) {
+            return entry == null ? null : entry.getKey();
+        }
+
+        private BigDecimal cast(Object key) {
+            return key instanceof BigDecimal ? (BigDecimal) key : null;
+        }
+
+        @Override
+        public int size() {
+            return side.size();
+        }
+
+        @Override
+        public BigDecimal get(Object key) {
+
+            Entry<BigDecimal, BigDecimal> entry = floorEntry(cast(key));
+
+            return entry != null && entry.getKey().compareTo(cast(key)) == 0 ? entry.getValue() : null;
+
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<BigDecimal, BigDecimal>> entrySet() {
+            return new AbstractSet<Entry<BigDecimal, BigDecimal>>() {
+                @Override
+                public Iterator<Entry<BigDecimal, BigDecimal>> iterator() {
+                    return new Iterator<Entry<BigDecimal, BigDecimal>>() {
+
+                        private int level;
+
+                        @Override
+                        public boolean hasNext() {
+                            return level < side.size();
+                        }
+
+                        @Override
+                        public Entry<BigDecimal, BigDecimal> next() {
+
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+
+                            return entry(level++);
+
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return side.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super BigDecimal> comparator() {
+            return side.isAscending() ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        }
+
+        @Override
+        public BigDecimal firstKey() {
+
+            if (side.size() == 0) {
+                throw new NoSuchElementException();
+            }
+
+            return side.getPrice(0);
+
+        }
+
+        @Override
+        public BigDecimal lastKey() {
+
+            if (side.size() == 0) {
+                throw new NoSuchElementException();
+            }
+
+            return side.getPrice(side.size() - 1);
+
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> firstEntry() {
+            return entry(0);
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> lastEntry() {
+            return entry(side.size() - 1);
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> lowerEntry(BigDecimal key) {
+            return entry(side.countLevels(key, false) - 1);
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> floorEntry(BigDecimal key) {
+            return entry(side.countLevels(key, true) - 1);
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> ceilingEntry(BigDecimal key) {
+            return key == null ? null : entry(side.countLevels(key, false));
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> higherEntry(BigDecimal key) {
+            return key == null ? null : entry(side.countLevels(key, true));
+        }
+
+        @Override
+        public BigDecimal lowerKey(BigDecimal key) {
+            return key(lowerEntry(key));
+        }
+
+        @Override
+        public BigDecimal floorKey(BigDecimal key) {
+            return key(floorEntry(key));
+        }
+
+        @Override
+        public BigDecimal ceilingKey(BigDecimal key) {
+            return key(ceilingEntry(key));
+        }
+
+        @Override
+        public BigDecimal higherKey(BigDecimal key) {
+            return key(higherEntry(key));
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> pollFirstEntry() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Entry<BigDecimal, BigDecimal> pollLastEntry() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NavigableMap<BigDecimal, BigDecimal> descendingMap() {
+            return new SideMap(side.reverse());
+        }
+
+        @Override
+        public NavigableSet<BigDecimal> navigableKeySet() {
+            return Collections.unmodifiableNavigableSet(new TreeMap<>(this).navigableKeySet());
+        }
+
+        @Override
+        public NavigableSet<BigDecimal> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<BigDecimal, BigDecimal> subMap(BigDecimal fromKey, boolean fromInclusive,
+                                                           BigDecimal toKey, boolean toInclusive) {
+
+            int from = side.countLevels(fromKey, !fromInclusive);
+
+            int to = side.countLevels(toKey, toInclusive);
+
+            return new SideMap(side.slice(from, to));
+
+        }
+
+        @Override
+        public NavigableMap<BigDecimal, BigDecimal> headMap(BigDecimal toKey, boolean inclusive) {
+            return new SideMap(side.slice(0, side.countLevels(toKey, inclusive)));
+        }
+
+        @Override
+        public NavigableMap<BigDecimal, BigDecimal> tailMap(BigDecimal fromKey, boolean inclusive) {
+            return new SideMap(side.slice(side.countLevels(fromKey, !inclusive), side.size()));
+        }
+
+        @Override
+        public SortedMap<BigDecimal, BigDecimal> subMap(BigDecimal fromKey, BigDecimal toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<BigDecimal, BigDecimal> headMap(BigDecimal toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<BigDecimal, BigDecimal> tailMap(BigDecimal fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        @Override
+        public NavigableSet<BigDecimal> keySet() {
+            return navigableKeySet();
+        }
+
+    }
+
+}
@@ -6,11 +6,11 @@ import lombok.*;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Consumer;
 
 import static lombok.AccessLevel.PRIVATE;
 
@@ -95,6 +95,45 @@ public interface Context extends Service, AutoCloseable {
 
     }
 
+    enum DataType {
+
+        /**
+         * Service state
+         */
+        STATE,
+
+        /**
+         * Best prices, sizes and last price
+         */
+        TICK,
+
+        /**
+         * Order book levels
+         */
+        BOOK,
+
+        /**
+         * Public trades
+         */
+        TRADE,
+
+        /**
+         * Product attributes
+         */
+        PRODUCT,
+
+        /**
+         * Account positions
+         */
+        POSITION,
+
+        /**
+         * Own orders and executions
+         */
+        ORDER
+
+    }
+
     StateType getState(Key key);
 
     BigDecimal getBestAskPrice(Key key);
@@ -113,8 +152,63 @@ public interface Context extends Service, AutoCloseable {
 
     Map<BigDecimal, BigDecimal> getBidPrices(Key key);
 
+    BigDecimal getAskDepth(Key key, BigDecimal price);
+
+    BigDecimal getBidDepth(Key key, BigDecimal price);
+
+    BigDecimal getAskAverage(Key key, BigDecimal size);
+
+    BigDecimal getBidAverage(Key key, BigDecimal size);
+
+    BigDecimal getAskPriceAt(Key key, BigDecimal size);
+
+    BigDecimal getBidPriceAt(Key key, BigDecimal size);
+
     List<Trade> listTrades(Key key, Instant fromTime);
 
+    /**
+     * Visits trades within [fromTime, toTime) in ascending timestamp order.
+     * Null trades and timestamps are never passed to the consumer.
+     */
+    default void forEachTrade(Key key, Instant fromTime, Instant toTime, Consumer<Trade> consumer) {
+
+        if (consumer == null) {
+            return;
+        }
+
+        List<Trade> trades = listTrades(key, fromTime);
+
+        if (trades == null) {
+            return;
+        }
+
+        trades.stream()
+                .filter(Objects::nonNull)
+                .filter(t -> t.getTimestamp() != null)
+                .filter(t -> fromTime == null || !t.getTimestamp().isBefore(fromTime))
+                .filter(t -> toTime == null || t.getTimestamp().isBefore(toTime))
+                .sorted(Comparator.comparing(Trade::getTimestamp))
+                .forEachOrdered(consumer);
+
+    }
+
+    /**
+     * Visits bars, whose closing timestamps are within [fromTime, toTime), in ascending order.
+     */
+    default void forEachBar(Key key, Duration resolution, Instant fromTime, Instant toTime, Consumer<Bar> consumer) {
+
+        if (resolution == null || resolution.isNegative() || resolution.isZero() || consumer == null) {
+            return;
+        }
+
+        Bar.Aggregator aggregator = new Bar.Aggregator(resolution, fromTime, toTime, consumer);
+
+        forEachTrade(key, fromTime == null ? null : fromTime.minus(resolution), toTime, aggregator);
+
+        aggregator.flush();
+
+    }
+
     CurrencyType getInstrumentCurrency(Key key);
 
     CurrencyType getFundingCurrency(Key key);
@@ -139,6 +233,27 @@ public interface Context extends Service, AutoCloseable {
 
     Order findOrder(Key key, String id);
 
+    /**
+     * Finds the orders of the ids at once. Ids without an order are absent from the result.
+     */
+    default Map<String, Order> findOrders(Key key, Set<String> ids) {
+
+        Map<String, Order> orders = new HashMap<>();
+
+        Optional.ofNullable(ids).orElse(Collections.emptySet()).stream().filter(Objects::nonNull).forEach(id -> {
+
+            Order order = findOrder(key, id);
+
+            if (order != null) {
+                orders.put(id, order);
+            }
+
+        });
+
+        return orders;
+
+    }
+
     List<Order> listActiveOrders(Key key);
 
     List<Order.Execution> listExecutions(Key key);
@@ -147,4 +262,10 @@ public interface Context extends Service, AutoCloseable {
 
     Map<CancelInstruction, String> cancelOrders(Key key, Set<CancelInstruction> instructions);
 
+    /**
+     * Registers a listener, which is notified with the site and instrument of the pushed market data updates.
+     */
+    default void addListener(Consumer<Key> listener) {
+    }
+
 }
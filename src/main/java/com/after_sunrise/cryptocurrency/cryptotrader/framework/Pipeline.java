@@ -1,6 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework;
 
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author takanori.takase
@@ -8,6 +9,9 @@ import java.time.Instant;
  */
 public interface Pipeline {
 
-    void process(Instant currentTime, Instant targetTime, String site, String instrument);
+    /**
+     * @return Future completed once the submitted orders are reconciled.
+     */
+    CompletableFuture<?> process(Instant currentTime, Instant targetTime, String site, String instrument);
 
 }
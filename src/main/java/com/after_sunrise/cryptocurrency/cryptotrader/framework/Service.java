@@ -1,6 +1,10 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
+
 import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.function.Supplier;
 
 /**
@@ -60,4 +64,11 @@ public interface Service extends Supplier<String> {
 
     }
 
+    /**
+     * Context data read while serving the request, from which the prefetches are planned.
+     */
+    default Set<DataType> getDataTypes(Request request) {
+        return EnumSet.allOf(DataType.class);
+    }
+
 }
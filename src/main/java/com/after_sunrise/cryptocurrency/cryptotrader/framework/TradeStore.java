@@ -0,0 +1,742 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TradeStore {
+
+    private static final int INITIAL = 1024;
+
+    private final Map<Pair<String, String>, Tape> tapes = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    public TradeStore(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    private Pair<String, String> key(String site, String instrument) {
+        return Pair.of(StringUtils.trimToEmpty(site), StringUtils.trimToEmpty(instrument));
+    }
+
+    public boolean register(String site, String instrument) {
+        return register(site, instrument, null);
+    }
+
+    public boolean register(String site, String instrument, Collection<? extends Trade> trades) {
+
+        Tape tape = new Tape(capacity);
+
+        if (trades != null) {
+
+            trades.stream().filter(Objects::nonNull)
+                    .filter(t -> t.getTimestamp() != null)
+                    .filter(t -> t.getPrice() != null && t.getPrice().signum() > 0)
+                    .filter(t -> t.getSize() != null && t.getSize().signum() > 0)
+                    .sorted(Comparator.comparing(Trade::getTimestamp))
+                    .forEach(t -> tape.append(t.getTimestamp().toEpochMilli(),
+                            t.getPrice().doubleValue(), t.getSize().doubleValue()));
+
+        }
+
+        return tapes.putIfAbsent(key(site, instrument), tape) == null;
+
+    }
+
+    public boolean isEmpty() {
+        return tapes.isEmpty();
+    }
+
+    public boolean contains(String site, String instrument) {
+        return tapes.containsKey(key(site, instrument));
+    }
+
+    public int size(String site, String instrument) {
+
+        Tape tape = tapes.get(key(site, instrument));
+
+        return tape == null ? 0 : tape.size();
+
+    }
+
+    public boolean append(String site, String instrument, Instant time, BigDecimal price, BigDecimal size) {
+
+        if (time == null || price == null || size == null || price.signum() <= 0 || size.signum() <= 0) {
+            return false;
+        }
+
+        Tape tape = tapes.get(key(site, instrument));
+
+        if (tape == null) {
+            return false;
+        }
+
+        return tape.append(time.toEpochMilli(), price.doubleValue(), size.doubleValue());
+
+    }
+
+    public List<Trade> list(String site, String instrument, Instant fromTime, boolean inclusive) {
+
+        Tape tape = tapes.get(key(site, instrument));
+
+        if (tape == null) {
+            return Collections.emptyList();
+        }
+
+        long from = fromTime == null ? Long.MIN_VALUE : fromTime.toEpochMilli();
+
+        Columns cs = tape.read(from, inclusive || fromTime == null, Long.MAX_VALUE);
+
+        List<Trade> values = new ArrayList<>(cs.times.length);
+
+        for (int i = 0; i < cs.times.length; i++) {
+            values.add(new Entry(cs.base + cs.times[i], cs.prices[i], cs.volumes[i]));
+        }
+
+        return Collections.unmodifiableList(values);
+
+    }
+
+    public void forEach(String site, String instrument, Instant fromTime, Instant toTime, Consumer<? super Trade> consumer) {
+
+        Tape tape = tapes.get(key(site, instrument));
+
+        if (tape == null || consumer == null) {
+            return;
+        }
+
+        long from = fromTime == null ? Long.MIN_VALUE : fromTime.toEpochMilli();
+
+        long to = toTime == null ? Long.MAX_VALUE : toTime.toEpochMilli();
+
+        // Consumer is invoked outside of the lock, over a primitive snapshot.
+
+        Columns cs = tape.read(from, true, to);
+
+        for (int i = 0; i < cs.times.length; i++) {
+            consumer.accept(new Entry(cs.base + cs.times[i], cs.prices[i], cs.volumes[i]));
+        }
+
+    }
+
+    public boolean forEachBar(String site, String instrument, Duration resolution,
+                              Instant fromTime, Instant toTime, Consumer<? super Bar> consumer) {
+
+        Tape tape = tapes.get(key(site, instrument));
+
+        if (tape == null || resolution == null || consumer == null) {
+            return false;
+        }
+
+        if (!Bar.RESOLUTIONS.contains(resolution)) {
+            return false;
+        }
+
+        Series series = tape.find(resolution.toMillis());
+
+        if (series == null) {
+
+            // The finest bars are folded on read, from the trades which the tape already holds per millisecond.
+
+            Bar.Aggregator aggregator = new Bar.Aggregator(resolution, fromTime, toTime, consumer);
+
+            forEach(site, instrument, fromTime == null ? null : fromTime.minus(resolution), toTime, aggregator);
+
+            aggregator.flush();
+
+            return true;
+
+        }
+
+        long from = fromTime == null ? Long.MIN_VALUE : fromTime.toEpochMilli();
+
+        long to = toTime == null ? Long.MAX_VALUE : toTime.toEpochMilli();
+
+        for (Bar bar : tape.read(series, from, to)) {
+            consumer.accept(bar);
+        }
+
+        return true;
+
+    }
+
+    private static int search(int[] times, long base, long start, long end, long time) {
+
+        long lo = start;
+
+        long hi = end - 1;
+
+        while (lo <= hi) {
+
+            long mid = (lo + hi) >>> 1;
+
+            long value = base + times[(int) (mid % times.length)];
+
+            if (value < time) {
+                lo = mid + 1;
+            } else if (value > time) {
+                hi = mid - 1;
+            } else {
+                return (int) (mid % times.length);
+            }
+
+        }
+
+        return -1;
+
+    }
+
+    private static long lowerBound(int[] times, long base, long start, long end, long time, boolean inclusive) {
+
+        long lo = start;
+
+        long hi = end;
+
+        while (lo < hi) {
+
+            long mid = (lo + hi) >>> 1;
+
+            long value = base + times[(int) (mid % times.length)];
+
+            if (inclusive ? value < time : value <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+
+        }
+
+        return lo;
+
+    }
+
+    private static void shift(int[] times, long start, long end, long delta) {
+
+        for (long i = start; i < end; i++) {
+            times[(int) (i % times.length)] -= delta;
+        }
+
+    }
+
+    @Getter
+    @ToString
+    @EqualsAndHashCode
+    private static class Entry implements Trade {
+
+        private final Instant timestamp;
+
+        private final BigDecimal price;
+
+        private final BigDecimal size;
+
+        private Entry(long time, double price, float volume) {
+            this.timestamp = Instant.ofEpochMilli(time);
+            this.price = BigDecimal.valueOf(price);
+            this.size = new BigDecimal(Float.toString(volume));
+        }
+
+    }
+
+    /**
+     * Millisecond offsets from the base, average prices and volumes of the trades.
+     */
+    private static class Columns {
+
+        private final long base;
+
+        private final int[] times;
+
+        private final double[] prices;
+
+        private final float[] volumes;
+
+        private Columns(long base, int length) {
+            this.base = base;
+            this.times = new int[length];
+            this.prices = new double[length];
+            this.volumes = new float[length];
+        }
+
+        private Columns(long base, int[] times, double[] prices, float[] volumes) {
+            this.base = base;
+            this.times = times;
+            this.prices = prices;
+            this.volumes = volumes;
+        }
+
+    }
+
+    private static class Series {
+
+        private static final int TIME = 0;
+
+        private static final int LAST = 1;
+
+        private static final int OPEN = 0;
+
+        private static final int HIGH = 1;
+
+        private static final int LOW = 2;
+
+        private static final int CLOSE = 3;
+
+        private static final int NOTIONAL = 4;
+
+        private static final int VOLUME = 0;
+
+        private static final int CLOSING = 1;
+
+        private final long resolution;
+
+        private final int capacity;
+
+        private int[][] stamps;
+
+        private double[][] values;
+
+        private float[][] volumes;
+
+        private long count;
+
+        private long first;
+
+        private Series(long resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            this.stamps = new int[2][Math.min(capacity, INITIAL)];
+            this.values = new double[5][Math.min(capacity, INITIAL)];
+            this.volumes = new float[2][Math.min(capacity, INITIAL)];
+        }
+
+        private long start() {
+            return Math.max(count - capacity, first);
+        }
+
+        private long oldest(long base) {
+            return start() < count ? base + stamps[LAST][(int) (start() % stamps[LAST].length)] : Long.MAX_VALUE;
+        }
+
+        private void rebase(long base, long target) {
+
+            first = lowerBound(stamps[LAST], base, start(), count, target, true);
+
+            for (int[] times : stamps) {
+                shift(times, first, count, target - base);
+            }
+
+        }
+
+        private void append(long base, long time, double price, float volume) {
+
+            long id = Bar.ceiling(time, resolution);
+
+            int[] times = stamps[TIME];
+
+            if (start() < count) {
+
+                int index = search(times, base, start(), count, id);
+
+                if (index >= 0) {
+
+                    values[HIGH][index] = Math.max(values[HIGH][index], price);
+
+                    values[LOW][index] = Math.min(values[LOW][index], price);
+
+                    values[NOTIONAL][index] += volume * price;
+
+                    volumes[VOLUME][index] += volume;
+
+                    long last = base + stamps[LAST][index];
+
+                    if (last == time) {
+
+                        float closing = volumes[CLOSING][index];
+
+                        values[CLOSE][index] = (values[CLOSE][index] * closing + price * volume) / (closing + volume);
+
+                        volumes[CLOSING][index] = closing + volume;
+
+                    } else if (last < time) {
+
+                        stamps[LAST][index] = (int) (time - base);
+
+                        values[CLOSE][index] = price;
+
+                        volumes[CLOSING][index] = volume;
+
+                    }
+
+                    return;
+
+                }
+
+                if (base + times[(int) ((count - 1) % times.length)] > id) {
+                    return;
+                }
+
+            }
+
+            if (count == times.length && times.length < capacity) {
+
+                int length = (int) Math.min((long) times.length * 2, capacity);
+
+                for (int i = 0; i < stamps.length; i++) {
+                    stamps[i] = Arrays.copyOf(stamps[i], length);
+                }
+
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Arrays.copyOf(values[i], length);
+                }
+
+                for (int i = 0; i < volumes.length; i++) {
+                    volumes[i] = Arrays.copyOf(volumes[i], length);
+                }
+
+                times = stamps[TIME];
+
+            }
+
+            int index = (int) (count % times.length);
+
+            stamps[TIME][index] = (int) (id - base);
+
+            stamps[LAST][index] = (int) (time - base);
+
+            values[OPEN][index] = values[HIGH][index] = values[LOW][index] = values[CLOSE][index] = price;
+
+            values[NOTIONAL][index] = volume * price;
+
+            volumes[VOLUME][index] = volumes[CLOSING][index] = volume;
+
+            count++;
+
+        }
+
+        private Bar[] copy(long base, long from, long to) {
+
+            int[] times = stamps[TIME];
+
+            long end = count;
+
+            long lower = lowerBound(times, base, start(), end, from, true);
+
+            long upper = lowerBound(times, base, lower, end, to, true);
+
+            Bar[] bars = new Bar[(int) (upper - lower)];
+
+            for (long i = lower; i < upper; i++) {
+
+                int index = (int) (i % times.length);
+
+                bars[(int) (i - lower)] = new Bar(base + times[index], values[OPEN][index], values[HIGH][index],
+                        values[LOW][index], values[CLOSE][index], volumes[VOLUME][index], values[NOTIONAL][index]);
+
+            }
+
+            return bars;
+
+        }
+
+    }
+
+    private static class Tape {
+
+        /**
+         * Room left above the newest time when the base is moved, so that it is moved at most every twelve days or so.
+         */
+        private static final long HEADROOM = Integer.MAX_VALUE / 2;
+
+        private static final long COARSEST = Bar.RESOLUTIONS.get(Bar.RESOLUTIONS.size() - 1).toMillis();
+
+        private final StampedLock lock = new StampedLock();
+
+        private final int capacity;
+
+        private final Series[] series;
+
+        private Columns columns;
+
+        private long count;
+
+        private long first;
+
+        private Tape(int capacity) {
+
+            this.capacity = capacity;
+
+            this.columns = new Columns(Long.MIN_VALUE, Math.min(capacity, INITIAL));
+
+            // No series for the finest resolution, which would hold about as many bars as the tape holds trades.
+
+            this.series = new Series[Bar.RESOLUTIONS.size() - 1];
+
+            for (int i = 0; i < series.length; i++) {
+
+                long resolution = Bar.RESOLUTIONS.get(i + 1).toMillis();
+
+                series[i] = new Series(resolution, (int) Math.max(capacity / (resolution / 1000), 2));
+
+            }
+
+        }
+
+        private Series find(long resolution) {
+
+            for (Series s : series) {
+                if (s.resolution == resolution) {
+                    return s;
+                }
+            }
+
+            return null;
+
+        }
+
+        private int size() {
+
+            long stamp = lock.tryOptimisticRead();
+
+            long c = count - start();
+
+            if (!lock.validate(stamp)) {
+
+                stamp = lock.readLock();
+
+                try {
+                    c = count - start();
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+
+            }
+
+            return (int) c;
+
+        }
+
+        private long start() {
+            return Math.max(count - capacity, first);
+        }
+
+        /**
+         * Moves the base of the int offsets up to the oldest time still held, when the time does not fit above it.
+         * Anything older than the offsets can reach from the new base is dropped.
+         */
+        private void rebase(long time) {
+
+            Columns cs = columns;
+
+            if (cs.base == Long.MIN_VALUE) {
+
+                columns = new Columns(time, cs.times.length);
+
+                return;
+
+            }
+
+            long ceiling = Bar.ceiling(time, COARSEST);
+
+            if (ceiling - cs.base <= Integer.MAX_VALUE) {
+                return;
+            }
+
+            long oldest = start() < count ? cs.base + cs.times[(int) (start() % cs.times.length)] : Long.MAX_VALUE;
+
+            for (Series s : series) {
+                oldest = Math.min(oldest, s.oldest(cs.base));
+            }
+
+            long target = Math.max(Math.min(oldest, ceiling - HEADROOM), ceiling - Integer.MAX_VALUE);
+
+            first = lowerBound(cs.times, cs.base, start(), count, target, true);
+
+            shift(cs.times, first, count, target - cs.base);
+
+            for (Series s : series) {
+                s.rebase(cs.base, target);
+            }
+
+            columns = new Columns(target, cs.times, cs.prices, cs.volumes);
+
+        }
+
+        private boolean append(long time, double price, double volume) {
+
+            long stamp = lock.writeLock();
+
+            try {
+
+                rebase(time);
+
+                Columns cs = columns;
+
+                float size = (float) volume;
+
+                // Bars are updated even if the tape itself cannot take the trade.
+
+                for (Series s : series) {
+                    s.append(cs.base, time, price, size);
+                }
+
+                long start = start();
+
+                if (start < count) {
+
+                    // Accumulate into the existing bar, if any.
+
+                    int index = search(cs.times, cs.base, start, count, time);
+
+                    if (index >= 0) {
+
+                        float total = cs.volumes[index] + size;
+
+                        cs.prices[index] = (cs.prices[index] * cs.volumes[index] + price * size) / total;
+
+                        cs.volumes[index] = total;
+
+                        return true;
+
+                    }
+
+                    // Older bars are never inserted in between.
+
+                    if (cs.base + cs.times[(int) ((count - 1) % cs.times.length)] > time) {
+                        return false;
+                    }
+
+                }
+
+                if (count == cs.times.length && cs.times.length < capacity) {
+
+                    Columns grown = new Columns(cs.base, (int) Math.min((long) cs.times.length * 2, capacity));
+
+                    System.arraycopy(cs.times, 0, grown.times, 0, cs.times.length);
+
+                    System.arraycopy(cs.prices, 0, grown.prices, 0, cs.prices.length);
+
+                    System.arraycopy(cs.volumes, 0, grown.volumes, 0, cs.volumes.length);
+
+                    columns = cs = grown;
+
+                }
+
+                int index = (int) (count % cs.times.length);
+
+                cs.times[index] = (int) (time - cs.base);
+
+                cs.prices[index] = price;
+
+                cs.volumes[index] = size;
+
+                count++;
+
+                return true;
+
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+        }
+
+        private Columns read(long from, boolean inclusive, long to) {
+
+            long stamp = lock.tryOptimisticRead();
+
+            try {
+
+                Columns values = copy(from, inclusive, to);
+
+                if (lock.validate(stamp)) {
+                    return values;
+                }
+
+            } catch (RuntimeException e) {
+                // Torn read, retry under the lock.
+            }
+
+            stamp = lock.readLock();
+
+            try {
+                return copy(from, inclusive, to);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+        }
+
+        private Bar[] read(Series s, long from, long to) {
+
+            long stamp = lock.tryOptimisticRead();
+
+            try {
+
+                Bar[] values = s.copy(columns.base, from, to);
+
+                if (lock.validate(stamp)) {
+                    return values;
+                }
+
+            } catch (RuntimeException e) {
+                // Torn read, retry under the lock.
+            }
+
+            stamp = lock.readLock();
+
+            try {
+                return s.copy(columns.base, from, to);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+        }
+
+        private Columns copy(long from, boolean inclusive, long to) {
+
+            Columns cs = columns;
+
+            long end = count;
+
+            long start = start();
+
+            long lower = lowerBound(cs.times, cs.base, start, end, from, inclusive);
+
+            long upper = lowerBound(cs.times, cs.base, lower, end, to, true);
+
+            Columns values = new Columns(cs.base, (int) (upper - lower));
+
+            for (long i = lower; i < upper; i++) {
+
+                int index = (int) (i % cs.times.length);
+
+                int offset = (int) (i - lower);
+
+                values.times[offset] = cs.times[index];
+
+                values.prices[offset] = cs.prices[index];
+
+                values.volumes[offset] = cs.volumes[index];
+
+            }
+
+            return values;
+
+        }
+
+    }
+
+}
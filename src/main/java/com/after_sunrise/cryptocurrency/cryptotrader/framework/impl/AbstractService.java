@@ -1,9 +1,19 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Service;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.configuration2.ImmutableConfiguration;
 import org.apache.commons.lang3.ArrayUtils;
@@ -15,8 +25,11 @@ import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static java.math.BigDecimal.ONE;
@@ -40,6 +53,9 @@ public abstract class AbstractService implements Service {
 
     protected static final BigDecimal HALF = new BigDecimal("0.5");
 
+    private static final Cache<EstimationKey, CompletableFuture<Estimation>> ESTIMATIONS = CacheBuilder.newBuilder()
+            .maximumSize(Short.MAX_VALUE).expireAfterWrite(1, TimeUnit.MINUTES).build();
+
     protected final Logger log = LoggerFactory.getLogger(getClass());
 
     private final String prefix = getClass().getName() + ".";
@@ -150,6 +166,60 @@ public abstract class AbstractService implements Service {
 
     }
 
+    /**
+     * Computes each estimation once per (estimator, key, target time), shared by every caller of the same cycle.
+     */
+    protected Estimation memoize(String id, Context context, Request request,
+                                 BiFunction<Context, Request, Estimation> function) {
+
+        if (id == null || request == null || request.getCurrentTime() == null) {
+            return function.apply(context, request);
+        }
+
+        EstimationKey key = new EstimationKey(id, context, Key.from(request), request.getTargetTime());
+
+        CompletableFuture<Estimation> future = new CompletableFuture<>();
+
+        CompletableFuture<Estimation> existing = ESTIMATIONS.asMap().putIfAbsent(key, future);
+
+        if (existing != null) {
+            return existing.join();
+        }
+
+        try {
+
+            Estimation estimation = function.apply(context, request);
+
+            future.complete(estimation);
+
+            return estimation;
+
+        } catch (Throwable e) {
+
+            ESTIMATIONS.invalidate(key);
+
+            future.completeExceptionally(e);
+
+            throw e;
+
+        }
+
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    private static class EstimationKey {
+
+        private final String id;
+
+        private final Context context;
+
+        private final Key key;
+
+        private final Instant target;
+
+    }
+
     @VisibleForTesting
     public BigDecimal calculateComposite(List<Composite> products, BiFunction<String, String, BigDecimal> f) {
 
@@ -229,69 +299,187 @@ public abstract class AbstractService implements Service {
     public NavigableMap<Instant, BigDecimal> collapsePrices(List<Trade> values,
                                                             Duration interval, Instant from, Instant to, boolean sum) {
 
-        NavigableMap<Instant, BigDecimal[]> collapsed = new TreeMap<>();
+        Collapser collapser = new Collapser(interval, from, to, sum);
+
+        trimToEmpty(values).stream()
+                .filter(Objects::nonNull)
+                .filter(t -> t.getTimestamp() != null)
+                .sorted(Comparator.comparing(Trade::getTimestamp))
+                .forEach(collapser);
+
+        return collapser.getPrices();
+
+    }
+
+    @VisibleForTesting
+    public NavigableMap<Instant, BigDecimal> collapsePrices(Context context, Key key,
+                                                            Duration interval, Instant from, Instant to, boolean sum) {
+
+        Collapser collapser = new Collapser(interval, from, to, sum);
+
+        Duration resolution = findResolution(interval, from);
 
-        for (long i = from.toEpochMilli(); i < to.toEpochMilli(); i += interval.toMillis()) {
+        if (resolution != null) {
 
-            Instant instant = Instant.ofEpochMilli(i);
+            // Bars of a resolution, dividing the interval, roll up into the same buckets.
 
-            collapsed.put(instant, new BigDecimal[2]); // [size, notional]
+            context.forEachBar(key, resolution, from.minus(interval), to, collapser::accept);
+
+        } else {
+
+            // Trades are visited in order, hence no sorting nor intermediate list.
+
+            context.forEachTrade(key, from.minus(interval), to, collapser);
 
         }
 
-        trimToEmpty(values).stream()
-                .filter(Objects::nonNull)
-                .filter(t -> t.getTimestamp() != null)
-                .filter(t -> t.getTimestamp().isAfter(from.minus(interval)))
-                .filter(t -> t.getTimestamp().isBefore(to))
-                .filter(t -> t.getPrice() != null)
-                .filter(t -> t.getSize() != null)
-                .sorted(Comparator.comparing(Trade::getTimestamp))
-                .forEach(t -> {
+        return collapser.getPrices();
 
-                    Instant timestamp = t.getTimestamp();
+    }
 
-                    Map.Entry<Instant, BigDecimal[]> entry = collapsed.ceilingEntry(timestamp);
+    @VisibleForTesting
+    Duration findResolution(Duration interval, Instant from) {
 
-                    if (entry == null) {
-                        return;
-                    }
+        Duration found = null;
 
-                    BigDecimal quantity = t.getSize();
-                    BigDecimal notional = t.getSize().multiply(t.getPrice());
-                    BigDecimal[] elements = entry.getValue();
+        for (Duration resolution : Bar.RESOLUTIONS) {
 
-                    if (sum) {
-                        elements[0] = elements[0] == null ? quantity : quantity.add(elements[0]);
-                        elements[1] = elements[1] == null ? notional : notional.add(elements[1]);
-                    } else {
-                        elements[0] = quantity;
-                        elements[1] = notional;
-                    }
+            long millis = resolution.toMillis();
 
-                });
+            // Bars only fill the buckets exactly when the bucket boundaries are on the bar boundaries.
 
-        NavigableMap<Instant, BigDecimal> prices = new TreeMap<>();
+            if (interval.toMillis() % millis != 0 || from.toEpochMilli() % millis != 0) {
+                continue;
+            }
 
-        BigDecimal previous = null;
+            found = resolution;
 
-        for (Map.Entry<Instant, BigDecimal[]> entry : collapsed.entrySet()) {
+        }
+
+        return found;
 
-            BigDecimal[] elements = entry.getValue();
+    }
 
-            BigDecimal current = previous;
+    private static class Collapser implements Consumer<Trade> {
 
-            if (elements[0] != null && elements[0].signum() != 0) {
-                current = elements[1].divide(elements[0], SCALE, HALF_UP);
+        private final long from;
+
+        private final long to;
+
+        private final long interval;
+
+        private final boolean sum;
+
+        private final BigDecimal[] sizes;
+
+        private final BigDecimal[] notionals;
+
+        private long last = Long.MIN_VALUE;
+
+        private Collapser(Duration interval, Instant from, Instant to, boolean sum) {
+
+            this.from = from.toEpochMilli();
+
+            this.to = to.toEpochMilli();
+
+            this.interval = interval.toMillis();
+
+            this.sum = sum;
+
+            long buckets = this.to > this.from ? (this.to - this.from - 1) / this.interval + 1 : 0;
+
+            this.sizes = new BigDecimal[(int) buckets];
+
+            this.notionals = new BigDecimal[(int) buckets];
+
+        }
+
+        @Override
+        public void accept(Trade t) {
+
+            if (t == null || t.getTimestamp() == null || t.getPrice() == null || t.getSize() == null) {
+                return;
+            }
+
+            long time = t.getTimestamp().toEpochMilli();
+
+            if (time <= from - interval || time >= to) {
+                return;
             }
 
-            prices.put(entry.getKey(), current);
+            // Bucket of the ceiling boundary : from + (index * interval)
 
-            previous = current;
+            long index = -Math.floorDiv(from - time, interval);
+
+            if (index >= sizes.length) {
+                return;
+            }
+
+            // Trades at the same time are averaged, same as the bar close and the trade store.
+
+            accumulate((int) index, t.getSize(), t.getSize().multiply(t.getPrice()), sum || time == last);
+
+            last = time;
 
         }
 
-        return prices;
+        private void accept(Bar b) {
+
+            long time = b.getTimestamp().toEpochMilli();
+
+            if (time <= from - interval || time >= to) {
+                return;
+            }
+
+            long index = -Math.floorDiv(from - time, interval);
+
+            if (index >= sizes.length) {
+                return;
+            }
+
+            if (sum) {
+                accumulate((int) index, BigDecimal.valueOf(b.getVolume()), BigDecimal.valueOf(b.getNotional()), true);
+            } else {
+                accumulate((int) index, ONE, BigDecimal.valueOf(b.getClose()), false);
+            }
+
+        }
+
+        private void accumulate(int i, BigDecimal quantity, BigDecimal notional, boolean merge) {
+
+            if (merge && sizes[i] != null) {
+                sizes[i] = quantity.add(sizes[i]);
+                notionals[i] = notional.add(notionals[i]);
+            } else {
+                sizes[i] = quantity;
+                notionals[i] = notional;
+            }
+
+        }
+
+        private NavigableMap<Instant, BigDecimal> getPrices() {
+
+            NavigableMap<Instant, BigDecimal> prices = new TreeMap<>();
+
+            BigDecimal previous = null;
+
+            for (int i = 0; i < sizes.length; i++) {
+
+                BigDecimal current = previous;
+
+                if (sizes[i] != null && sizes[i].signum() != 0) {
+                    current = notionals[i].divide(sizes[i], SCALE, HALF_UP);
+                }
+
+                prices.put(Instant.ofEpochMilli(from + i * interval), current);
+
+                previous = current;
+
+            }
+
+            return prices;
+
+        }
 
     }
 
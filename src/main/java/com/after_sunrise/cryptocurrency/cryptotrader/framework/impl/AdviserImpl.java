@@ -3,12 +3,15 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author takanori.takase
@@ -32,6 +35,15 @@ public class AdviserImpl extends AbstractService implements Adviser {
         return WILDCARD;
     }
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+
+        Adviser adviser = advisers.get(request.getSite());
+
+        return adviser == null ? EnumSet.noneOf(DataType.class) : trimToEmpty(adviser.getDataTypes(request));
+
+    }
+
     @Override
     public Advice advise(Context context, Request request, Estimation estimation) {
 
@@ -4,13 +4,17 @@ import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Agent;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Collections.emptyMap;
 
@@ -38,6 +42,15 @@ public class AgentImpl extends AbstractService implements Agent {
         return WILDCARD;
     }
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+
+        Agent manager = managers.get(request.getSite());
+
+        return manager == null ? EnumSet.noneOf(DataType.class) : trimToEmpty(manager.getDataTypes(request));
+
+    }
+
     @Override
     public Map<Instruction, String> manage(Context ctx, Request req, List<Instruction> instructions) {
 
@@ -84,7 +97,37 @@ public class AgentImpl extends AbstractService implements Agent {
 
         }
 
-        Map<Instruction, Boolean> results = trimToEmpty(manager.reconcile(ctx, req, instructions));
+        return logResults(req, manager.reconcile(ctx, req, instructions));
+
+    }
+
+    @Override
+    public CompletableFuture<Map<Instruction, Boolean>> reconcileAsync(
+            Context ctx, Request req, Map<Instruction, String> instructions) {
+
+        Agent manager = managers.get(req.getSite());
+
+        if (manager == null) {
+
+            log.debug("Service not found for site : {}", req.getSite());
+
+            return CompletableFuture.completedFuture(emptyMap());
+
+        }
+
+        CompletableFuture<Map<Instruction, Boolean>> future = manager.reconcileAsync(ctx, req, instructions);
+
+        if (future == null) {
+            return CompletableFuture.completedFuture(emptyMap());
+        }
+
+        return future.thenApply(results -> logResults(req, results));
+
+    }
+
+    private Map<Instruction, Boolean> logResults(Request req, Map<Instruction, Boolean> values) {
+
+        Map<Instruction, Boolean> results = trimToEmpty(values);
 
         log.info("Reconcile : [{}.{}] {}", req.getSite(), req.getInstrument(), results.size());
 
@@ -1,6 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
@@ -12,11 +13,13 @@ import com.google.inject.Injector;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -85,6 +88,11 @@ public class ContextImpl extends AbstractService implements Context {
 
     }
 
+    @Override
+    public void addListener(Consumer<Key> listener) {
+        contexts.values().forEach(c -> c.addListener(listener));
+    }
+
     @Override
     public StateType getState(Key key) {
         return forContext(key, c -> c.getState(key));
@@ -130,11 +138,57 @@ public class ContextImpl extends AbstractService implements Context {
         return forContext(key, c -> c.getBidPrices(key));
     }
 
+    @Override
+    public BigDecimal getAskDepth(Key key, BigDecimal price) {
+        return forContext(key, c -> c.getAskDepth(key, price));
+    }
+
+    @Override
+    public BigDecimal getBidDepth(Key key, BigDecimal price) {
+        return forContext(key, c -> c.getBidDepth(key, price));
+    }
+
+    @Override
+    public BigDecimal getAskAverage(Key key, BigDecimal size) {
+        return forContext(key, c -> c.getAskAverage(key, size));
+    }
+
+    @Override
+    public BigDecimal getBidAverage(Key key, BigDecimal size) {
+        return forContext(key, c -> c.getBidAverage(key, size));
+    }
+
+    @Override
+    public BigDecimal getAskPriceAt(Key key, BigDecimal size) {
+        return forContext(key, c -> c.getAskPriceAt(key, size));
+    }
+
+    @Override
+    public BigDecimal getBidPriceAt(Key key, BigDecimal size) {
+        return forContext(key, c -> c.getBidPriceAt(key, size));
+    }
+
     @Override
     public List<Trade> listTrades(Key key, Instant fromTime) {
         return forContext(key, c -> c.listTrades(key, fromTime));
     }
 
+    @Override
+    public void forEachTrade(Key key, Instant fromTime, Instant toTime, Consumer<Trade> consumer) {
+        forContext(key, c -> {
+            c.forEachTrade(key, fromTime, toTime, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public void forEachBar(Key key, Duration resolution, Instant fromTime, Instant toTime, Consumer<Bar> consumer) {
+        forContext(key, c -> {
+            c.forEachBar(key, resolution, fromTime, toTime, consumer);
+            return null;
+        });
+    }
+
     @Override
     public CurrencyType getInstrumentCurrency(Key key) {
         return forContext(key, c -> c.getInstrumentCurrency(key));
@@ -195,6 +249,11 @@ public class ContextImpl extends AbstractService implements Context {
         return forContext(key, c -> c.findOrder(key, id));
     }
 
+    @Override
+    public Map<String, Order> findOrders(Key key, Set<String> ids) {
+        return forContext(key, c -> c.findOrders(key, ids));
+    }
+
     @Override
     public List<Order> listActiveOrders(Key key) {
         return forContext(key, c -> c.listActiveOrders(key));
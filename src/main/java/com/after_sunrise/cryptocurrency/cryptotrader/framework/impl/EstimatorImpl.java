@@ -4,23 +4,28 @@ import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.HALF_UP;
-import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 
 /**
@@ -29,12 +34,24 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class EstimatorImpl extends AbstractService implements Estimator {
 
+    private static final String DEADLINE_KEY = "deadline";
+
+    private static final BigDecimal DEADLINE_VAL = new BigDecimal("0.5");
+
+    private static final String CONCURRENCY_KEY = "concurrency";
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
     private final ExecutorService executor;
 
     private final PropertyManager manager;
 
+    private final Prefetcher prefetcher;
+
     private final Map<String, Estimator> estimators;
 
+    private final int threads;
+
     @Inject
     public EstimatorImpl(Injector injector) {
 
@@ -42,7 +59,11 @@ public class EstimatorImpl extends AbstractService implements Estimator {
 
         this.manager = injector.getInstance(PropertyManager.class);
 
-        this.executor = injector.getInstance(ExecutorFactory.class).get(getClass(), estimators.size());
+        this.prefetcher = injector.getInstance(Prefetcher.class);
+
+        this.threads = Math.max(Math.min(estimators.size(), Runtime.getRuntime().availableProcessors()), 1);
+
+        this.executor = injector.getInstance(ExecutorFactory.class).get(getClass(), threads);
 
     }
 
@@ -51,6 +72,19 @@ public class EstimatorImpl extends AbstractService implements Estimator {
         return WILDCARD;
     }
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+
+        Map<String, BigDecimal> ids = getConfiguredEstimators(request.getSite(), request.getInstrument());
+
+        Set<DataType> types = EnumSet.noneOf(DataType.class);
+
+        select(ids).forEach(e -> types.addAll(trimToEmpty(e.getDataTypes(request))));
+
+        return types;
+
+    }
+
     @Override
     public Estimation estimate(Context context, Request request) {
 
@@ -86,18 +120,87 @@ public class EstimatorImpl extends AbstractService implements Estimator {
 
     }
 
+    private Stream<Estimator> select(Map<String, BigDecimal> ids) {
+        return estimators.values().stream()
+                .filter(e -> ids != null)
+                .filter(e -> ids.containsKey(WILDCARD) || ids.containsKey(e.get()));
+    }
+
     private Map<Estimator, Estimation> collect(Context context, Request request, Map<String, BigDecimal> ids) {
 
-        Map<Estimator, CompletableFuture<Estimation>> futures = new IdentityHashMap<>();
+        Instant deadline = getDeadline(request);
 
-        estimators.values().stream()
-                .filter(e -> ids != null)
-                .filter(e -> ids.containsKey(WILDCARD) || ids.containsKey(e.get()))
-                .forEach(estimator ->
-                        futures.put(estimator,
-                                supplyAsync(() -> estimator.estimate(context, request), executor)
-                        )
-                );
+        Semaphore semaphore = permits.computeIfAbsent(StringUtils.trimToEmpty(request.getSite()),
+                site -> new Semaphore(Math.max(getIntProperty(CONCURRENCY_KEY, threads), 1)));
+
+        Map<Estimator, Future<Estimation>> futures = new IdentityHashMap<>();
+
+        List<String> missed = new ArrayList<>();
+
+        Set<DataType> types = EnumSet.noneOf(DataType.class);
+
+        select(ids).forEach(e -> types.addAll(trimToEmpty(e.getDataTypes(request))));
+
+        // Shared inputs are loaded up front, so that the pool only runs the computations.
+        await(prefetcher.fetch(context, request, types), deadline);
+
+        select(ids).forEach(estimator -> {
+
+            if (!acquire(semaphore, deadline)) {
+
+                missed.add(estimator.get());
+
+                return;
+
+            }
+
+            AtomicBoolean held = new AtomicBoolean(true);
+
+            AtomicBoolean started = new AtomicBoolean();
+
+            Runnable release = () -> {
+                if (held.getAndSet(false)) {
+                    semaphore.release();
+                }
+            };
+
+            FutureTask<Estimation> task = new FutureTask<Estimation>(() -> {
+
+                started.set(true);
+
+                try {
+                    return memoize(estimator.get(), context, request, estimator::estimate);
+                } finally {
+                    release.run();
+                }
+
+            }) {
+                @Override
+                protected void done() {
+
+                    // Cancelled before running, otherwise the body still holds the permit.
+                    if (!started.get()) {
+                        release.run();
+                    }
+
+                }
+            };
+
+            futures.put(estimator, task);
+
+            try {
+
+                executor.execute(task);
+
+            } catch (RuntimeException e) {
+
+                task.cancel(false);
+
+                log.warn("Skipping estimate : " + estimator.get(), e);
+
+            }
+
+        });
 
         Map<Estimator, Estimation> estimations = new IdentityHashMap<>();
 
@@ -105,10 +208,23 @@ public class EstimatorImpl extends AbstractService implements Estimator {
 
             try {
 
-                Estimation estimation = future.get();
+                Estimation estimation;
+
+                if (deadline == null) {
+                    estimation = future.get();
+                } else {
+                    estimation = future.get(Duration.between(now(), deadline).toMillis(), MILLISECONDS);
+                }
 
                 estimations.put(estimator, estimation);
 
+            } catch (TimeoutException e) {
+
+                // Not interrupted, since a straggler may be loading the data which the others share.
+                future.cancel(false);
+
+                missed.add(estimator.get());
+
             } catch (Exception e) {
 
                 log.warn("Skipping estimate : " + estimator.get(), e);
@@ -116,10 +232,95 @@ public class EstimatorImpl extends AbstractService implements Estimator {
             }
         });
 
+        if (!missed.isEmpty()) {
+            log.warn("Missed deadline : [{}.{}] {} (deadline={})", request.getSite(), request.getInstrument(), missed, deadline);
+        }
+
         return estimations;
 
     }
 
+    /**
+     * Time by which the estimations are collapsed, as a fraction of the interval towards the target time.
+     */
+    @VisibleForTesting
+    Instant getDeadline(Request request) {
+
+        Instant current = request.getCurrentTime();
+
+        Instant target = request.getTargetTime();
+
+        if (current == null || target == null || now() == null) {
+            return null;
+        }
+
+        BigDecimal fraction = getDecimalProperty(DEADLINE_KEY, DEADLINE_VAL).max(ZERO).min(ONE);
+
+        long millis = BigDecimal.valueOf(Duration.between(current, target).toMillis()).multiply(fraction).longValue();
+
+        return current.plusMillis(millis);
+
+    }
+
+    private Instant now() {
+        return manager.getNow();
+    }
+
+    private void await(Future<?> future, Instant deadline) {
+
+        if (future == null) {
+            return;
+        }
+
+        try {
+
+            if (deadline == null) {
+                future.get();
+            } else {
+                future.get(Duration.between(now(), deadline).toMillis(), MILLISECONDS);
+            }
+
+        } catch (TimeoutException e) {
+
+            log.debug("Fetch incomplete : {}", deadline);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } catch (ExecutionException e) {
+
+            log.debug("Fetch failed : {}", e.toString());
+
+        }
+
+    }
+
+    /**
+     * Bounds the estimations in flight per site, waiting no longer than the deadline for a slot.
+     */
+    private boolean acquire(Semaphore semaphore, Instant deadline) {
+
+        try {
+
+            if (deadline == null) {
+
+                semaphore.acquire();
+
+                return true;
+
+            }
+
+            return semaphore.tryAcquire(Duration.between(now(), deadline).toMillis(), MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            return false;
+
+        }
+
+    }
+
     private Estimation collapse(Request r, Map<Estimator, Estimation> estimations, Map<String, BigDecimal> ids) {
 
         BigDecimal numerator = BigDecimal.ZERO;
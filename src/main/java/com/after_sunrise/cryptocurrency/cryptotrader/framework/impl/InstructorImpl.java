@@ -3,6 +3,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser.Advice;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instructor;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
@@ -10,8 +11,10 @@ import com.google.inject.Inject;
 import com.google.inject.Injector;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author takanori.takase
@@ -33,6 +36,15 @@ public class InstructorImpl extends AbstractService implements Instructor {
         return WILDCARD;
     }
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+
+        Instructor instructor = instructors.get(request.getSite());
+
+        return instructor == null ? EnumSet.noneOf(DataType.class) : trimToEmpty(instructor.getDataTypes(request));
+
+    }
+
     @Override
     public List<Instruction> instruct(Context context, Request request, Advice advice) {
 
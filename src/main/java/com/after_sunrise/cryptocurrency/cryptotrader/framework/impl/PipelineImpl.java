@@ -13,10 +13,12 @@ import org.apache.commons.lang3.StringUtils;
 import java.lang.reflect.Method;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author takanori.takase
@@ -37,6 +39,8 @@ public class PipelineImpl implements Pipeline {
 
     private final Agent manager;
 
+    private final Prefetcher prefetcher;
+
     @Inject
     public PipelineImpl(Injector injector) {
 
@@ -52,37 +56,62 @@ public class PipelineImpl implements Pipeline {
 
         this.manager = injector.getInstance(Agent.class);
 
+        this.prefetcher = injector.getInstance(Prefetcher.class);
+
     }
 
     @Override
-    public void process(Instant current, Instant target, String site, String instrument) {
+    public CompletableFuture<?> process(Instant current, Instant target, String site, String instrument) {
 
-        Optional.ofNullable(createRequest(current, target, site, instrument)).ifPresent(request -> {
+        return Optional.ofNullable(createRequest(current, target, site, instrument)).map(request -> {
 
             log.info("Processing : {}", request);
 
+            List<CompletableFuture<Void>> fetches = prefetcher.prefetch(
+                    context, request, Arrays.asList(estimator, adviser, instructor, manager));
+
             Instant s = propertyManager.getNow();
 
             Instant i = s;
 
+            await(request, fetches, 0);
             Estimation estimation = estimator.estimate(context, request);
             i = logElapsed(i, request, "Estimate");
 
+            await(request, fetches, 1);
             Advice advice = adviser.advise(context, request, estimation);
             i = logElapsed(i, request, "Advise");
 
+            await(request, fetches, 2);
             List<Instruction> instructions = instructor.instruct(context, request, advice);
             i = logElapsed(i, request, "Instruct");
 
+            await(request, fetches, 3);
             Map<Instruction, String> futures = manager.manage(context, request, instructions);
-            i = logElapsed(i, request, "Manage");
+            Instant m = logElapsed(i, request, "Manage");
+
+            CompletableFuture<Map<Instruction, Boolean>> results = manager.reconcileAsync(context, request, futures);
+
+            return Optional.ofNullable(results).orElse(CompletableFuture.completedFuture(null)).whenComplete((r, e) -> {
+
+                logElapsed(m, request, "Reconcile");
+
+                logElapsed(s, request, "Total");
 
-            Map<Instruction, Boolean> results = manager.reconcile(context, request, futures);
-            i = logElapsed(i, request, "Reconcile");
+            });
 
-            logElapsed(s, request, "Total");
+        }).orElseGet(() -> CompletableFuture.completedFuture(null));
+
+    }
+
+    @VisibleForTesting
+    void await(Request request, List<CompletableFuture<Void>> fetches, int stage) {
+
+        if (fetches == null || fetches.size() <= stage) {
+            return;
+        }
 
-        });
+        prefetcher.await(request, fetches.get(stage));
 
     }
 
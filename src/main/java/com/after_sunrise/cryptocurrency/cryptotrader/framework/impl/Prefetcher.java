@@ -0,0 +1,361 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Service;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.ZERO;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Warms up the context data which the pipeline stages will read, queued in the order of the stages.
+ *
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class Prefetcher extends AbstractService {
+
+    private static final String CONCURRENCY_KEY = "concurrency";
+
+    private static final int CONCURRENCY_VAL = 4;
+
+    private static final String DEADLINE_KEY = "deadline";
+
+    private static final BigDecimal DEADLINE_VAL = new BigDecimal("0.5");
+
+    private static final int THREADS = 16;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final PropertyManager manager;
+
+    private final ExecutorService executor;
+
+    @Inject
+    public Prefetcher(Injector injector) {
+
+        this.manager = injector.getInstance(PropertyManager.class);
+
+        this.executor = injector.getInstance(ExecutorFactory.class).get(getClass(), THREADS);
+
+    }
+
+    @Override
+    public String get() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Queues the fetches of all the stages at once, earlier stages first, and returns a future per stage
+     * which completes once the fetches of that stage are all done, failed or skipped.
+     */
+    public List<CompletableFuture<Void>> prefetch(Context context, Request request, List<? extends Service> stages) {
+
+        Instant cutoff = request.getTargetTime();
+
+        if (context == null || cutoff == null || stages == null) {
+            return Collections.emptyList();
+        }
+
+        Key key = Key.from(request);
+
+        Set<DataType> planned = EnumSet.noneOf(DataType.class);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(stages.size());
+
+        for (int i = 0; i < stages.size(); i++) {
+
+            Set<DataType> types = EnumSet.noneOf(DataType.class);
+
+            types.addAll(trimToEmpty(stages.get(i).getDataTypes(request)));
+
+            types.removeAll(planned);
+
+            planned.addAll(types);
+
+            List<Key> keys = i == 0 ? getEstimationKeys(request) : Collections.singletonList(key);
+
+            futures.add(submit(context, keys, types, cutoff));
+
+        }
+
+        log.trace("Prefetch : [{}.{}] {}", request.getSite(), request.getInstrument(), planned);
+
+        return futures;
+
+    }
+
+    /**
+     * Waits for the fetches of a stage, no longer than the fraction of the interval up to the target time.
+     */
+    public void await(Request request, Future<?> future) {
+
+        Instant deadline = getDeadline(request);
+
+        if (future == null || deadline == null) {
+            return;
+        }
+
+        try {
+
+            future.get(Math.max(Duration.between(manager.getNow(), deadline).toMillis(), 0), MILLISECONDS);
+
+        } catch (TimeoutException e) {
+
+            log.debug("Prefetch incomplete : [{}.{}] {}", request.getSite(), request.getInstrument(), deadline);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } catch (ExecutionException e) {
+
+            log.debug("Prefetch failed : {}", e.toString());
+
+        }
+
+    }
+
+    @VisibleForTesting
+    Instant getDeadline(Request request) {
+
+        Instant current = request.getCurrentTime();
+
+        Instant target = request.getTargetTime();
+
+        if (current == null || target == null || manager.getNow() == null) {
+            return null;
+        }
+
+        BigDecimal fraction = getDecimalProperty(DEADLINE_KEY, DEADLINE_VAL).max(ZERO).min(ONE);
+
+        long millis = BigDecimal.valueOf(Duration.between(current, target).toMillis()).multiply(fraction).longValue();
+
+        return current.plusMillis(millis);
+
+    }
+
+    /**
+     * Queues the fetches of the estimation inputs, and completes once they are all done, failed or skipped.
+     */
+    public CompletableFuture<Void> fetch(Context context, Request request, Set<DataType> types) {
+
+        Instant cutoff = request.getTargetTime();
+
+        if (context == null || cutoff == null || types == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return submit(context, getEstimationKeys(request), types, cutoff);
+
+    }
+
+    private CompletableFuture<Void> submit(Context context, List<Key> keys, Set<DataType> types, Instant cutoff) {
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (Key k : keys) {
+
+            Lane lane = lanes.computeIfAbsent(StringUtils.trimToEmpty(k.getSite()),
+                    site -> new Lane(Math.max(getIntProperty(CONCURRENCY_KEY, CONCURRENCY_VAL), 1)));
+
+            types.forEach(type -> createFetches(context, k, type).forEach(f -> futures.add(lane.submit(cutoff, f))));
+
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+
+    }
+
+    @VisibleForTesting
+    List<Key> getEstimationKeys(Request request) {
+
+        Key key = Key.from(request);
+
+        List<Key> keys = new ArrayList<>();
+
+        keys.add(key);
+
+        for (Composite composite : trimToEmpty(request.getEstimatorComposites())) {
+
+            String site = StringUtils.trimToEmpty(composite.getSite());
+
+            if (site.length() <= 1 || composite.getInstrument() == null) {
+                continue;
+            }
+
+            Key k = Key.build(key).site(site.substring(1)).instrument(composite.getInstrument()).build();
+
+            if (!keys.contains(k)) {
+                keys.add(k);
+            }
+
+        }
+
+        return keys;
+
+    }
+
+    @VisibleForTesting
+    List<Runnable> createFetches(Context context, Key key, DataType type) {
+
+        switch (type) {
+            case STATE:
+                return Collections.singletonList(() -> context.getState(key));
+            case TICK:
+                return Arrays.asList(
+                        () -> context.getBestAskPrice(key),
+                        () -> context.getBestBidPrice(key),
+                        () -> context.getBestAskSize(key),
+                        () -> context.getBestBidSize(key),
+                        () -> context.getMidPrice(key),
+                        () -> context.getLastPrice(key)
+                );
+            case BOOK:
+                return Arrays.asList(
+                        () -> context.getAskPrices(key),
+                        () -> context.getBidPrices(key)
+                );
+            case TRADE:
+                return Collections.singletonList(() -> context.listTrades(key, null));
+            case PRODUCT:
+                return Arrays.asList(
+                        () -> context.getInstrumentCurrency(key),
+                        () -> context.getFundingCurrency(key),
+                        () -> context.getCommissionRate(key),
+                        () -> context.isMarginable(key),
+                        () -> context.getExpiry(key)
+                );
+            case POSITION:
+                return Arrays.asList(
+                        () -> context.getInstrumentPosition(key),
+                        () -> context.getFundingPosition(key)
+                );
+            case ORDER:
+                return Arrays.asList(
+                        () -> context.listActiveOrders(key),
+                        () -> context.listExecutions(key)
+                );
+            default:
+                return Collections.emptyList();
+        }
+
+    }
+
+    /**
+     * Runs the fetches of a site in the submitted order, with a bounded number in flight.
+     */
+    private class Lane {
+
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final int limit;
+
+        private Lane(int limit) {
+            this.limit = limit;
+        }
+
+        private CompletableFuture<Void> submit(Instant cutoff, Runnable fetch) {
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+
+            queue.add(() -> {
+
+                try {
+
+                    Instant now = manager.getNow();
+
+                    if (now != null && !now.isBefore(cutoff)) {
+                        return;
+                    }
+
+                    fetch.run();
+
+                } finally {
+                    future.complete(null);
+                }
+
+            });
+
+            drain();
+
+            return future;
+
+        }
+
+        private void drain() {
+
+            while (!queue.isEmpty()) {
+
+                int count = active.get();
+
+                if (count >= limit) {
+                    return;
+                }
+
+                if (!active.compareAndSet(count, count + 1)) {
+                    continue;
+                }
+
+                Runnable task = queue.poll();
+
+                if (task == null) {
+
+                    active.decrementAndGet();
+
+                    continue;
+
+                }
+
+                try {
+
+                    executor.execute(() -> {
+
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            log.debug("Prefetch failed : {}", e.toString());
+                        } finally {
+                            active.decrementAndGet();
+                        }
+
+                        drain();
+
+                    });
+
+                } catch (RuntimeException e) {
+
+                    active.decrementAndGet();
+
+                    log.warn("Prefetch rejected.", e);
+
+                    return;
+
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -3,6 +3,8 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Pipeline;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trader;
 import com.google.common.annotations.VisibleForTesting;
@@ -12,16 +14,12 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.IdentityHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.OptionalDouble;
-import java.util.Queue;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.apache.commons.lang3.StringUtils.trimToEmpty;
 
 /**
@@ -41,7 +39,15 @@ public class TraderImpl implements Trader {
 
     private final Map<String, Map<String, AtomicLong>> frequencies;
 
-    private final Queue<Duration> durations;
+    private final Map<Composite, Queue<Duration>> durations;
+
+    private final Map<Composite, Future<?>> runs;
+
+    private final Set<Composite> dirties;
+
+    private final Map<Composite, Instant> timestamps;
+
+    private final Semaphore signal;
 
     @Inject
     public TraderImpl(Injector injector) {
@@ -54,12 +60,22 @@ public class TraderImpl implements Trader {
 
         this.frequencies = new ConcurrentHashMap<>();
 
-        this.durations = new ConcurrentLinkedQueue<>();
+        this.durations = new ConcurrentHashMap<>();
+
+        this.runs = new ConcurrentHashMap<>();
+
+        this.dirties = ConcurrentHashMap.newKeySet();
+
+        this.timestamps = new ConcurrentHashMap<>();
 
-        int threads = propertyManager.getTradingThreads();
+        this.signal = new Semaphore(0);
+
+        int threads = Math.max(propertyManager.getTradingThreads(), propertyManager.getTradingTargets().size());
 
         this.executor = injector.getInstance(ExecutorFactory.class).get(getClass(), threads);
 
+        injector.getInstance(Context.class).addListener(this::mark);
+
     }
 
     @Override
@@ -81,6 +97,8 @@ public class TraderImpl implements Trader {
 
         old.countDown();
 
+        signal.release();
+
     }
 
     @Override
@@ -100,6 +118,8 @@ public class TraderImpl implements Trader {
 
         latch.countDown();
 
+        signal.release();
+
     }
 
     @Override
@@ -135,9 +155,7 @@ public class TraderImpl implements Trader {
                 log.debug("Sleeping : {} sec (Elapsed {} sec)",
                         remaining.getSeconds(), String.format("%03d", elapsed.getSeconds()));
 
-                processDuration(durations, elapsed);
-
-                latch.await(Math.max(remaining.toMillis(), 0), MILLISECONDS);
+                awaitEvents(latch, remaining);
 
             }
 
@@ -152,9 +170,7 @@ public class TraderImpl implements Trader {
     }
 
     @VisibleForTesting
-    void processPipeline(Instant now) throws InterruptedException {
-
-        Map<Composite, Future<?>> futures = new IdentityHashMap<>();
+    void processPipeline(Instant now) {
 
         for (Composite c : propertyManager.getTradingTargets()) {
 
@@ -170,31 +186,199 @@ public class TraderImpl implements Trader {
             Integer frequency = propertyManager.getTradingFrequency(site, instrument);
 
             if (count.getAndIncrement() % frequency == 0) {
+                dispatch(new Composite(site, instrument), now, frequency);
+            }
 
-                Duration interval = calculateInterval(durations);
+        }
+
+    }
+
+    /**
+     * Submits the pipeline of the target. If its previous process is still running,
+     * the target is marked instead, and processed as an event once the previous process completes.
+     */
+    @VisibleForTesting
+    boolean dispatch(Composite key, Instant now, Integer frequency) {
+
+        Future<?> previous = runs.get(key);
+
+        if (previous != null && !previous.isDone()) {
 
-                Instant target = now.plusMillis(Math.abs(interval.toMillis() * frequency));
+            log.info("Overrun : {}.{}", key.getSite(), key.getInstrument());
 
-                futures.put(c, executor.submit(() -> pipeline.process(now, target, site, instrument)));
+            dirties.add(key);
 
+            if (previous.isDone()) {
+                signal.release(); // Completed in between.
             }
 
+            return false;
+
         }
 
-        for (Entry<Composite, Future<?>> entry : futures.entrySet()) {
+        dirties.remove(key);
+
+        Optional.ofNullable(now).ifPresent(t -> timestamps.put(key, t));
+
+        Queue<Duration> history = durations.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+
+        Duration interval = calculateInterval(history);
+
+        Instant target = now.plusMillis(Math.abs(interval.toMillis() * frequency));
+
+        CompletableFuture<Void> run = new CompletableFuture<>();
+
+        executor.execute(() -> {
+
+            CompletableFuture<?> reconciled = null;
 
             try {
 
-                entry.getValue().get();
+                reconciled = pipeline.process(now, target, key.getSite(), key.getInstrument());
 
-            } catch (ExecutionException e) {
+            } catch (RuntimeException e) {
 
-                log.error("Trading failure : " + entry.getKey(), e);
+                log.error("Trading failure : " + key, e);
 
             }
 
+            // The target stays busy until its orders are reconciled.
+            Optional.ofNullable(reconciled).orElse(CompletableFuture.completedFuture(null)).whenComplete((r, e) -> {
+
+                Instant finish = propertyManager.getNow();
+
+                if (finish != null) {
+                    processDuration(history, Duration.between(now, finish));
+                }
+
+                run.complete(null);
+
+                if (!dirties.isEmpty()) {
+                    signal.release();
+                }
+
+            });
+
+        });
+
+        runs.put(key, run);
+
+        return true;
+
+    }
+
+    @VisibleForTesting
+    void mark(Key key) {
+
+        if (key == null) {
+            return;
         }
 
+        String site = trimToEmpty(key.getSite());
+
+        String instrument = trimToEmpty(key.getInstrument());
+
+        Duration gap = propertyManager.getTradingGap(site, instrument);
+
+        if (gap == null || gap.isNegative() || gap.isZero()) {
+            return;
+        }
+
+        if (dirties.add(new Composite(site, instrument))) {
+            signal.release();
+        }
+
+    }
+
+    @VisibleForTesting
+    void awaitEvents(CountDownLatch latch, Duration remaining) throws InterruptedException {
+
+        long deadline = System.nanoTime() + Math.max(remaining.toNanos(), 0);
+
+        while (latch.getCount() > 0) {
+
+            long wait = deadline - System.nanoTime();
+
+            if (wait <= 0) {
+                break;
+            }
+
+            Duration delay = processEvents();
+
+            if (delay != null) {
+                wait = Math.min(wait, delay.toNanos());
+            }
+
+            if (signal.tryAcquire(wait, NANOSECONDS)) {
+                signal.drainPermits();
+            }
+
+        }
+
+    }
+
+    /**
+     * Processes the marked targets whose minimum gap has elapsed since the last process.
+     *
+     * @return Time until the next marked target becomes eligible, or null if none is pending.
+     */
+    @VisibleForTesting
+    Duration processEvents() {
+
+        Instant now = dirties.isEmpty() ? null : propertyManager.getNow();
+
+        if (now == null) {
+            return null;
+        }
+
+        Duration delay = null;
+
+        Set<Composite> keys = new HashSet<>();
+
+        for (Composite c : propertyManager.getTradingTargets()) {
+
+            String site = trimToEmpty(c.getSite());
+
+            String instrument = trimToEmpty(c.getInstrument());
+
+            Composite key = new Composite(site, instrument);
+
+            keys.add(key);
+
+            if (!dirties.contains(key)) {
+                continue;
+            }
+
+            Instant last = timestamps.get(key);
+
+            Duration gap = propertyManager.getTradingGap(site, instrument);
+
+            if (last != null && gap != null && now.isBefore(last.plus(gap))) {
+
+                Duration wait = Duration.between(now, last.plus(gap));
+
+                delay = delay == null || wait.compareTo(delay) < 0 ? wait : delay;
+
+                continue;
+
+            }
+
+            Future<?> previous = runs.get(key);
+
+            if (previous != null && !previous.isDone()) {
+                continue; // Revisited on completion.
+            }
+
+            log.trace("Trade event : {}.{}", site, instrument);
+
+            dispatch(key, now, propertyManager.getTradingFrequency(site, instrument));
+
+        }
+
+        dirties.retainAll(keys);
+
+        return delay;
+
     }
 
     @VisibleForTesting
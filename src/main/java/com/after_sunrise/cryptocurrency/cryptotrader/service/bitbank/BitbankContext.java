@@ -8,6 +8,7 @@ import cc.bitbank.entity.Transactions;
 import cc.bitbank.entity.enums.CurrencyPair;
 import cc.bitbank.entity.enums.OrderSide;
 import cc.bitbank.entity.enums.OrderType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -33,6 +34,7 @@ import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
 import static java.util.Collections.*;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 /**
  * @author takanori.takase
@@ -42,6 +44,8 @@ public class BitbankContext extends TemplateContext implements BitbankService {
 
     private static final Pattern NUMERIC = Pattern.compile("^[0-9]+$");
 
+    private static final int BATCH = 30;
+
     private final ThreadLocal<Bitbankcc> localApi;
 
     private final NavigableMap<Long, BitbankOrder> cachedOrders;
@@ -95,6 +99,11 @@ public class BitbankContext extends TemplateContext implements BitbankService {
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return fetchDepth(key).map(BitbankDepth::getBook).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
         return fetchDepth(key).map(BitbankDepth::getAsks)
@@ -524,43 +533,29 @@ public class BitbankContext extends TemplateContext implements BitbankService {
     @Override
     public Map<CancelInstruction, String> cancelOrders(Key key, Set<CancelInstruction> instructions) {
 
-        Map<CancelInstruction, String> results = new IdentityHashMap<>();
-
         ProductType product = ProductType.find(key.getInstrument());
 
-        if (product != null) {
-
-            trimToEmpty(instructions).stream()
-                    .filter(Objects::nonNull)
-                    .filter(i -> StringUtils.isNotBlank(i.getId()))
-                    .filter(i -> NUMERIC.matcher(i.getId()).matches())
-                    .forEach(i -> {
-
-                        String result;
-
-                        try {
-
-                            long id = Long.valueOf(i.getId());
-
-                            cc.bitbank.entity.Order order = getLocalApi().cancelOrder(product.getPair(), id);
-
-                            result = order == null ? null : new BitbankOrder(order).getId();
+        if (product == null) {
+            return new IdentityHashMap<>();
+        }
 
-                        } catch (Exception e) {
+        return handleBatches(instructions, getIntProperty("batch", BATCH),
+                i -> StringUtils.isNotBlank(i.getId()) && NUMERIC.matcher(i.getId()).matches(), batch -> executeAsync(() -> {
 
-                            log.warn("Order cancel failure : " + i.getId(), e);
+                    long[] ids = batch.stream().mapToLong(i -> Long.valueOf(i.getId())).toArray();
 
-                            result = null;
+                    Orders orders = getLocalApi().cancelOrders(product.getPair(), ids);
 
-                        }
+                    Set<String> cancelled = orders == null || ArrayUtils.isEmpty(orders.orders) ? emptySet() :
+                            Stream.of(orders.orders).filter(Objects::nonNull).map(o -> new BitbankOrder(o).getId()).collect(toSet());
 
-                        results.put(i, result);
+                    Map<CancelInstruction, String> results = new IdentityHashMap<>();
 
-                    });
+                    batch.forEach(i -> results.put(i, cancelled.contains(i.getId()) ? i.getId() : null));
 
-        }
+                    return results;
 
-        return results;
+                }));
 
     }
 
@@ -1,6 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitbank;
 
 import cc.bitbank.entity.Depth;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.google.common.annotations.VisibleForTesting;
 import lombok.Getter;
 import lombok.ToString;
@@ -27,6 +28,8 @@ public class BitbankDepth {
 
     private final Instant timestamp;
 
+    private final Book book;
+
     private final NavigableMap<BigDecimal, BigDecimal> asks;
 
     private final NavigableMap<BigDecimal, BigDecimal> bids;
@@ -35,9 +38,11 @@ public class BitbankDepth {
 
         timestamp = depth.getTimestamp() == null ? null : Instant.ofEpochMilli(depth.getTimestamp().getTime());
 
-        asks = convert(depth.getAsks(), NATURAL);
+        book = Book.of(convert(depth.getAsks(), NATURAL), convert(depth.getBids(), REVERSE));
+
+        asks = book.getAsks().asMap();
 
-        bids = convert(depth.getBids(), REVERSE);
+        bids = book.getBids().asMap();
 
     }
 
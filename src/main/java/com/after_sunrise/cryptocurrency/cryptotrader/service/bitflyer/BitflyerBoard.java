@@ -1,26 +1,107 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer;
 
 import com.after_sunrise.cryptocurrency.bitflyer4j.entity.Board;
-import lombok.Getter;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import lombok.ToString;
 
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.*;
+
+import static java.util.Collections.unmodifiableNavigableMap;
 
 /**
  * @author takanori.takase
  * @version 0.0.1
  */
-@Getter
 @ToString
 public class BitflyerBoard {
 
-    private final Instant timestamp;
+    private static final Comparator<BigDecimal> NATURAL = Comparator.naturalOrder();
+
+    private static final Comparator<BigDecimal> REVERSE = Comparator.reverseOrder();
+
+    private final NavigableMap<BigDecimal, BigDecimal> asks = new TreeMap<>(NATURAL);
+
+    private final NavigableMap<BigDecimal, BigDecimal> bids = new TreeMap<>(REVERSE);
+
+    private Instant timestamp;
 
-    private final Board delegate;
+    public BitflyerBoard(Instant timestamp, Board snapshot) {
 
-    public BitflyerBoard(Instant timestamp, Board delegate) {
         this.timestamp = timestamp;
-        this.delegate = delegate;
+
+        if (snapshot != null) {
+
+            merge(asks, snapshot.getAsk());
+
+            merge(bids, snapshot.getBid());
+
+        }
+
+    }
+
+    private void merge(NavigableMap<BigDecimal, BigDecimal> map, List<? extends Board.Quote> quotes) {
+
+        if (quotes == null) {
+            return;
+        }
+
+        quotes.stream()
+                .filter(Objects::nonNull)
+                .filter(q -> q.getPrice() != null)
+                .filter(q -> q.getSize() != null)
+                .forEach(q -> {
+
+                    if (q.getSize().signum() > 0) {
+                        map.put(q.getPrice(), q.getSize());
+                    } else {
+                        map.remove(q.getPrice());
+                    }
+
+                });
+
+    }
+
+    public synchronized boolean update(Instant timestamp, Board delta) {
+
+        if (delta != null) {
+
+            merge(asks, delta.getAsk());
+
+            merge(bids, delta.getBid());
+
+        }
+
+        this.timestamp = timestamp;
+
+        if (asks.isEmpty() || bids.isEmpty()) {
+            return true;
+        }
+
+        // Crossed book implies missed differences.
+
+        return bids.firstKey().compareTo(asks.firstKey()) < 0;
+
+    }
+
+    /**
+     * Snapshot of the current levels, independent of the later updates.
+     */
+    public synchronized Book toBook() {
+        return Book.of(asks, bids);
+    }
+
+    public synchronized Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public NavigableMap<BigDecimal, BigDecimal> getAsks() {
+        return unmodifiableNavigableMap(asks);
+    }
+
+    public NavigableMap<BigDecimal, BigDecimal> getBids() {
+        return unmodifiableNavigableMap(bids);
     }
 
 }
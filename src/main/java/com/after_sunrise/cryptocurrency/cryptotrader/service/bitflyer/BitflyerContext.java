@@ -5,10 +5,14 @@ import com.after_sunrise.cryptocurrency.bitflyer4j.Bitflyer4jFactory;
 import com.after_sunrise.cryptocurrency.bitflyer4j.core.*;
 import com.after_sunrise.cryptocurrency.bitflyer4j.entity.*;
 import com.after_sunrise.cryptocurrency.bitflyer4j.service.*;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.TradeStore;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.collections4.CollectionUtils;
@@ -26,9 +30,9 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -104,7 +108,9 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
     private final Map<String, Optional<Tick>> realtimeTicks;
 
-    private final Map<String, NavigableMap<Instant, BitflyerTrade>> realtimeTrades;
+    private final TradeStore realtimeTrades;
+
+    private final Map<String, Set<String>> realtimeAliases;
 
     public BitflyerContext() {
 
@@ -123,7 +129,9 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         realtimeTicks = new ConcurrentHashMap<>();
 
-        realtimeTrades = new ConcurrentHashMap<>();
+        realtimeTrades = new TradeStore((int) REALTIME_TRADE.getSeconds());
+
+        realtimeAliases = new ConcurrentHashMap<>();
 
         bitflyer4j = api;
 
@@ -146,11 +154,39 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         bitflyer4j.close();
 
+        super.close();
+
     }
 
     @Override
     public void onBoards(String product, Board value) {
-        // TODO
+
+        if (value == null) {
+            return;
+        }
+
+        String key = StringUtils.trimToEmpty(product);
+
+        Instant timestamp = getNow();
+
+        realtimeBoards.computeIfPresent(key, (k, v) -> {
+
+            BitflyerBoard board = v.orElse(null);
+
+            if (board == null || board.update(timestamp, value)) {
+                return v;
+            }
+
+            // Discard and wait for resync, since some differences are missing.
+
+            log.debug("Board out of sync : {}", k);
+
+            return Optional.empty();
+
+        });
+
+        notifyRealtime(key);
+
     }
 
     @Override
@@ -166,6 +202,8 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         realtimeBoards.put(key, Optional.of(new BitflyerBoard(timestamp, value)));
 
+        notifyRealtime(key);
+
     }
 
     @Override
@@ -183,6 +221,8 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         });
 
+        notifyRealtime(StringUtils.trimToEmpty(product));
+
     }
 
     @Override
@@ -194,65 +234,46 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
         String id = StringUtils.trimToEmpty(product);
 
-        NavigableMap<Instant, BitflyerTrade> trades = realtimeTrades.get(id);
-
-        if (trades == null) {
-            return;
-        }
-
-        updateExecutions(trades, values);
-
-    }
-
-    @VisibleForTesting
-    void updateExecutions(NavigableMap<Instant, BitflyerTrade> trades, List<Execution> values) {
-
-        if (trades == null || values == null) {
+        if (!realtimeTrades.contains(ID, id)) {
             return;
         }
 
         values.stream().filter(Objects::nonNull)
                 .filter(exec -> exec.getTimestamp() != null)
-                .filter(exec -> exec.getPrice() != null)
-                .filter(exec -> exec.getPrice().signum() != 0)
-                .filter(exec -> exec.getSize() != null)
-                .filter(exec -> exec.getSize().signum() != 0)
-                .forEach(exec -> {
-
-                    Instant time = exec.getTimestamp().plus(LONG_ONE, SECONDS).truncatedTo(SECONDS).toInstant();
+                .forEach(exec -> realtimeTrades.append(ID, id, toBarTime(exec), exec.getPrice(), exec.getSize()));
 
-                    BitflyerTrade trade = trades.get(time);
+        notifyRealtime(id);
 
-                    if (trade != null) {
+    }
 
-                        trade.accumulate(exec.getPrice(), exec.getSize());
+    @VisibleForTesting
+    String convertRealtimeAlias(Key key) {
 
-                        return;
+        String product = StringUtils.trimToEmpty(convertProductAlias(key));
 
-                    }
+        if (key != null && StringUtils.isNotEmpty(key.getInstrument())) {
+            realtimeAliases.computeIfAbsent(product, k -> ConcurrentHashMap.newKeySet()).add(key.getInstrument());
+        }
 
-                    trades.put(time, new BitflyerTrade(time, exec.getPrice(), exec.getSize()));
+        return product;
 
-                });
+    }
 
-        Instant cutoff = getNow().minus(REALTIME_TRADE);
+    @VisibleForTesting
+    void notifyRealtime(String product) {
 
-        while (true) {
+        Set<String> aliases = realtimeAliases.get(product);
 
-            Map.Entry<Instant, BitflyerTrade> entry = trades.firstEntry();
+        if (aliases == null) {
 
-            if (entry == null) {
-                break;
-            }
+            notifyListeners(product);
 
-            if (entry.getKey().isAfter(cutoff)) {
-                break;
-            }
-
-            trades.remove(entry.getKey());
+            return;
 
         }
 
+        aliases.forEach(this::notifyListeners);
+
     }
 
     @VisibleForTesting
@@ -281,11 +302,11 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
     }
 
     @VisibleForTesting
-    BitflyerBoard getBoard(Key key) {
+    Book getBoard(Key key) {
 
-        return findCached(BitflyerBoard.class, key, () -> {
+        return findCached(Book.class, key, () -> {
 
-            String instrument = StringUtils.trimToEmpty(convertProductAlias(key));
+            String instrument = convertRealtimeAlias(key);
 
             Optional<BitflyerBoard> realtime = realtimeBoards.get(instrument);
 
@@ -309,28 +330,41 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
                 // Use cached if the timestamp is not old.
 
-                return realtime.orElse(null);
+                return realtime.map(BitflyerBoard::toBook).orElse(null);
 
             }
 
-            // Fall back to request/response.
+            // Fall back to request/response, and resync the realtime board.
 
             Board.Request request = Board.Request.builder().product(instrument).build();
 
             Board board = extract(marketService.getBoard(request), getTimeout());
 
-            return board == null ? null : new BitflyerBoard(getNow(), board);
+            if (board == null) {
+                return null;
+            }
+
+            BitflyerBoard snapshot = new BitflyerBoard(getNow(), board);
+
+            realtimeBoards.put(instrument, Optional.of(snapshot));
+
+            return snapshot.toBook();
 
         });
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return getBoard(key);
+    }
+
     @VisibleForTesting
     Tick getTick(Key key) {
 
         return findCached(Tick.class, key, () -> {
 
-            String instrument = StringUtils.trimToEmpty(convertProductAlias(key));
+            String instrument = convertRealtimeAlias(key);
 
             Optional<Tick> realtime = realtimeTicks.get(instrument);
 
@@ -407,115 +441,136 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
     }
 
+    @VisibleForTesting
+    BigDecimal findBest(Key key,
+                        Function<Book, Side> side,
+                        Function<Map.Entry<BigDecimal, BigDecimal>, BigDecimal> board,
+                        Function<Tick, BigDecimal> tick) {
+
+        Book b = getBoard(key);
+
+        Map.Entry<BigDecimal, BigDecimal> entry = b == null ? null : side.apply(b).asMap().firstEntry();
+
+        if (entry != null) {
+            return board.apply(entry);
+        }
+
+        Tick t = getTick(key);
+
+        return t == null ? null : tick.apply(t);
+
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
+        return findBest(key, Book::getAsks, Map.Entry::getKey, Tick::getBestAskPrice);
+    }
 
-        Tick tick = getTick(key);
+    @Override
+    public BigDecimal getBestBidPrice(Key key) {
+        return findBest(key, Book::getBids, Map.Entry::getKey, Tick::getBestBidPrice);
+    }
 
-        return tick == null ? null : tick.getBestAskPrice();
+    @Override
+    public BigDecimal getBestAskSize(Key key) {
+        return findBest(key, Book::getAsks, Map.Entry::getValue, Tick::getBestAskSize);
+    }
 
+    @Override
+    public BigDecimal getBestBidSize(Key key) {
+        return findBest(key, Book::getBids, Map.Entry::getValue, Tick::getBestBidSize);
     }
 
     @Override
-    public BigDecimal getBestBidPrice(Key key) {
+    public BigDecimal getLastPrice(Key key) {
 
         Tick tick = getTick(key);
 
-        return tick == null ? null : tick.getBestBidPrice();
+        return tick == null ? null : tick.getTradePrice();
 
     }
 
     @Override
-    public BigDecimal getBestAskSize(Key key) {
+    public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
 
-        Tick tick = getTick(key);
+        Book b = getBoard(key);
 
-        return tick == null ? null : tick.getBestAskSize();
+        return b == null ? super.getAskPrices(key) : b.getAsks().asMap();
 
     }
 
     @Override
-    public BigDecimal getBestBidSize(Key key) {
+    public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
 
-        Tick tick = getTick(key);
+        Book b = getBoard(key);
 
-        return tick == null ? null : tick.getBestBidSize();
+        return b == null ? super.getBidPrices(key) : b.getBids().asMap();
 
     }
 
     @Override
-    public BigDecimal getLastPrice(Key key) {
+    public List<Trade> listTrades(Key key, Instant fromTime) {
 
-        Tick tick = getTick(key);
+        String id = initializeTrades(key);
 
-        return tick == null ? null : tick.getTradePrice();
+        Instant cutoff = fromTime != null ? fromTime : getNow().minus(REALTIME_TRADE);
+
+        // Copies of the bars, which the realtime thread does not update afterwards.
+        return realtimeTrades.list(ID, id, cutoff, false);
 
     }
 
     @Override
-    public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-
-        BitflyerBoard b = getBoard(key);
+    public void forEachTrade(Key key, Instant fromTime, Instant toTime, Consumer<Trade> consumer) {
 
-        if (b == null) {
-            return super.getAskPrices(key);
+        if (consumer == null) {
+            return;
         }
 
-        Map<BigDecimal, BigDecimal> values = new HashMap<>();
+        String id = initializeTrades(key);
 
-        trimToEmpty(b.getDelegate().getAsk()).stream()
-                .filter(Objects::nonNull)
-                .filter(q -> q.getPrice() != null)
-                .filter(q -> q.getSize() != null)
-                .filter(q -> q.getSize().signum() != 0)
-                .forEach(q -> values.put(q.getPrice(), q.getSize()));
+        Instant cutoff = fromTime != null ? fromTime : getNow().minus(REALTIME_TRADE);
 
-        return values;
+        realtimeTrades.forEach(ID, id, cutoff, toTime, consumer);
 
     }
 
     @Override
-    public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-
-        BitflyerBoard b = getBoard(key);
+    public void forEachBar(Key key, Duration resolution, Instant fromTime, Instant toTime, Consumer<Bar> consumer) {
 
-        if (b == null) {
-            return super.getBidPrices(key);
+        if (consumer == null) {
+            return;
         }
 
-        Map<BigDecimal, BigDecimal> values = new HashMap<>();
+        String id = initializeTrades(key);
 
-        trimToEmpty(b.getDelegate().getBid()).stream()
-                .filter(Objects::nonNull)
-                .filter(q -> q.getPrice() != null)
-                .filter(q -> q.getSize() != null)
-                .filter(q -> q.getSize().signum() != 0)
-                .forEach(q -> values.put(q.getPrice(), q.getSize()));
+        Instant cutoff = fromTime != null ? fromTime : getNow().minus(REALTIME_TRADE);
 
-        return values;
+        if (!realtimeTrades.forEachBar(ID, id, resolution, cutoff, toTime, consumer)) {
+            super.forEachBar(key, resolution, fromTime, toTime, consumer);
+        }
 
     }
 
-    @Override
-    public List<Trade> listTrades(Key key, Instant fromTime) {
+    private Instant toBarTime(Execution exec) {
+        return exec.getTimestamp().plus(LONG_ONE, SECONDS).truncatedTo(SECONDS).toInstant();
+    }
 
-        String id = StringUtils.trimToEmpty(convertProductAlias(key));
+    private String initializeTrades(Key key) {
 
-        Lock lock = realtimeLocks.computeIfAbsent(id, k -> new ReentrantLock());
+        String id = convertRealtimeAlias(key);
 
-        NavigableMap<Instant, BitflyerTrade> trades;
+        Lock lock = realtimeLocks.computeIfAbsent(id, k -> new ReentrantLock());
 
         try {
 
             lock.lock();
 
-            trades = realtimeTrades.get(id);
-
-            if (trades == null) {
+            if (!realtimeTrades.contains(ID, id)) {
 
                 realtimeService.subscribeExecution(singletonList(id));
 
-                trades = new ConcurrentSkipListMap<>();
+                List<Trade> trades = new ArrayList<>();
 
                 Execution.Request.RequestBuilder b = Execution.Request.builder().product(id).count(REALTIME_COUNT);
 
@@ -531,7 +586,13 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
                     List<Execution> execs = trimToEmpty(extractQuietly(marketService.getExecutions(r), getTimeout()));
 
-                    updateExecutions(trades, execs);
+                    execs.stream().filter(Objects::nonNull)
+                            .filter(e -> e.getTimestamp() != null)
+                            .filter(e -> e.getPrice() != null && e.getPrice().signum() > 0)
+                            .filter(e -> e.getSize() != null && e.getSize().signum() > 0)
+                            .map(e -> new BitflyerTrade(toBarTime(e), e.getPrice(), e.getSize()))
+                            .filter(t -> t.getTimestamp().isAfter(cutoff))
+                            .forEach(trades::add);
 
                     minimumId = execs.stream().filter(Objects::nonNull)
                             .filter(e -> e.getId() != null)
@@ -547,7 +608,8 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
 
                 }
 
-                realtimeTrades.put(id, trades);
+                // Executions of the same second are merged into one bar by the tape.
+                realtimeTrades.register(ID, id, trades);
 
             }
 
@@ -555,13 +617,7 @@ public class BitflyerContext extends TemplateContext implements BitflyerService,
             lock.unlock();
         }
 
-        Instant cutoff = fromTime != null ? fromTime : getNow().minus(REALTIME_TRADE);
-
-        return trades.values().stream()
-                .filter(trade -> trade.getTimestamp() != null)
-                .filter(trade -> trade.getTimestamp().isAfter(cutoff))
-                .map(BitflyerTrade::snapshot)
-                .collect(toList());
+        return id;
 
     }
 
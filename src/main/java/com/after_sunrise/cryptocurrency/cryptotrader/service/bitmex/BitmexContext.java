@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -26,7 +28,7 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex.BitmexService.SideType.BUY;
@@ -38,6 +40,7 @@ import static java.math.RoundingMode.HALF_UP;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.apache.commons.lang3.math.NumberUtils.INTEGER_ZERO;
 
 /**
@@ -94,7 +97,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     private static final Duration BUCKETED = Duration.ofHours(1);
 
-    private final AtomicLong lastNonce = new AtomicLong();
+    private static final int BATCH = Integer.MAX_VALUE;
 
     private final Gson gson;
 
@@ -230,13 +233,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             parameters.put("depth", TEN.toPlainString());
             String path = URL + URL_BOOK + buildQueryParameter(parameters);
 
-            String data = request(GET, path, null, null);
+            List<BitmexBook> values = request(GET, path, null, null, r -> gson.fromJson(r, TYPE_BOOK));
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
-
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_BOOK));
+            return values == null ? null : Collections.unmodifiableList(values);
 
         });
 
@@ -244,6 +243,34 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+
+        if (key == null) {
+            return Book.EMPTY;
+        }
+
+        Book book = findCached(Book.class, key, () -> {
+
+            Map<BigDecimal, BigDecimal> asks = new HashMap<>();
+
+            Map<BigDecimal, BigDecimal> bids = new HashMap<>();
+
+            queryBooks(key).stream()
+                    .filter(Objects::nonNull)
+                    .filter(b -> b.getSide() != null)
+                    .filter(b -> b.getPrice() != null)
+                    .filter(b -> b.getSize() != null)
+                    .forEach(b -> (BitmexBook.SIDE_BUY.equals(b.getSide()) ? bids : asks).put(b.getPrice(), b.getSize()));
+
+            return Book.of(asks, bids);
+
+        });
+
+        return book != null ? book : Book.EMPTY;
+
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
         return queryTick(key).map(t -> UNLISTED.equals(t.getState()) ? t.getLast() : t.getAsk()).orElse(null);
@@ -261,15 +288,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return ZERO;
         }
 
-        return queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> !BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .min(Comparator.comparing(BitmexBook::getPrice))
-                .map(BitmexBook::getSize)
-                .orElse(null);
+        return findBest(key, Book::getAsks);
 
     }
 
@@ -280,15 +299,16 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return ZERO;
         }
 
-        return queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .max(Comparator.comparing(BitmexBook::getPrice))
-                .map(BitmexBook::getSize)
-                .orElse(null);
+        return findBest(key, Book::getBids);
+
+    }
+
+    @VisibleForTesting
+    BigDecimal findBest(Key key, Function<Book, Side> function) {
+
+        Map.Entry<BigDecimal, BigDecimal> entry = function.apply(getBook(key)).asMap().firstEntry();
+
+        return entry == null ? null : entry.getValue();
 
     }
 
@@ -309,17 +329,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return emptyMap();
         }
 
-        Map<BigDecimal, BigDecimal> values = new LinkedHashMap<>();
-
-        queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> !BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .forEach(b -> values.put(b.getPrice(), b.getSize()));
-
-        return values;
+        return getBook(key).getAsks().asMap();
 
     }
 
@@ -330,17 +340,7 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             return emptyMap();
         }
 
-        Map<BigDecimal, BigDecimal> values = new LinkedHashMap<>();
-
-        queryBooks(key).stream()
-                .filter(Objects::nonNull)
-                .filter(b -> b.getSide() != null)
-                .filter(b -> b.getPrice() != null)
-                .filter(b -> b.getSize() != null)
-                .filter(b -> BitmexBook.SIDE_BUY.equals(b.getSide()))
-                .forEach(b -> values.put(b.getPrice(), b.getSize()));
-
-        return values;
+        return getBook(key).getBids().asMap();
 
     }
 
@@ -378,13 +378,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
             String path = URL + URL_TRADE + buildQueryParameter(parameters);
 
-            String data = request(path);
+            List<BitmexTrade> values = request(GET, path, null, null, r -> gson.fromJson(r, TYPE_TRADE));
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
-
-            return Collections.unmodifiableList(gson.fromJson(data, TYPE_TRADE));
+            return values == null ? null : Collections.unmodifiableList(values);
 
         });
 
@@ -406,13 +402,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
                 String path = URL + URL_BUCKETED + buildQueryParameter(parameters);
 
-                String data = request(path);
-
-                if (StringUtils.isEmpty(data)) {
-                    return null;
-                }
+                List<BitmexTrade.Bucketed> values = request(GET, path, null, null, r -> gson.fromJson(r, TYPE_BUCKETED));
 
-                return Collections.unmodifiableList(gson.fromJson(data, TYPE_BUCKETED));
+                return values == null ? null : Collections.unmodifiableList(values);
 
             });
 
@@ -557,39 +549,25 @@ public class BitmexContext extends TemplateContext implements BitmexService {
 
     @VisibleForTesting
     String executePrivate(RequestType type, String url, Map<String, String> parameters, String data) throws Exception {
+        return extract(executePrivateAsync(type, url, parameters, data));
+    }
+
+    @VisibleForTesting
+    CompletableFuture<String> executePrivateAsync(RequestType type, String url,
+                                                  Map<String, String> parameters, String data) throws Exception {
 
         String apiKey = getStringProperty("api.id", null);
         String secret = getStringProperty("api.secret", null);
 
         if (StringUtils.isEmpty(apiKey) || StringUtils.isEmpty(secret)) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
         String suffix = buildQueryParameter(parameters);
 
-        String result;
-
-        synchronized (lastNonce) {
-
-            long millis = 0;
-
-            for (int i = 0; i < Short.MAX_VALUE; i++) {
-
-                millis = getNow().toEpochMilli();
-
-                if (lastNonce.get() < millis) {
-
-                    lastNonce.set(millis);
+        return sequence(() -> {
 
-                    break;
-
-                }
-
-                Thread.yield();
-
-            }
-
-            String nonce = String.valueOf(millis);
+            String nonce = String.valueOf(getNonce());
             String hash = computeHash(secret, type.name(), url + suffix, nonce, data);
 
             Map<String, String> headers = new HashMap<>();
@@ -598,11 +576,9 @@ public class BitmexContext extends TemplateContext implements BitmexService {
             headers.put("api-nonce", nonce);
             headers.put("api-signature", hash);
 
-            result = request(type, URL + url + suffix, headers, data);
+            return requestAsync(type, URL + url + suffix, headers, data);
 
-        }
-
-        return result;
+        });
 
     }
 
@@ -897,104 +873,75 @@ public class BitmexContext extends TemplateContext implements BitmexService {
     @Override
     public Map<CreateInstruction, String> createOrders(Key key, Set<CreateInstruction> instructions) {
 
-        if (CollectionUtils.isEmpty(instructions)) {
-            return Collections.emptyMap();
-        }
-
-        List<CreateInstruction> inputs = instructions.stream().filter(Objects::nonNull).collect(toList());
-
-        Map<CreateInstruction, String> map = new IdentityHashMap<>();
-
-        try {
+        return handleBatches(instructions, getIntProperty("batch", BATCH), i -> i.getPrice() != null
+                && i.getPrice().signum() != 0 && i.getSize() != null && i.getSize().signum() != 0, batch -> {
 
             Map<CreateInstruction, String> ids = new IdentityHashMap<>();
 
-            String data = gson.toJson(singletonMap("orders", inputs.stream()
-                    .filter(i -> i.getPrice() != null)
-                    .filter(i -> i.getPrice().signum() != 0)
-                    .filter(i -> i.getSize() != null)
-                    .filter(i -> i.getSize().signum() != 0)
-                    .map(i -> {
-                        ids.put(i, getUniqueId());
-                        Map<String, Object> params = new TreeMap<>();
-                        params.put("symbol", convertAlias(key));
-                        params.put("side", (i.getSize().signum() >= 0 ? BUY : SELL).getId());
-                        params.put("orderQty", i.getSize().abs());
-                        params.put("price", i.getPrice());
-                        params.put("clOrdID", ids.get(i));
-                        params.put("ordType", i.getPrice().signum() == 0 ? "Market" : "Limit");
-                        params.put("execInst", i.getStrategy());
-                        return params;
-                    }).collect(toList())
-            ));
-
-            String result = executePrivate(RequestType.POST, URL_ORDER_BULK, emptyMap(), data);
+            String data = gson.toJson(singletonMap("orders", batch.stream().map(i -> {
+                ids.put(i, getUniqueId());
+                Map<String, Object> params = new TreeMap<>();
+                params.put("symbol", convertAlias(key));
+                params.put("side", (i.getSize().signum() >= 0 ? BUY : SELL).getId());
+                params.put("orderQty", i.getSize().abs());
+                params.put("price", i.getPrice());
+                params.put("clOrdID", ids.get(i));
+                params.put("ordType", i.getPrice().signum() == 0 ? "Market" : "Limit");
+                params.put("execInst", i.getStrategy());
+                return params;
+            }).collect(toList())));
 
-            List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
+            return executePrivateAsync(RequestType.POST, URL_ORDER_BULK, emptyMap(), data).thenApply(result -> {
 
-            inputs.forEach(i -> map.put(i, results.stream()
-                    .filter(Objects::nonNull)
-                    .filter(o -> StringUtils.isNotEmpty(o.getClientId()))
-                    .filter(o -> StringUtils.equals(o.getClientId(), ids.get(i)))
-                    .map(BitmexOrder::getClientId)
-                    .findAny().orElse(null))
-            );
+                Set<String> accepted = extractClientIds(result);
 
-        } catch (Exception e) {
+                Map<CreateInstruction, String> map = new IdentityHashMap<>();
 
-            log.warn("Order create failure : " + instructions, e);
+                ids.forEach((i, id) -> map.put(i, accepted.contains(id) ? id : null));
 
-            instructions.stream().filter(Objects::nonNull).forEach(i -> map.put(i, null));
+                return map;
 
-        }
+            });
 
-        return map;
+        });
 
     }
 
     @Override
     public Map<CancelInstruction, String> cancelOrders(Key key, Set<CancelInstruction> instructions) {
 
-        if (CollectionUtils.isEmpty(instructions)) {
-            return Collections.emptyMap();
-        }
-
-        Map<CancelInstruction, String> map = new IdentityHashMap<>();
-
-        try {
+        return handleBatches(instructions, getIntProperty("batch", BATCH), i -> StringUtils.isNotEmpty(i.getId()), batch -> {
 
-            String data = gson.toJson(singletonMap("clOrdID", instructions.stream()
-                    .filter(Objects::nonNull)
+            String data = gson.toJson(singletonMap("clOrdID", batch.stream()
                     .map(CancelInstruction::getId)
                     .collect(toList())
             ));
 
-            String result = executePrivate(RequestType.DELETE, URL_ORDER, emptyMap(), data);
+            return executePrivateAsync(RequestType.DELETE, URL_ORDER, emptyMap(), data).thenApply(result -> {
 
-            List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
+                Set<String> accepted = extractClientIds(result);
 
-            instructions.stream().filter(Objects::nonNull).forEach(i -> {
+                Map<CancelInstruction, String> map = new IdentityHashMap<>();
 
-                String id = results.stream()
-                        .filter(Objects::nonNull)
-                        .filter(o -> StringUtils.isNotEmpty(o.getClientId()))
-                        .filter(o -> StringUtils.equals(o.getClientId(), i.getId()))
-                        .map(BitmexOrder::getClientId)
-                        .findAny().orElse(null);
+                batch.forEach(i -> map.put(i, accepted.contains(i.getId()) ? i.getId() : null));
 
-                map.put(i, id);
+                return map;
 
             });
 
-        } catch (Exception e) {
+        });
 
-            log.warn("Order cancel failure : " + instructions, e);
+    }
 
-            instructions.stream().filter(Objects::nonNull).forEach(i -> map.put(i, null));
+    private Set<String> extractClientIds(String result) {
 
-        }
+        List<BitmexOrder> results = gson.fromJson(result, TYPE_ORDER);
 
-        return map;
+        return trimToEmpty(results).stream()
+                .filter(Objects::nonNull)
+                .map(BitmexOrder::getClientId)
+                .filter(StringUtils::isNotEmpty)
+                .collect(toSet());
 
     }
 
@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitpoint;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -83,21 +85,23 @@ public class BitpointContext extends TemplateContext implements BitpointService
     }
 
     @VisibleForTesting
-    Optional<BitpointDepth> queryDepth(Key key) {
+    Optional<Book> queryDepth(Key key) {
 
         ProductType product = ProductType.find(key.getInstrument());
 
         if (product == null) {
-            return null;
+            return Optional.empty();
         }
 
-        BitpointDepth value = findCached(BitpointDepth.class, key, () -> {
+        Book value = findCached(Book.class, key, () -> {
 
             Map<String, String> parameters = singletonMap("symbol", product.getId());
 
             String data = request(URL_SMART + "/api/depth" + buildQueryParameter(parameters));
 
-            return gson.fromJson(data, BitpointDepth.class);
+            BitpointDepth depth = gson.fromJson(data, BitpointDepth.class);
+
+            return depth == null ? null : Book.of(depth.getAskPrices(), depth.getBidPrices());
 
         });
 
@@ -105,38 +109,43 @@ public class BitpointContext extends TemplateContext implements BitpointService
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return queryDepth(key).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
-        return queryDepth(key).map(BitpointDepth::getAskPrices)
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidPrice(Key key) {
-        return queryDepth(key).map(BitpointDepth::getBidPrices)
+        return queryDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestAskSize(Key key) {
-        return queryDepth(key).map(BitpointDepth::getAskPrices)
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
-        return queryDepth(key).map(BitpointDepth::getBidPrices)
+        return queryDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-        return queryDepth(key).map(BitpointDepth::getAskPrices).orElse(null);
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-        return queryDepth(key).map(BitpointDepth::getBidPrices).orElse(null);
+        return queryDepth(key).map(Book::getBids).map(Side::asMap).orElse(null);
     }
 
     @Override
@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.btcbox;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -12,7 +14,6 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.IOException;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -21,7 +22,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.POST;
@@ -104,13 +105,13 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
     }
 
     @VisibleForTesting
-    Optional<BtcboxDepth> fetchDepth(Key key) {
+    Optional<Book> fetchDepth(Key key) {
 
         if (ProductType.BTC_JPY != ProductType.find(key.getInstrument())) {
-            return null;
+            return Optional.empty();
         }
 
-        BtcboxDepth value = findCached(BtcboxDepth.class, key, () -> {
+        Book value = findCached(Book.class, key, () -> {
 
             String data = request(ENDPOINT + "/api/v1/depth");
 
@@ -118,7 +119,9 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
                 return null;
             }
 
-            return gson.fromJson(data, BtcboxDepth.class);
+            BtcboxDepth depth = gson.fromJson(data, BtcboxDepth.class);
+
+            return depth == null ? null : Book.of(depth.getAskPrices(), depth.getBidPrices());
 
         });
 
@@ -126,26 +129,31 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return fetchDepth(key).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskSize(Key key) {
-        return fetchDepth(key).map(BtcboxDepth::getAskPrices)
+        return fetchDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Map.Entry::getValue).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
-        return fetchDepth(key).map(BtcboxDepth::getBidPrices)
+        return fetchDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Map.Entry::getValue).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-        return fetchDepth(key).map(BtcboxDepth::getAskPrices).orElse(null);
+        return fetchDepth(key).map(Book::getAsks).map(Side::asMap).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-        return fetchDepth(key).map(BtcboxDepth::getBidPrices).orElse(null);
+        return fetchDepth(key).map(Book::getBids).map(Side::asMap).orElse(null);
     }
 
     @Override
@@ -279,7 +287,7 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
     }
 
     @VisibleForTesting
-    String post(String path, Map<String, String> parameters) throws IOException, InterruptedException {
+    String post(String path, Map<String, String> parameters) throws Exception {
 
         String apiKey = getStringProperty("api.id", null);
         String secret = getStringProperty("api.secret", null);
@@ -288,16 +296,11 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
             return null;
         }
 
-        String result;
-
-        synchronized (ENDPOINT) {
-
-            // Avoid duplicate nonce
-            TimeUnit.MILLISECONDS.sleep(1);
+        Future<String> result = sequence(() -> {
 
             Map<String, String> map = new LinkedHashMap<>(trimToEmpty(parameters));
             map.put("key", apiKey);
-            map.put("nonce", String.valueOf(getNow().toEpochMilli()));
+            map.put("nonce", String.valueOf(getNonce()));
 
             String body = StringUtils.join(
                     map.entrySet().stream().map(e -> e.getKey() + "=" + e.getValue()).toArray(String[]::new),
@@ -310,11 +313,11 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
             Map<String, String> headers = singletonMap("Content-Type", "application/x-www-form-urlencoded");
 
-            result = request(POST, ENDPOINT + path, headers, data);
+            return requestAsync(POST, ENDPOINT + path, headers, data);
 
-        }
+        });
 
-        return result;
+        return extract(result);
 
     }
 
@@ -473,7 +476,7 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
             try {
 
-                String data = post("/api/v1/trade_add", parameters);
+                String data = prioritize(() -> post("/api/v1/trade_add", parameters));
 
                 BtcboxResponse response = gson.fromJson(data, BtcboxResponse.class);
 
@@ -518,7 +521,7 @@ public class BtcboxContext extends TemplateContext implements BtcboxService {
 
             try {
 
-                String data = post("/api/v1/trade_cancel", singletonMap("id", i.getId()));
+                String data = prioritize(() -> post("/api/v1/trade_cancel", singletonMap("id", i.getId())));
 
                 BtcboxResponse response = gson.fromJson(data, BtcboxResponse.class);
 
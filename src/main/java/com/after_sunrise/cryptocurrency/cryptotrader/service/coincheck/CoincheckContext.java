@@ -1,9 +1,13 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.coincheck;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.TradeStore;
 import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.*;
@@ -25,20 +29,19 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.coincheck.CoincheckService.SideType.*;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.*;
 import static java.lang.Boolean.TRUE;
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
-import static java.math.RoundingMode.HALF_UP;
 import static java.util.Collections.emptyList;
-import static java.util.Collections.synchronizedMap;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 
@@ -75,9 +78,7 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
     private final Gson gson;
 
-    private final Map<String, NavigableMap<Instant, CoincheckTrade>> trades;
-
-    private final AtomicLong lastNonce;
+    private final TradeStore trades;
 
     private final ExecutorService executor;
 
@@ -106,9 +107,7 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
         gson = builder.create();
 
-        trades = synchronizedMap(new HashMap<>());
-
-        lastNonce = new AtomicLong();
+        trades = new TradeStore((int) TRADE_EXPIRY.getSeconds());
 
         executor = Executors.newCachedThreadPool(r -> {
             Thread t = new Thread(r);
@@ -156,7 +155,7 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
     }
 
     @VisibleForTesting
-    Optional<CoincheckBook> queryBook(Key key) {
+    Optional<Book> queryBook(Key key) {
 
         ProductType product = ProductType.find(key.getInstrument());
 
@@ -166,15 +165,11 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
         Key newKey = Key.build(key).instrument(WILDCARD).build();
 
-        CoincheckBook book = findCached(CoincheckBook.class, newKey, () -> {
-
-            String data = request(URL_BOOK);
+        Book book = findCached(Book.class, newKey, () -> {
 
-            if (StringUtils.isEmpty(data)) {
-                return null;
-            }
+            CoincheckBook value = request(GET, URL_BOOK, null, null, r -> gson.fromJson(r, CoincheckBook.class));
 
-            return gson.fromJson(data, CoincheckBook.class);
+            return value == null ? null : Book.of(value.getAsks(), value.getBids());
 
         });
 
@@ -182,24 +177,31 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return queryBook(key).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
-        return queryBook(key).map(CoincheckBook::getBestAskPrice).orElse(null);
+        return queryBook(key).map(Book::getAsks).map(Side::getBestPrice).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidPrice(Key key) {
-        return queryBook(key).map(CoincheckBook::getBestBidPrice).orElse(null);
+        return queryBook(key).map(Book::getBids).map(Side::getBestPrice).orElse(null);
     }
 
     @Override
     public BigDecimal getBestAskSize(Key key) {
-        return queryBook(key).map(CoincheckBook::getBestAskSize).orElse(null);
+        return queryBook(key).map(Book::getAsks).map(Side::asMap)
+                .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
-        return queryBook(key).map(CoincheckBook::getBestBidSize).orElse(null);
+        return queryBook(key).map(Book::getBids).map(Side::asMap)
+                .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
@@ -209,24 +211,68 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-        return queryBook(key).map(CoincheckBook::getAsks).orElseGet(() -> super.getAskPrices(key));
+        return queryBook(key).map(Book::getAsks).<Map<BigDecimal, BigDecimal>>map(Side::asMap).orElseGet(() -> super.getAskPrices(key));
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-        return queryBook(key).map(CoincheckBook::getBids).orElseGet(() -> super.getBidPrices(key));
+        return queryBook(key).map(Book::getBids).<Map<BigDecimal, BigDecimal>>map(Side::asMap).orElseGet(() -> super.getBidPrices(key));
     }
 
     @Override
     public List<Trade> listTrades(Key key, Instant fromTime) {
 
-        ProductType product = ProductType.find(key.getInstrument());
+        String id = initializeTrades(key);
 
-        if (product == null) {
+        if (id == null) {
             return Collections.emptyList();
         }
 
-        NavigableMap<Instant, CoincheckTrade> map;
+        Instant cutoff = fromTime != null ? fromTime : getNow().minus(TRADE_EXPIRY);
+
+        return trades.list(ID, id, cutoff, true);
+
+    }
+
+    @Override
+    public void forEachTrade(Key key, Instant fromTime, Instant toTime, Consumer<Trade> consumer) {
+
+        String id = initializeTrades(key);
+
+        if (id == null || consumer == null) {
+            return;
+        }
+
+        Instant cutoff = fromTime != null ? fromTime : getNow().minus(TRADE_EXPIRY);
+
+        trades.forEach(ID, id, cutoff, toTime, consumer);
+
+    }
+
+    @Override
+    public void forEachBar(Key key, Duration resolution, Instant fromTime, Instant toTime, Consumer<Bar> consumer) {
+
+        String id = initializeTrades(key);
+
+        if (id == null || consumer == null) {
+            return;
+        }
+
+        Instant cutoff = fromTime != null ? fromTime : getNow().minus(TRADE_EXPIRY);
+
+        if (!trades.forEachBar(ID, id, resolution, cutoff, toTime, consumer)) {
+            super.forEachBar(key, resolution, fromTime, toTime, consumer);
+        }
+
+    }
+
+    private String initializeTrades(Key key) {
+
+        ProductType product = ProductType.find(key.getInstrument());
+
+        if (product == null) {
+            return null;
+        }
 
         synchronized (executor) {
 
@@ -236,15 +282,11 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
             }
 
-            map = trades.computeIfAbsent(product.getId(), id -> new ConcurrentSkipListMap<>());
+            trades.register(ID, product.getId());
 
         }
 
-        return map.values().stream()
-                .filter(Objects::nonNull)
-                .filter(e -> Objects.nonNull(e.getTimestamp()))
-                .filter(e -> fromTime == null || !e.getTimestamp().isBefore(fromTime))
-                .collect(toList());
+        return product.getId();
 
     }
 
@@ -327,12 +369,16 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
         reader.endArray();
         reader.close();
 
-        appendCache(pair, CoincheckTrade.builder()
+        boolean appended = appendCache(pair, CoincheckTrade.builder()
                 .timestamp(getNow())
                 .price(new BigDecimal(price))
                 .size(new BigDecimal(size))
                 .build());
 
+        if (appended) {
+            Stream.of(ProductType.values()).filter(p -> p.getId().equals(pair)).forEach(p -> notifyListeners(p.name()));
+        }
+
     }
 
     @VisibleForTesting
@@ -350,50 +396,9 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
             return false;
         }
 
-        NavigableMap<Instant, CoincheckTrade> map = trades.get(StringUtils.trimToEmpty(id));
-
-        if (map == null) {
-            return false;
-        }
-
         Instant timestamp = trade.getTimestamp().truncatedTo(ChronoUnit.SECONDS);
 
-        CoincheckTrade truncated = CoincheckTrade.builder()
-                .id(timestamp.getEpochSecond())
-                .timestamp(timestamp)
-                .price(trade.getPrice())
-                .size(trade.getSize())
-                .build();
-
-        map.merge(timestamp, truncated, (t1, t2) -> {
-
-            BigDecimal n1 = t1.getPrice().multiply(t1.getSize());
-            BigDecimal n2 = t2.getPrice().multiply(t2.getSize());
-
-            BigDecimal n = n1.add(n2);
-            BigDecimal s = t1.getSize().add(t2.getSize());
-            BigDecimal p = n.divide(s, SCALE, HALF_UP);
-
-            return CoincheckTrade.builder().id(timestamp.getEpochSecond())
-                    .timestamp(timestamp).price(p).size(s).build();
-
-        });
-
-        Instant cutoff = timestamp.minus(TRADE_EXPIRY);
-
-        while (true) {
-
-            Map.Entry<Instant, ?> entry = map.firstEntry();
-
-            if (entry == null || entry.getKey().isAfter(cutoff)) {
-                break;
-            }
-
-            map.remove(entry.getKey());
-
-        }
-
-        return true;
+        return trades.append(ID, id, timestamp, trade.getPrice(), trade.getSize());
 
     }
 
@@ -469,24 +474,10 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
             return null;
         }
 
-        String result;
-
-        synchronized (lastNonce) {
-
-            long currNonce = 0;
-
-            while (currNonce <= lastNonce.get()) {
-
-                TimeUnit.MILLISECONDS.sleep(1);
-
-                currNonce = getNow().toEpochMilli();
-
-            }
-
-            lastNonce.set(currNonce);
+        Future<String> result = sequence(() -> {
 
             String path = url + buildQueryParameter(parameters);
-            String nonce = String.valueOf(currNonce);
+            String nonce = String.valueOf(getNonce());
             String message = nonce + path + StringUtils.trimToEmpty(data);
             String hash = computeHash("HmacSHA256", secret.getBytes(), message.getBytes());
 
@@ -496,12 +487,11 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
             headers.put("ACCESS-NONCE", nonce);
             headers.put("ACCESS-SIGNATURE", hash);
 
-            result = request(type, path, headers, data);
-
+            return requestAsync(type, path, headers, data);
 
-        }
+        });
 
-        return result;
+        return extract(result);
 
     }
 
@@ -755,7 +745,7 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
                     body.put("order_type", (i.getSize().signum() >= 0 ? MARKET_BUY : MARKET_SELL).getId());
                 }
 
-                String result = executePrivate(POST, URL_ORDER_CREATE, null, gson.toJson(body));
+                String result = prioritize(() -> executePrivate(POST, URL_ORDER_CREATE, null, gson.toJson(body)));
 
                 CoincheckOrder.Response response = gson.fromJson(result, CoincheckOrder.Response.class);
 
@@ -784,7 +774,7 @@ public class CoincheckContext extends TemplateContext implements CoincheckServic
 
             try {
 
-                String data = executePrivate(DELETE, URL_ORDER_CANCEL + i.getId(), null, null);
+                String data = prioritize(() -> executePrivate(DELETE, URL_ORDER_CANCEL + i.getId(), null, null));
 
                 if (StringUtils.isEmpty(data)) {
 
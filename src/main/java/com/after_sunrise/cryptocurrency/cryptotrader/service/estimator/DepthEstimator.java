@@ -1,8 +1,8 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
-import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.math3.distribution.TDistribution;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
@@ -10,9 +10,10 @@ import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
+import java.util.EnumSet;
 import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Set;
 
 import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.HALF_UP;
@@ -35,6 +36,11 @@ public class DepthEstimator extends AbstractEstimator {
 
     private static final double PROBABILITY = 0.975;
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.of(DataType.TICK, DataType.BOOK, DataType.TRADE);
+    }
+
     @Override
     public Estimation estimate(Context context, Request request) {
 
@@ -56,27 +62,31 @@ public class DepthEstimator extends AbstractEstimator {
 
         BigDecimal ceiling = mid.multiply(ONE.add(deviation));
 
-        trimToEmpty(context.getAskPrices(key)).entrySet().stream()
-                .filter(e -> e.getValue() != null)
-                .filter(e -> e.getKey() != null)
-                .filter(e -> e.getKey().compareTo(ceiling) <= 0)
-                .forEach(e -> {
-                    averages[I_NOTIONAL] = averages[I_NOTIONAL] + e.getValue().doubleValue() * e.getKey().doubleValue();
-                    averages[I_QUANTITY] = averages[I_QUANTITY] + e.getValue().doubleValue();
-                    averages[I_SIZE_ASK] = averages[I_SIZE_ASK] + e.getValue().doubleValue();
-                });
+        BigDecimal askSize = trimToZero(context.getAskDepth(key, ceiling));
+
+        if (askSize.signum() > 0) {
+
+            BigDecimal askPrice = trimToZero(context.getAskAverage(key, askSize));
+
+            averages[I_NOTIONAL] = averages[I_NOTIONAL] + askSize.doubleValue() * askPrice.doubleValue();
+            averages[I_QUANTITY] = averages[I_QUANTITY] + askSize.doubleValue();
+            averages[I_SIZE_ASK] = averages[I_SIZE_ASK] + askSize.doubleValue();
+
+        }
 
         BigDecimal floor = mid.multiply(ONE.subtract(deviation));
 
-        trimToEmpty(context.getBidPrices(key)).entrySet().stream()
-                .filter(e -> e.getValue() != null)
-                .filter(e -> e.getKey() != null)
-                .filter(e -> e.getKey().compareTo(floor) >= 0)
-                .forEach(e -> {
-                    averages[I_NOTIONAL] = averages[I_NOTIONAL] + e.getValue().doubleValue() * e.getKey().doubleValue();
-                    averages[I_QUANTITY] = averages[I_QUANTITY] + e.getValue().doubleValue();
-                    averages[I_SIZE_BID] = averages[I_SIZE_BID] + e.getValue().doubleValue();
-                });
+        BigDecimal bidSize = trimToZero(context.getBidDepth(key, floor));
+
+        if (bidSize.signum() > 0) {
+
+            BigDecimal bidPrice = trimToZero(context.getBidAverage(key, bidSize));
+
+            averages[I_NOTIONAL] = averages[I_NOTIONAL] + bidSize.doubleValue() * bidPrice.doubleValue();
+            averages[I_QUANTITY] = averages[I_QUANTITY] + bidSize.doubleValue();
+            averages[I_SIZE_BID] = averages[I_SIZE_BID] + bidSize.doubleValue();
+
+        }
 
         double average = averages[I_NOTIONAL] / averages[I_QUANTITY];
 
@@ -106,9 +116,7 @@ public class DepthEstimator extends AbstractEstimator {
 
         Instant from = request.getCurrentTime().minus(interval.toMillis() * getSamples(), MILLIS);
 
-        List<Trade> trades = context.listTrades(getKey(context, request), from.minus(interval));
-
-        NavigableMap<Instant, BigDecimal> prices = collapsePrices(trades, interval, from, to, false);
+        NavigableMap<Instant, BigDecimal> prices = collapsePrices(context, getKey(context, request), interval, from, to, false);
 
         NavigableMap<Instant, BigDecimal> returns = calculateReturns(prices);
 
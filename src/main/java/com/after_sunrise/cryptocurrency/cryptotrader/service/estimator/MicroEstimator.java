@@ -1,10 +1,13 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 
 import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.Set;
 
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
@@ -16,6 +19,11 @@ import static java.math.RoundingMode.HALF_UP;
  */
 public class MicroEstimator extends AbstractEstimator {
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.of(DataType.TICK);
+    }
+
     @Override
     public Estimation estimate(Context context, Request request) {
 
@@ -1,14 +1,23 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * @author takanori.takase
  * @version 0.0.1
  */
 public class NullEstimator extends AbstractEstimator {
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.noneOf(DataType.class);
+    }
+
     @Override
     public Estimation estimate(Context context, Request request) {
         return BAIL;
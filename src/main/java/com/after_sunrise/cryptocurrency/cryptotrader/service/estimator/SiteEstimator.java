@@ -3,6 +3,13 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author takanori.takase
@@ -13,6 +20,9 @@ public class SiteEstimator extends AbstractEstimator {
     @VisibleForTesting
     static final SiteEstimator INSTANCE = new SiteEstimator();
 
+    private static final Cache<ProductKey, Context.Key> KEYS = CacheBuilder.newBuilder()
+            .maximumSize(Short.MAX_VALUE).expireAfterWrite(1, TimeUnit.MINUTES).build();
+
     private SiteEstimator() {
     }
 
@@ -21,6 +31,14 @@ public class SiteEstimator extends AbstractEstimator {
 
         Context.Key key = Context.Key.from(request);
 
+        ProductKey id = new ProductKey(context, key);
+
+        Context.Key cached = KEYS.getIfPresent(id);
+
+        if (cached != null) {
+            return cached;
+        }
+
         CurrencyType structure = context.getInstrumentCurrency(key);
 
         CurrencyType funding = context.getFundingCurrency(key);
@@ -29,7 +47,23 @@ public class SiteEstimator extends AbstractEstimator {
 
         String instrument = context.findProduct(siteKey, structure, funding);
 
-        return Context.Key.build(siteKey).instrument(instrument).build();
+        Context.Key resolved = Context.Key.build(siteKey).instrument(instrument).build();
+
+        if (key.getTimestamp() != null) {
+            KEYS.put(id, resolved);
+        }
+
+        return resolved;
+
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    private static class ProductKey {
+
+        private final Context context;
+
+        private final Context.Key key;
 
     }
 
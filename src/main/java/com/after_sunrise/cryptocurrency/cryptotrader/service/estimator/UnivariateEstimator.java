@@ -1,15 +1,27 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
-import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
-import org.apache.commons.math3.stat.regression.SimpleRegression;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static java.math.BigDecimal.ZERO;
 import static java.math.RoundingMode.HALF_UP;
@@ -25,6 +37,17 @@ public class UnivariateEstimator extends AbstractEstimator {
 
     private static final int SAMPLES_VAL = 60;
 
+    private static final Cache<SeriesKey, Series> SERIES = CacheBuilder.newBuilder()
+            .maximumSize(Byte.MAX_VALUE).expireAfterAccess(5, TimeUnit.MINUTES).build();
+
+    private static final Cache<SeriesKey, Integer> LARGEST = CacheBuilder.newBuilder()
+            .maximumSize(Byte.MAX_VALUE).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.of(DataType.TRADE);
+    }
+
     @Override
     public Estimation estimate(Context context, Request request) {
 
@@ -32,28 +55,21 @@ public class UnivariateEstimator extends AbstractEstimator {
 
         Duration interval = Duration.between(now, request.getTargetTime());
 
-        Instant from = request.getCurrentTime().minus(interval.toMillis() * getSamples(), MILLIS);
-
-        List<Trade> trades = context.listTrades(getKey(context, request), from.minus(interval));
+        Key key = getKey(context, request);
 
-        NavigableMap<Instant, BigDecimal> prices = collapsePrices(trades, interval, from, now, false);
+        int samples = getSamples();
 
-        NavigableMap<Instant, BigDecimal> returns = calculateReturns(prices);
+        Series series = getSeries(context, key, now, interval, getLargest(context, key, interval, samples));
 
-        SimpleRegression regression = new SimpleRegression();
+        Regression regression = series.regress(now.minus(interval.toMillis() * samples, MILLIS));
 
-        trimToEmpty(returns).entrySet().stream()
-                .filter(e -> e.getKey() != null)
-                .filter(e -> e.getValue() != null)
-                .forEach(e -> regression.addData(e.getKey().toEpochMilli(), e.getValue().doubleValue()));
-
-        if (regression.getN() <= 2) {
+        if (regression.n <= 2) {
             return BAIL;
         }
 
-        double r = Math.exp(regression.predict(request.getTargetTime().toEpochMilli()));
+        double r = Math.exp(regression.predict(series.scale(request.getTargetTime())));
 
-        double p = r * prices.lastEntry().getValue().doubleValue();
+        double p = r * series.last.doubleValue();
 
         BigDecimal price = Double.isFinite(p) ? BigDecimal.valueOf(p).setScale(SCALE, HALF_UP) : null;
 
@@ -61,8 +77,8 @@ public class UnivariateEstimator extends AbstractEstimator {
 
         BigDecimal confidence = Double.isFinite(c) ? BigDecimal.valueOf(c).setScale(SCALE, HALF_UP) : ZERO;
 
-        log.debug("Estimated : {} (Confidence={}, Correlation={}, Samples={}, Slope={}, Intercept={})",
-                price, confidence, regression.getR(), regression.getN(), regression.getSlope(), regression.getIntercept()
+        log.debug("Estimated : {} (Confidence={}, Samples={}, Slope={}, Intercept={})",
+                price, confidence, regression.n, regression.slope, regression.intercept
         );
 
         return Estimation.builder().price(price).confidence(confidence).build();
@@ -73,6 +89,189 @@ public class UnivariateEstimator extends AbstractEstimator {
         return getIntProperty(SAMPLES_KEY, SAMPLES_VAL);
     }
 
+    /**
+     * Largest sample count requested within the family for the product and interval, which sizes the shared series.
+     */
+    @VisibleForTesting
+    int getLargest(Context context, Key key, Duration interval, int samples) {
+
+        SeriesKey id = new SeriesKey(context, Key.build(key).timestamp(null).build(), interval, 0);
+
+        return LARGEST.asMap().merge(id, samples, Math::max);
+
+    }
+
+    /**
+     * Collapsed prices and their returns, cached per interval and sample count.
+     */
+    @VisibleForTesting
+    Series getSeries(Context context, Key key, Instant now, Duration interval, int samples) {
+
+        SeriesKey id = new SeriesKey(context, key, interval, samples);
+
+        try {
+
+            return SERIES.get(id, () -> {
+
+                Instant from = now.minus(interval.toMillis() * samples, MILLIS);
+
+                NavigableMap<Instant, BigDecimal> prices = collapsePrices(context, key, interval, from, now, false);
+
+                if (prices == null) {
+                    prices = Collections.emptyNavigableMap();
+                }
+
+                return new Series(now, interval, prices, calculateReturns(prices));
+
+            });
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    private static class SeriesKey {
+
+        private final Context context;
+
+        private final Key key;
+
+        private final Duration interval;
+
+        private final int samples;
+
+    }
+
+    @VisibleForTesting
+    static class Series {
+
+        private final long now;
+
+        private final double interval;
+
+        private final BigDecimal last;
+
+        private final long[] times;
+
+        // Suffix sums of [n, x, y, xx, xy, yy], accumulated from the latest return.
+
+        private final double[][] sums;
+
+        private Series(Instant now, Duration interval, NavigableMap<Instant, BigDecimal> prices,
+                       NavigableMap<Instant, BigDecimal> returns) {
+
+            this.now = now.toEpochMilli();
+
+            this.interval = Math.max(interval.toMillis(), 1);
+
+            this.last = prices.isEmpty() ? null : prices.lastEntry().getValue();
+
+            this.times = prices.keySet().stream().filter(Objects::nonNull).mapToLong(Instant::toEpochMilli).toArray();
+
+            this.sums = new double[times.length + 1][6];
+
+            for (int i = times.length - 1; i >= 0; i--) {
+
+                double[] current = sums[i];
+
+                System.arraycopy(sums[i + 1], 0, current, 0, current.length);
+
+                BigDecimal value = i == 0 ? null : returns.get(Instant.ofEpochMilli(times[i]));
+
+                if (value == null) {
+                    continue;
+                }
+
+                double x = scale(times[i]);
+
+                double y = value.doubleValue();
+
+                current[0] += 1;
+                current[1] += x;
+                current[2] += y;
+                current[3] += x * x;
+                current[4] += x * y;
+                current[5] += y * y;
+
+            }
+
+        }
+
+        private double scale(long time) {
+            return (time - now) / interval;
+        }
+
+        double scale(Instant time) {
+            return scale(time.toEpochMilli());
+        }
+
+        /**
+         * Regression of the returns, whose both ends are within the window.
+         */
+        Regression regress(Instant from) {
+
+            int index = Arrays.binarySearch(times, from.toEpochMilli());
+
+            index = index >= 0 ? index + 1 : -index;
+
+            return new Regression(sums[Math.min(Math.max(index, 1), times.length)]);
+
+        }
+
+    }
+
+    @VisibleForTesting
+    static class Regression {
+
+        private final long n;
+
+        private final double slope;
+
+        private final double intercept;
+
+        private final double sumXX;
+
+        private final double sumXY;
+
+        private final double sumYY;
+
+        private Regression(double[] sums) {
+
+            this.n = (long) sums[0];
+
+            double meanX = sums[1] / sums[0];
+
+            double meanY = sums[2] / sums[0];
+
+            this.sumXX = sums[3] - sums[1] * meanX;
+
+            this.sumXY = sums[4] - sums[1] * meanY;
+
+            this.sumYY = sums[5] - sums[2] * meanY;
+
+            this.slope = sumXY / sumXX;
+
+            this.intercept = meanY - slope * meanX;
+
+        }
+
+        double predict(double x) {
+            return intercept + slope * x;
+        }
+
+        double getRSquare() {
+
+            double errors = Math.max(0, sumYY - sumXY * sumXY / sumXX);
+
+            return (sumYY - errors) / sumYY;
+
+        }
+
+    }
+
     public static class Univariate005Estimator extends UnivariateEstimator {
         @Override
         protected int getSamples() {
@@ -1,19 +1,27 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.estimator;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import org.apache.commons.math3.distribution.TDistribution;
 
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static java.math.BigDecimal.ZERO;
 import static java.math.RoundingMode.HALF_UP;
@@ -25,14 +33,23 @@ import static org.apache.commons.lang3.math.NumberUtils.INTEGER_ONE;
  */
 public class VwapEstimator extends AbstractEstimator {
 
-    private static final Comparator<Trade> COMPARATOR = Comparator.comparing(Trade::getTimestamp);
-
     private static final String DURATION_KEY = "duration";
 
     private static final int DURATION_VAL = 60;
 
     private static final double PROBABILITY = 0.975;
 
+    private static final Cache<SeriesKey, Series> SERIES = CacheBuilder.newBuilder()
+            .maximumSize(Byte.MAX_VALUE).expireAfterAccess(5, TimeUnit.MINUTES).build();
+
+    private static final Cache<SeriesKey, Duration> LONGEST = CacheBuilder.newBuilder()
+            .maximumSize(Byte.MAX_VALUE).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.of(DataType.TRADE);
+    }
+
     @Override
     public Estimation estimate(Context context, Request request) {
 
@@ -44,38 +61,29 @@ public class VwapEstimator extends AbstractEstimator {
 
     protected Estimation estimate(Context context, Key key) {
 
-        Instant now = key.getTimestamp();
+        Duration duration = getDuration();
+
+        Series series = getSeries(context, key, getLongest(context, key, duration));
 
-        Instant from = now.minus(getDuration());
+        int from = series.search(key.getTimestamp().minus(duration));
 
-        List<Trade> trades = trimToEmpty(context.listTrades(key, from)).stream()
-                .filter(Objects::nonNull)
-                .filter(t -> t.getTimestamp() != null)
-                .filter(t -> Objects.nonNull(t.getPrice()))
-                .filter(t -> Objects.nonNull(t.getSize()))
-                .filter(t -> t.getSize().signum() > 0)
-                .sorted(COMPARATOR)
-                .collect(Collectors.toList());
+        int count = series.size() - from;
 
-        if (trades.size() == 0) {
+        if (count == 0) {
             return BAIL; // Cannot calculate returns if less than 2 points.
         }
 
-        if (trades.size() == 1) {
-
-            BigDecimal price = trades.get(trades.size() - 1).getPrice();
-
-            return Estimation.builder().price(price).confidence(ZERO).build();
-
+        if (count == 1) {
+            return Estimation.builder().price(series.last).confidence(ZERO).build();
         }
 
-        double vwap = calculateVwap(trades, now);
+        double vwap = series.getVwap(from);
 
-        double deviation = calculateDeviation(trades);
+        double deviation = Math.sqrt(series.getSquares(from) / Math.max(count - 2, INTEGER_ONE));
 
-        double sigma = new TDistribution(trades.size() - 1).inverseCumulativeProbability(PROBABILITY);
+        double sigma = new TDistribution(count - 1).inverseCumulativeProbability(PROBABILITY);
 
-        double last = trades.get(trades.size() - 1).getPrice().doubleValue();
+        double last = series.last.doubleValue();
 
         double drift = Math.min(1, Math.abs(Math.log(last / vwap)) / (deviation * sigma));
 
@@ -84,7 +92,7 @@ public class VwapEstimator extends AbstractEstimator {
         BigDecimal c = Double.isNaN(drift) ? ZERO : BigDecimal.valueOf(1 - drift).setScale(SCALE, HALF_UP);
 
         log.debug("Estimated : {} (confidence=[{}] points=[{}] sigma=[{}] deviation=[{}])",
-                p, c, trades.size(), sigma, deviation);
+                p, c, count, sigma, deviation);
 
         return Estimation.builder().price(p).confidence(c).build();
 
@@ -98,51 +106,204 @@ public class VwapEstimator extends AbstractEstimator {
 
     }
 
-    private double calculateVwap(List<Trade> trades, Instant currentTime) {
+    /**
+     * Longest duration requested within the family for the product, which sizes the shared series.
+     */
+    @VisibleForTesting
+    Duration getLongest(Context context, Key key, Duration duration) {
 
-        double sumNotional = 0;
+        SeriesKey id = new SeriesKey(context, Key.build(key).timestamp(null).build(), null);
 
-        double sumQuantity = 0;
+        return LONGEST.asMap().merge(id, duration, (a, b) -> a.compareTo(b) >= 0 ? a : b);
 
-        for (Trade t : trades) {
+    }
 
-            long elapsed = currentTime.getEpochSecond() - t.getTimestamp().getEpochSecond();
+    /**
+     * Cumulative sums of the trades within the duration before the key timestamp, cached per duration.
+     */
+    @VisibleForTesting
+    Series getSeries(Context context, Key key, Duration duration) {
 
-            double weight = 1.0 / Math.log10(Math.max(elapsed, 10));
+        SeriesKey id = new SeriesKey(context, key, duration);
+
+        try {
+
+            return SERIES.get(id, () -> {
+
+                Series series = new Series(key.getTimestamp());
 
-            sumNotional += t.getSize().doubleValue() * weight * t.getPrice().doubleValue();
+                context.forEachTrade(key, key.getTimestamp().minus(duration), null, series);
 
-            sumQuantity += t.getSize().doubleValue() * weight;
+                series.trim();
 
+                return series;
+
+            });
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
         }
 
-        return sumNotional / sumQuantity;
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    private static class SeriesKey {
+
+        private final Context context;
+
+        private final Key key;
+
+        private final Duration duration;
 
     }
 
-    private double calculateDeviation(List<Trade> trades) {
+    /**
+     * Cumulative weighted notional, weighted quantity and log-return moments of the ascending trades.
+     */
+    @VisibleForTesting
+    static class Series implements Consumer<Trade> {
+
+        private final long now;
 
-        double[] rates = new double[trades.size() - 1];
+        private int size;
 
-        double sum = 0;
+        private BigDecimal last;
 
-        for (int i = 1; i < trades.size(); i++) {
+        private long[] times = new long[Byte.MAX_VALUE];
 
-            double previous = trades.get(i - 1).getPrice().doubleValue();
+        private double[] notionals = new double[Byte.MAX_VALUE + 1];
 
-            double current = trades.get(i).getPrice().doubleValue();
+        private double[] quantities = new double[Byte.MAX_VALUE + 1];
 
-            rates[i - 1] = Math.log(current / previous);
+        private double[] returns = new double[Byte.MAX_VALUE];
 
-            sum += rates[i - 1];
+        private double[] squares = new double[Byte.MAX_VALUE];
 
+        private Series(Instant now) {
+            this.now = now.getEpochSecond();
         }
 
-        double average = sum / rates.length;
+        @Override
+        public void accept(Trade t) {
+
+            if (t.getTimestamp() == null || t.getPrice() == null || t.getSize() == null || t.getSize().signum() <= 0) {
+                return;
+            }
+
+            if (size == times.length) {
+
+                int length = times.length * 2;
+
+                times = Arrays.copyOf(times, length);
+
+                notionals = Arrays.copyOf(notionals, length + 1);
+
+                quantities = Arrays.copyOf(quantities, length + 1);
+
+                returns = Arrays.copyOf(returns, length);
+
+                squares = Arrays.copyOf(squares, length);
+
+            }
+
+            long elapsed = now - t.getTimestamp().getEpochSecond();
+
+            double weight = 1.0 / Math.log10(Math.max(elapsed, 10));
+
+            double price = t.getPrice().doubleValue();
+
+            double quantity = t.getSize().doubleValue() * weight;
+
+            times[size] = t.getTimestamp().toEpochMilli();
+
+            notionals[size + 1] = notionals[size] + quantity * price;
 
-        double variance = Arrays.stream(rates).map(r -> r - average).map(r -> r * r).sum();
+            quantities[size + 1] = quantities[size] + quantity;
 
-        return Math.sqrt(variance / Math.max(rates.length - INTEGER_ONE, INTEGER_ONE));
+            if (last != null) {
+
+                double rate = Math.log(price / last.doubleValue());
+
+                returns[size] = returns[size - 1] + rate;
+
+                squares[size] = squares[size - 1] + rate * rate;
+
+            }
+
+            last = t.getPrice();
+
+            size++;
+
+        }
+
+        private void trim() {
+
+            times = Arrays.copyOf(times, size);
+
+            notionals = Arrays.copyOf(notionals, size + 1);
+
+            quantities = Arrays.copyOf(quantities, size + 1);
+
+            returns = Arrays.copyOf(returns, size);
+
+            squares = Arrays.copyOf(squares, size);
+
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Index of the first trade at or after the time.
+         */
+        int search(Instant time) {
+
+            long value = time.toEpochMilli();
+
+            int lo = 0;
+
+            int hi = size;
+
+            while (lo < hi) {
+
+                int mid = (lo + hi) >>> 1;
+
+                if (times[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+
+            }
+
+            return lo;
+
+        }
+
+        double getVwap(int from) {
+            return (notionals[size] - notionals[from]) / (quantities[size] - quantities[from]);
+        }
+
+        /**
+         * Squared deviations of the log returns, whose both ends are at or after the index.
+         */
+        double getSquares(int from) {
+
+            int count = size - 1 - from;
+
+            if (count <= 1) {
+                return 0;
+            }
+
+            double sum = returns[size - 1] - returns[from];
+
+            double sumSquares = squares[size - 1] - squares[from];
+
+            return Math.max(0, sumSquares - sum * sum / count);
+
+        }
 
     }
 
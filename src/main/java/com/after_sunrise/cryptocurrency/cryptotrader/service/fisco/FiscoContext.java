@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.fisco;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -29,7 +31,6 @@ import static java.lang.Boolean.TRUE;
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
 import static java.util.Collections.*;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -70,19 +71,21 @@ public class FiscoContext extends TemplateContext implements FiscoService {
     }
 
     @VisibleForTesting
-    Optional<FiscoDepth> queryDepth(Key key) {
+    Optional<Book> queryDepth(Key key) {
 
         ProductType product = ProductType.find(key.getInstrument());
 
         if (product == null) {
-            return null;
+            return Optional.empty();
         }
 
-        FiscoDepth value = findCached(FiscoDepth.class, key, () -> {
+        Book value = findCached(Book.class, key, () -> {
 
             String data = request(URL_DEPTH + product.getId());
 
-            return gson.fromJson(data, FiscoDepth.class);
+            FiscoDepth depth = gson.fromJson(data, FiscoDepth.class);
+
+            return depth == null ? null : Book.of(depth.getAskPrices(), depth.getBidPrices());
 
         });
 
@@ -90,38 +93,43 @@ public class FiscoContext extends TemplateContext implements FiscoService {
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return queryDepth(key).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
-        return queryDepth(key).map(FiscoDepth::getAskPrices)
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidPrice(Key key) {
-        return queryDepth(key).map(FiscoDepth::getBidPrices)
+        return queryDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestAskSize(Key key) {
-        return queryDepth(key).map(FiscoDepth::getAskPrices)
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
-        return queryDepth(key).map(FiscoDepth::getBidPrices)
+        return queryDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-        return queryDepth(key).map(FiscoDepth::getAskPrices).orElse(null);
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-        return queryDepth(key).map(FiscoDepth::getBidPrices).orElse(null);
+        return queryDepth(key).map(Book::getBids).map(Side::asMap).orElse(null);
     }
 
     @Override
@@ -244,15 +252,10 @@ public class FiscoContext extends TemplateContext implements FiscoService {
             return null;
         }
 
-        Future<String> result;
-
-        synchronized (URL_POST) {
-
-            // Avoid duplicate nonce
-            MILLISECONDS.sleep(5);
+        return sequence(() -> {
 
             Map<String, String> map = new LinkedHashMap<>(trimToEmpty(parameters));
-            map.put("nonce", BigDecimal.valueOf(getNow().toEpochMilli()).movePointLeft(3).toPlainString());
+            map.put("nonce", BigDecimal.valueOf(getNonce()).movePointLeft(3).toPlainString());
             map.put("method", method);
             String data = buildQueryParameter(map, "");
 
@@ -261,11 +264,9 @@ public class FiscoContext extends TemplateContext implements FiscoService {
             headers.put("key", apiKey);
             headers.put("sign", computeHash("HmacSHA512", secret.getBytes(), data.getBytes()));
 
-            result = requestAsync(POST, URL_POST, headers, data);
+            return requestAsync(POST, URL_POST, headers, data);
 
-        }
-
-        return result;
+        });
 
     }
 
@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.quoinex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -21,7 +23,6 @@ import java.time.Instant;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -104,9 +105,9 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
 
     }
 
-    protected Optional<QuoinexBook> fetchBook(Key key) {
+    protected Optional<Book> fetchBook(Key key) {
 
-        return fetchProduct(key).map(product -> findCached(QuoinexBook.class, key, () -> {
+        return fetchProduct(key).map(product -> findCached(Book.class, key, () -> {
 
             String data = request(ENDPOINT + "/products/" + product.getId() + "/price_levels");
 
@@ -114,44 +115,51 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
                 return null;
             }
 
-            return gson.fromJson(data, QuoinexBook.class);
+            QuoinexBook book = gson.fromJson(data, QuoinexBook.class);
+
+            return book == null ? null : Book.of(book.getAskPrices(), book.getBidPrices());
 
         }));
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return fetchBook(key).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
-        return fetchBook(key).map(QuoinexBook::getAskPrices)
+        return fetchBook(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidPrice(Key key) {
-        return fetchBook(key).map(QuoinexBook::getBidPrices)
+        return fetchBook(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestAskSize(Key key) {
-        return fetchBook(key).map(QuoinexBook::getAskPrices)
+        return fetchBook(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
-        return fetchBook(key).map(QuoinexBook::getBidPrices)
+        return fetchBook(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-        return fetchBook(key).map(QuoinexBook::getAskPrices).orElse(null);
+        return fetchBook(key).map(Book::getAsks).map(Side::asMap).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-        return fetchBook(key).map(QuoinexBook::getBidPrices).orElse(null);
+        return fetchBook(key).map(Book::getBids).map(Side::asMap).orElse(null);
     }
 
     @Override
@@ -270,37 +278,28 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
             return null;
         }
 
-        String result;
-
-        synchronized (ENDPOINT) {
+        String parameter = buildQueryParameter(parameters);
 
-            String parameter = buildQueryParameter(parameters);
+        // Nonce only needs to be unique.
+        Map<String, String> jwt = new TreeMap<>();
+        jwt.put("nonce", String.valueOf(getNonce()));
+        jwt.put("path", path + parameter);
+        jwt.put("token_id", key);
+        String jwtLoad = Base64.getUrlEncoder().encodeToString(gson.toJson(jwt).getBytes());
 
-            Map<String, String> jwt = new TreeMap<>();
-            jwt.put("nonce", String.valueOf(getNow().toEpochMilli()));
-            jwt.put("path", path + parameter);
-            jwt.put("token_id", key);
-            String jwtLoad = Base64.getUrlEncoder().encodeToString(gson.toJson(jwt).getBytes());
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(), "HmacSHA256"));
+        byte[] hash = mac.doFinal((jwtHead + "." + jwtLoad).getBytes());
+        String jwtSign = Base64.getUrlEncoder().encodeToString(hash);
 
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(new SecretKeySpec(secret.getBytes(), "HmacSHA256"));
-            byte[] hash = mac.doFinal((jwtHead + "." + jwtLoad).getBytes());
-            String jwtSign = Base64.getUrlEncoder().encodeToString(hash);
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Quoine-API-Version", "2");
+        headers.put("X-Quoine-Auth", jwtHead + "." + jwtLoad + "." + jwtSign);
 
-            Map<String, String> headers = new TreeMap<>();
-            headers.put("Content-Type", "application/json");
-            headers.put("X-Quoine-API-Version", "2");
-            headers.put("X-Quoine-Auth", jwtHead + "." + jwtLoad + "." + jwtSign);
-
-            String json = data != null ? gson.toJson(data) : null;
-
-            result = request(type, ENDPOINT + path + parameter, headers, json);
-
-            TimeUnit.MILLISECONDS.sleep(1L); // Avoid duplicate nonce
-
-        }
+        String json = data != null ? gson.toJson(data) : null;
 
-        return result;
+        return request(type, ENDPOINT + path + parameter, headers, json);
 
     }
 
@@ -487,7 +486,7 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
                 parameters.put("side", i.getSize().signum() > 0 ? "buy" : "sell");
                 parameters.put("quantity", i.getSize().abs().toPlainString());
 
-                String data = fetchPrivate(POST, "/orders", null, parameters);
+                String data = prioritize(() -> fetchPrivate(POST, "/orders", null, parameters));
 
                 QuoinexOrder order = gson.fromJson(data, QuoinexOrder.class);
 
@@ -524,7 +523,7 @@ public class QuoinexContext extends TemplateContext implements QuoinexService {
 
             try {
 
-                String data = fetchPrivate(PUT, "/orders/" + i.getId() + "/cancel", null, null);
+                String data = prioritize(() -> fetchPrivate(PUT, "/orders/" + i.getId() + "/cancel", null, null));
 
                 QuoinexOrder order = gson.fromJson(data, QuoinexOrder.class);
 
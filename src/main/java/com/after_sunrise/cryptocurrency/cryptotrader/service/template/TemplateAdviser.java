@@ -2,6 +2,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
@@ -56,6 +57,12 @@ public class TemplateAdviser extends AbstractService implements Adviser {
         return id;
     }
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.of(DataType.STATE, DataType.TICK, DataType.TRADE,
+                DataType.PRODUCT, DataType.POSITION, DataType.ORDER);
+    }
+
     @Override
     public Advice advise(Context context, Request request, Estimation estimation) {
 
@@ -198,9 +205,7 @@ public class TemplateAdviser extends AbstractService implements Adviser {
 
                 Instant from = to.minus(interval.toMillis() * samples, MILLIS);
 
-                List<Trade> trades = context.listTrades(key, from.minus(interval));
-
-                NavigableMap<Instant, BigDecimal> prices = collapsePrices(trades, interval, from, to, false);
+                NavigableMap<Instant, BigDecimal> prices = collapsePrices(context, key, interval, from, to, false);
 
                 NavigableMap<Instant, BigDecimal> returns = calculateReturns(prices);
 
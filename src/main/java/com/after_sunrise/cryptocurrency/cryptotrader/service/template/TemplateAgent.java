@@ -1,6 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
@@ -8,17 +9,25 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Creat
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.Visitor;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.impl.AbstractService;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
+import static java.math.BigDecimal.ZERO;
+import static java.util.stream.Collectors.toSet;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
@@ -29,6 +38,21 @@ public class TemplateAgent extends AbstractService implements Agent {
 
     static final Duration INTERVAL = Duration.ofSeconds(5);
 
+    /**
+     * Only times the delays, and hands the tasks over to the executor.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("TemplateAgent_%03d").setDaemon(true).build()
+    );
+
+    /**
+     * Runs the blocking order requests, which would otherwise stall the timers of the other agents.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("TemplateAgent_IO_%03d").setDaemon(true).build()
+    );
+
     private final String id;
 
     public TemplateAgent(String id) {
@@ -40,6 +64,11 @@ public class TemplateAgent extends AbstractService implements Agent {
         return id;
     }
 
+    @Override
+    public Set<DataType> getDataTypes(Request request) {
+        return EnumSet.of(DataType.STATE, DataType.ORDER);
+    }
+
     @VisibleForTesting
     Instant getNow() {
         return Instant.now();
@@ -56,8 +85,8 @@ public class TemplateAgent extends AbstractService implements Agent {
 
         }
 
-        Set<CreateInstruction> creates = new HashSet<>();
-        Set<CancelInstruction> cancels = new HashSet<>();
+        Set<CreateInstruction> creates = new LinkedHashSet<>();
+        Set<CancelInstruction> cancels = new LinkedHashSet<>();
 
         Instruction.Visitor<Boolean> visitor = new Visitor<Boolean>() {
             @Override
@@ -75,6 +104,10 @@ public class TemplateAgent extends AbstractService implements Agent {
 
         Key key = Key.from(request);
 
+        if (!creates.isEmpty() && !cancels.isEmpty() && Boolean.valueOf(getStringProperty("pipeline", "false"))) {
+            return pipeline(context, key, creates, cancels);
+        }
+
         Map<Instruction, String> results = new IdentityHashMap<>();
 
         results.putAll(context.cancelOrders(key, cancels));
@@ -93,14 +126,234 @@ public class TemplateAgent extends AbstractService implements Agent {
 
     }
 
+    /**
+     * Sends the creates which do not depend on any cancel together with the cancels,
+     * and the rest once the cancels which they depend on are accepted.
+     */
+    @VisibleForTesting
+    Map<Instruction, String> pipeline(Context context, Key key,
+                                      Set<CreateInstruction> creates, Set<CancelInstruction> cancels) {
+
+        Map<CreateInstruction, Set<CancelInstruction>> dependencies = resolveDependencies(context, key, creates, cancels);
+
+        CompletableFuture<Map<CancelInstruction, String>> cancelled = new CompletableFuture<>();
+
+        EXECUTOR.execute(() -> {
+            try {
+                cancelled.complete(context.cancelOrders(key, cancels));
+            } catch (RuntimeException e) {
+                cancelled.completeExceptionally(e);
+            }
+        });
+
+        Map<Instruction, String> results = new IdentityHashMap<>();
+
+        Set<CreateInstruction> immediates = new LinkedHashSet<>();
+
+        dependencies.entrySet().stream().filter(e -> e.getValue().isEmpty()).forEach(e -> immediates.add(e.getKey()));
+
+        if (!immediates.isEmpty()) {
+            results.putAll(trimToEmpty(context.createOrders(key, immediates)));
+        }
+
+        Map<CancelInstruction, String> cancelResults;
+
+        try {
+
+            cancelResults = trimToEmpty(cancelled.join());
+
+        } catch (RuntimeException e) {
+
+            log.warn("Pipelined cancel failure.", e);
+
+            cancelResults = Collections.emptyMap();
+
+        }
+
+        results.putAll(cancelResults);
+
+        Set<CreateInstruction> deferred = new LinkedHashSet<>();
+
+        for (Entry<CreateInstruction, Set<CancelInstruction>> entry : dependencies.entrySet()) {
+
+            Set<CancelInstruction> required = entry.getValue();
+
+            if (required.isEmpty()) {
+                continue;
+            }
+
+            if (required.stream().map(cancelResults::get).anyMatch(StringUtils::isEmpty)) {
+                continue;
+            }
+
+            deferred.add(entry.getKey());
+
+        }
+
+        log.trace("Pipelined instructions : create={}, deferred={}, skipped={}, cancel={}", immediates.size(),
+                deferred.size(), creates.size() - immediates.size() - deferred.size(), cancels.size());
+
+        if (!deferred.isEmpty()) {
+            results.putAll(trimToEmpty(context.createOrders(key, deferred)));
+        }
+
+        return results;
+
+    }
+
+    /**
+     * Lists the cancels which each of the creates has to wait for. A create waits for the cancels of the same side
+     * at the same price, and also for all the cancels of the same side if the free balance cannot cover it.
+     * A create also waits for the cancels of the opposite side which it would cross, to avoid trading with itself.
+     * Cancels of unknown orders are treated as conflicting with every create.
+     */
+    @VisibleForTesting
+    Map<CreateInstruction, Set<CancelInstruction>> resolveDependencies(
+            Context context, Key key, Set<CreateInstruction> creates, Set<CancelInstruction> cancels) {
+
+        Set<String> ids = cancels.stream().map(CancelInstruction::getId).filter(Objects::nonNull).collect(toSet());
+
+        Map<String, Order> orders = ids.isEmpty() ? Collections.emptyMap() : trimToEmpty(context.findOrders(key, ids));
+
+        Map<Integer, BigDecimal> capacities = new HashMap<>();
+
+        Map<CreateInstruction, Set<CancelInstruction>> dependencies = new LinkedHashMap<>();
+
+        for (CreateInstruction create : creates) {
+
+            int side = create.getSize() == null ? 0 : create.getSize().signum();
+
+            Set<CancelInstruction> sameSide = new LinkedHashSet<>();
+
+            Set<CancelInstruction> samePrice = new LinkedHashSet<>();
+
+            Set<CancelInstruction> crossing = new LinkedHashSet<>();
+
+            for (CancelInstruction cancel : cancels) {
+
+                Order order = orders.get(cancel.getId());
+
+                BigDecimal quantity = order == null ? null : order.getOrderQuantity();
+
+                BigDecimal price = order == null ? null : order.getOrderPrice();
+
+                if (side != 0 && quantity != null && quantity.signum() != side) {
+
+                    if (price == null || create.getPrice() == null || price.compareTo(create.getPrice()) * side <= 0) {
+                        crossing.add(cancel);
+                    }
+
+                    continue;
+
+                }
+
+                sameSide.add(cancel);
+
+                if (side == 0 || price == null || create.getPrice() == null || price.compareTo(create.getPrice()) == 0) {
+                    samePrice.add(cancel);
+                }
+
+            }
+
+            if (sameSide.isEmpty()) {
+
+                dependencies.put(create, crossing);
+
+                continue;
+
+            }
+
+            BigDecimal capacity = capacities.computeIfAbsent(side, s -> getCapacity(context, key, s));
+
+            BigDecimal required = side == 0 || create.getPrice() == null ? null
+                    : side > 0 ? create.getPrice().multiply(create.getSize()) : create.getSize().abs();
+
+            if (required == null || required.compareTo(capacity) > 0) {
+
+                sameSide.addAll(crossing);
+
+                dependencies.put(create, sameSide);
+
+                continue;
+
+            }
+
+            capacities.put(side, capacity.subtract(required));
+
+            samePrice.addAll(crossing);
+
+            dependencies.put(create, samePrice);
+
+        }
+
+        return dependencies;
+
+    }
+
+    /**
+     * Free balance for the side : funding for buying, and instrument for selling. Zero if not known.
+     */
+    @VisibleForTesting
+    BigDecimal getCapacity(Context context, Key key, int side) {
+
+        if (side == 0 || !FALSE.equals(context.isMarginable(key))) {
+            return ZERO;
+        }
+
+        BigDecimal position = side > 0 ? context.getFundingPosition(key) : context.getInstrumentPosition(key);
+
+        List<Order> orders = context.listActiveOrders(key);
+
+        if (position == null || orders == null) {
+            return ZERO;
+        }
+
+        BigDecimal capacity = position;
+
+        for (Order order : orders) {
+
+            BigDecimal quantity = order == null ? null : order.getOrderQuantity();
+
+            BigDecimal remaining = order == null ? null : order.getRemainingQuantity();
+
+            if (quantity == null || quantity.signum() != side || remaining == null) {
+                continue;
+            }
+
+            if (side > 0) {
+
+                if (order.getOrderPrice() == null) {
+                    return ZERO;
+                }
+
+                capacity = capacity.subtract(order.getOrderPrice().multiply(remaining.abs()));
+
+            } else {
+
+                capacity = capacity.subtract(remaining.abs());
+
+            }
+
+        }
+
+        return capacity.max(ZERO);
+
+    }
+
     @Override
     public Map<Instruction, Boolean> reconcile(Context context, Request request, Map<Instruction, String> instructions) {
+        return reconcileAsync(context, request, instructions).join();
+    }
+
+    @Override
+    public CompletableFuture<Map<Instruction, Boolean>> reconcileAsync(
+            Context context, Request request, Map<Instruction, String> instructions) {
 
         if (MapUtils.isEmpty(instructions)) {
 
             log.trace("Nothing to reconcile.");
 
-            return Collections.emptyMap();
+            return CompletableFuture.completedFuture(Collections.emptyMap());
 
         }
 
@@ -108,7 +361,7 @@ public class TemplateAgent extends AbstractService implements Agent {
 
             log.trace("Skipping reconcile.");
 
-            return Collections.emptyMap();
+            return CompletableFuture.completedFuture(Collections.emptyMap());
 
         }
 
@@ -131,85 +384,128 @@ public class TemplateAgent extends AbstractService implements Agent {
                         })
                 );
 
-        Map<String, Instruction> remaining = new HashMap<>();
-        remaining.putAll(creates);
-        remaining.putAll(cancels);
+        Reconciliation reconciliation = new Reconciliation(context, request, creates, cancels);
 
-        Map<Instruction, Boolean> results = new IdentityHashMap<>();
+        reconciliation.next(Key.from(request));
 
-        Key key = Key.from(request);
+        return reconciliation.future;
 
-        while (!remaining.isEmpty()) {
+    }
 
-            key = nextKey(key, Duration.ofMillis(getLongProperty("interval", INTERVAL.toMillis())));
+    @VisibleForTesting
+    void schedule(Runnable task, Duration delay) {
+        SCHEDULER.schedule(() -> EXECUTOR.execute(task), delay.toMillis(), MILLISECONDS);
+    }
 
-            for (Entry<String, Instruction> entry : new HashMap<>(remaining).entrySet()) {
+    /**
+     * Polls the outstanding orders on the executor, until all of them are confirmed or the target time is reached.
+     */
+    private class Reconciliation {
 
-                if (key != null && key.getTimestamp().isBefore(request.getTargetTime()) && context.getState(key) != StateType.TERMINATE) {
+        private final CompletableFuture<Map<Instruction, Boolean>> future = new CompletableFuture<>();
 
-                    Order order = context.findOrder(key, entry.getKey());
+        private final Map<Instruction, Boolean> results = new IdentityHashMap<>();
 
-                    if (creates.containsKey(entry.getKey())) {
+        private final Map<String, Instruction> remaining = new HashMap<>();
 
-                        if (order != null) {
+        private final Context context;
 
-                            remaining.remove(entry.getKey());
+        private final Request request;
 
-                            results.put(entry.getValue(), TRUE);
+        private final Map<String, CreateInstruction> creates;
 
-                        }
+        private Reconciliation(Context context, Request request,
+                               Map<String, CreateInstruction> creates, Map<String, CancelInstruction> cancels) {
 
-                        continue;
+            this.context = context;
 
-                    }
+            this.request = request;
 
-                    if (cancels.containsKey(entry.getKey())) {
+            this.creates = creates;
 
-                        if (order == null || !TRUE.equals(order.getActive())) {
+            this.remaining.putAll(creates);
 
-                            remaining.remove(entry.getKey());
+            this.remaining.putAll(cancels);
 
-                            results.put(entry.getValue(), TRUE);
+        }
 
-                        }
+        private void next(Key key) {
 
-                        continue;
+            if (remaining.isEmpty()) {
 
-                    }
+                finish();
 
-                }
+                return;
 
-                remaining.remove(entry.getKey());
+            }
 
-                results.put(entry.getValue(), FALSE);
+            Duration interval = Duration.ofMillis(getLongProperty("interval", INTERVAL.toMillis()));
 
-            }
+            try {
+
+                schedule(() -> poll(Key.build(key).timestamp(getNow()).build()), interval);
+
+            } catch (RuntimeException e) {
+
+                log.trace("Reconcile rejected : {}", e.toString());
+
+                finish();
 
+            }
 
         }
 
-        return results;
+        private void poll(Key key) {
 
-    }
+            try {
 
-    @VisibleForTesting
-    Key nextKey(Key current, Duration interval) {
+                if (key.getTimestamp().isBefore(request.getTargetTime())
+                        && context.getState(key) != StateType.TERMINATE) {
 
-        Key next = null;
+                    Map<String, Order> orders = trimToEmpty(context.findOrders(key, new HashSet<>(remaining.keySet())));
 
-        try {
+                    for (Entry<String, Instruction> entry : new HashMap<>(remaining).entrySet()) {
 
-            MILLISECONDS.sleep(interval.toMillis());
+                        Order order = orders.get(entry.getKey());
 
-            next = Key.build(current).timestamp(getNow()).build();
+                        boolean confirmed = creates.containsKey(entry.getKey())
+                                ? order != null : order == null || !TRUE.equals(order.getActive());
 
-        } catch (InterruptedException e) {
+                        if (confirmed) {
 
-            log.trace("Reconciling cancel interrupted.");
+                            remaining.remove(entry.getKey());
+
+                            results.put(entry.getValue(), TRUE);
+
+                        }
+
+                    }
+
+                    next(key);
+
+                    return;
+
+                }
+
+            } catch (RuntimeException e) {
+
+                log.warn("Reconcile failure.", e);
+
+            }
+
+            finish();
 
         }
 
-        return next;
+        private void finish() {
+
+            remaining.values().forEach(i -> results.put(i, FALSE));
+
+            remaining.clear();
+
+            future.complete(results);
+
+        }
 
     }
 
@@ -0,0 +1,346 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+class TemplateClient implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TemplateClient.class);
+
+    private static final Duration CLIENT_TIMEOUT = Duration.ofMinutes(3);
+
+    private static final int CONNECTION_ROUTE = Byte.MAX_VALUE / 4;
+
+    private static final int CONNECTION_TOTAL = Byte.MAX_VALUE * 4;
+
+    private static final Duration EVICT_INTERVAL = Duration.ofSeconds(10);
+
+    private static final Object LOCK = new Object();
+
+    private static TemplateClient instance;
+
+    private static long references;
+
+    private final Map<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    private final PoolingNHttpClientConnectionManager manager;
+
+    private final CloseableHttpAsyncClient client;
+
+    private final ScheduledExecutorService evictor;
+
+    static TemplateClient acquire() {
+
+        synchronized (LOCK) {
+
+            if (instance == null) {
+
+                instance = new TemplateClient();
+
+                LOG.debug("Created shared client.");
+
+            }
+
+            references++;
+
+            return instance;
+
+        }
+
+    }
+
+    static void release(TemplateClient client) throws IOException {
+
+        synchronized (LOCK) {
+
+            if (client != instance || --references > 0) {
+                return;
+            }
+
+            instance = null;
+
+        }
+
+        client.close();
+
+        LOG.debug("Closed shared client.");
+
+    }
+
+    @VisibleForTesting
+    TemplateClient() {
+
+        AtomicLong counter = new AtomicLong();
+
+        ThreadFactory delegate = Executors.defaultThreadFactory();
+
+        ThreadFactory factory = r -> {
+            Thread t = delegate.newThread(r);
+            t.setDaemon(true);
+            t.setName(String.format("%s_%04d", TemplateClient.class.getSimpleName(), counter.incrementAndGet()));
+            return t;
+        };
+
+        try {
+
+            manager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT, factory),
+                    ManagedNHttpClientConnectionFactory.INSTANCE,
+                    RegistryBuilder.<SchemeIOSessionStrategy>create()
+                            .register("http", NoopIOSessionStrategy.INSTANCE)
+                            .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                            .build(),
+                    DefaultSchemePortResolver.INSTANCE,
+                    SystemDefaultDnsResolver.INSTANCE,
+                    CLIENT_TIMEOUT.toMillis(), MILLISECONDS
+            );
+
+        } catch (IOReactorException e) {
+            throw new IllegalStateException(e);
+        }
+
+        manager.setMaxTotal(CONNECTION_TOTAL);
+
+        manager.setDefaultMaxPerRoute(CONNECTION_ROUTE);
+
+        client = HttpAsyncClients.custom()
+                .setConnectionManager(manager)
+                .setThreadFactory(factory)
+                .setDefaultRequestConfig(
+                        RequestConfig.custom()
+                                .setCookieSpec(CookieSpecs.STANDARD)
+                                .setSocketTimeout((int) CLIENT_TIMEOUT.toMillis())
+                                .setConnectTimeout((int) CLIENT_TIMEOUT.toMillis())
+                                .setConnectionRequestTimeout((int) CLIENT_TIMEOUT.toMillis())
+                                .build()
+                )
+                .build();
+
+        client.start();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(factory);
+
+        evictor.scheduleWithFixedDelay(this::evict,
+                EVICT_INTERVAL.toMillis(), EVICT_INTERVAL.toMillis(), MILLISECONDS);
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        evictor.shutdown();
+
+        client.close();
+
+    }
+
+    @VisibleForTesting
+    void evict() {
+
+        manager.closeExpiredConnections();
+
+        manager.closeIdleConnections(CLIENT_TIMEOUT.toMillis(), MILLISECONDS);
+
+    }
+
+    int getPending(String site) {
+
+        AtomicInteger count = pending.get(site);
+
+        return count == null ? 0 : count.get();
+
+    }
+
+    <T> CompletableFuture<T> execute(String site, int capacity, HttpUriRequest request,
+                                     ResponseHandler<T> handler, Executor executor) {
+        return execute(site, capacity, request, handler, executor, () -> {
+        });
+    }
+
+    /**
+     * Handles the response on the executor, so that the I/O dispatcher threads are not held by the decoding.
+     * The written callback is invoked on the I/O dispatcher, once the request is written out to the connection.
+     */
+    <T> CompletableFuture<T> execute(String site, int capacity, HttpUriRequest request,
+                                     ResponseHandler<T> handler, Executor executor, Runnable written) {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        AtomicInteger count = pending.computeIfAbsent(site, s -> new AtomicInteger());
+
+        if (count.incrementAndGet() > capacity) {
+
+            count.decrementAndGet();
+
+            future.completeExceptionally(new RejectedExecutionException("Too many pending requests : " + site));
+
+            return future;
+
+        }
+
+        try {
+
+            FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse result) {
+
+                    count.decrementAndGet();
+
+                    try {
+
+                        executor.execute(() -> {
+                            try {
+                                future.complete(handler.handleResponse(result));
+                            } catch (IOException | RuntimeException e) {
+                                future.completeExceptionally(e);
+                            }
+                        });
+
+                    } catch (RuntimeException e) {
+
+                        future.completeExceptionally(e);
+
+                    }
+
+                }
+
+                @Override
+                public void failed(Exception ex) {
+
+                    count.decrementAndGet();
+
+                    future.completeExceptionally(ex);
+
+                }
+
+                @Override
+                public void cancelled() {
+
+                    count.decrementAndGet();
+
+                    future.cancel(false);
+
+                }
+            };
+
+            HttpAsyncRequestProducer producer = new WrittenProducer(HttpAsyncMethods.create(request), written);
+
+            Future<HttpResponse> response = client.execute(producer, HttpAsyncMethods.createConsumer(), callback);
+
+            future.whenComplete((v, e) -> {
+                if (future.isCancelled()) {
+                    response.cancel(true);
+                }
+            });
+
+        } catch (RuntimeException e) {
+
+            count.decrementAndGet();
+
+            future.completeExceptionally(e);
+
+        }
+
+        return future;
+
+    }
+
+    private static class WrittenProducer implements HttpAsyncRequestProducer {
+
+        private final HttpAsyncRequestProducer delegate;
+
+        private final Runnable written;
+
+        private WrittenProducer(HttpAsyncRequestProducer delegate, Runnable written) {
+            this.delegate = delegate;
+            this.written = written;
+        }
+
+        @Override
+        public HttpHost getTarget() {
+            return delegate.getTarget();
+        }
+
+        @Override
+        public HttpRequest generateRequest() throws IOException, HttpException {
+            return delegate.generateRequest();
+        }
+
+        @Override
+        public void produceContent(ContentEncoder encoder, IOControl control) throws IOException {
+            delegate.produceContent(encoder, control);
+        }
+
+        @Override
+        public void requestCompleted(HttpContext context) {
+
+            delegate.requestCompleted(context);
+
+            written.run();
+
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            delegate.failed(ex);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return delegate.isRepeatable();
+        }
+
+        @Override
+        public void resetRequest() throws IOException {
+            delegate.resetRequest();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+    }
+
+}
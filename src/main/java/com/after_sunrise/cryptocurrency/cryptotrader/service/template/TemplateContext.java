@@ -1,7 +1,9 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -10,10 +12,13 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.impl.AbstractServ
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import org.apache.commons.collections.MapUtils;
+import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
@@ -23,9 +28,8 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,9 +37,13 @@ import org.slf4j.LoggerFactory;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.time.Duration;
 import java.time.Instant;
@@ -43,8 +51,14 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.*;
@@ -108,28 +122,56 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     private static final int CACHE_RETRY = 2;
 
-    private static final Duration CLIENT_TIMEOUT = Duration.ofMinutes(3);
+    private static final Duration CACHE_STALE = Duration.ZERO;
+
+    private static final Duration CACHE_FRESH = Duration.ZERO;
+
+    private static final int REQUEST_PENDING = Byte.MAX_VALUE;
+
+    private static final BigDecimal REQUEST_RATE = BigDecimal.ZERO;
+
+    private static final BigDecimal REQUEST_BURST = BigDecimal.ONE;
+
+    private static final ThreadLocal<Boolean> REQUEST_PRIORITY = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private static final ThreadLocal<Boolean> REQUEST_SEQUENCE = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
     private static final Duration FUTURE_TIMEOUT = Duration.ofSeconds(30);
 
     private static final Duration FUTURE_MINIMUM = Duration.ofMillis(100);
 
-    private final Map<Class<?>, Cache<Key, Optional<?>>> singleCache = synchronizedMap(new HashMap<>());
+    private final Map<Class<?>, Cache<Key, Optional<?>>> singleCache = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Cache<Key, Optional<List<?>>>> listCache = new ConcurrentHashMap<>();
 
-    private final Map<Class<?>, Cache<Key, Optional<List<?>>>> listCache = synchronizedMap(new HashMap<>());
+    private final Map<Pair<Class<?>, Key>, CompletableFuture<Optional<?>>> singleFlight = new ConcurrentHashMap<>();
 
-    private final Map<Pair<Class<?>, Key>, Optional<?>> singleLast = new ConcurrentHashMap<>();
+    private final Map<Pair<Class<?>, Key>, CompletableFuture<Optional<List<?>>>> listFlight = new ConcurrentHashMap<>();
 
-    private final Map<Pair<Class<?>, Key>, Optional<List<?>>> listLast = new ConcurrentHashMap<>();
+    private final Map<Pair<Class<?>, Key>, Pair<Instant, Optional<?>>> singleFresh = new ConcurrentHashMap<>();
+
+    private final Map<Pair<Class<?>, Key>, Pair<Instant, Optional<List<?>>>> listFresh = new ConcurrentHashMap<>();
+
+    private final Map<Pair<Class<?>, Key>, Pair<Instant, Optional<?>>> singleLast = new ConcurrentHashMap<>();
+
+    private final Map<Pair<Class<?>, Key>, Pair<Instant, Optional<List<?>>>> listLast = new ConcurrentHashMap<>();
 
     private final String id;
 
     private final ExecutorService executor;
 
-    private final CloseableHttpClient client;
+    private final TemplateClient client;
+
+    private final TemplateLimiter limiter;
 
     private final AtomicReference<StateType> state;
 
+    private final AtomicLong nonce = new AtomicLong();
+
+    private final Lock lane = new ReentrantLock(true);
+
+    private final Set<Consumer<Key>> listeners = new CopyOnWriteArraySet<>();
+
     protected TemplateContext(String id) {
 
         this.id = id;
@@ -138,22 +180,9 @@ public abstract class TemplateContext extends AbstractService implements Context
 
         this.state = new AtomicReference<>(StateType.ACTIVE);
 
-        this.client = HttpClients.custom()
-                .evictExpiredConnections()
-                .evictIdleConnections(CLIENT_TIMEOUT.toMillis(), MILLISECONDS)
-                .setConnectionTimeToLive(CLIENT_TIMEOUT.toMillis(), MILLISECONDS)
-                .setMaxConnPerRoute(Byte.MAX_VALUE)
-                .setMaxConnTotal(Byte.MAX_VALUE)
-                .setDefaultRequestConfig(
-                        RequestConfig.custom()
-                                .setCookieSpec(CookieSpecs.STANDARD)
-                                .setSocketTimeout((int) CLIENT_TIMEOUT.toMillis())
-                                .setConnectTimeout((int) CLIENT_TIMEOUT.toMillis())
-                                .setConnectionRequestTimeout((int) CLIENT_TIMEOUT.toMillis())
-                                .build()
-                )
-                .build();
+        this.client = TemplateClient.acquire();
 
+        this.limiter = new TemplateLimiter(executor);
 
     }
 
@@ -165,11 +194,38 @@ public abstract class TemplateContext extends AbstractService implements Context
     @Override
     public void close() throws Exception {
 
-        state.set(StateType.TERMINATE);
+        StateType previous = state.getAndSet(StateType.TERMINATE);
 
         executor.shutdown();
 
-        client.close();
+        if (previous != StateType.TERMINATE) {
+            TemplateClient.release(client);
+        }
+
+    }
+
+    @Override
+    public void addListener(Consumer<Key> listener) {
+
+        if (listener != null) {
+            listeners.add(listener);
+        }
+
+    }
+
+    protected void notifyListeners(String instrument) {
+
+        Key key = Key.builder().site(id).instrument(instrument).build();
+
+        for (Consumer<Key> listener : listeners) {
+
+            try {
+                listener.accept(key);
+            } catch (RuntimeException e) {
+                log.warn("Listener failure : " + key, e);
+            }
+
+        }
 
     }
 
@@ -183,6 +239,32 @@ public abstract class TemplateContext extends AbstractService implements Context
         return UUID.randomUUID().toString();
     }
 
+    @VisibleForTesting
+    public long getNonce() {
+
+        long now = getNow().toEpochMilli();
+
+        return nonce.accumulateAndGet(now, (last, curr) -> Math.max(last + 1, curr));
+
+    }
+
+    protected <V> V sequence(Callable<V> callable) throws Exception {
+
+        lane.lockInterruptibly();
+
+        Boolean previous = REQUEST_SEQUENCE.get();
+
+        REQUEST_SEQUENCE.set(Boolean.TRUE);
+
+        try {
+            return callable.call();
+        } finally {
+            REQUEST_SEQUENCE.set(previous);
+            lane.unlock();
+        }
+
+    }
+
     @VisibleForTesting
     public String computeHash(String algorithm, byte[] key, byte[] data) throws IOException {
 
@@ -252,7 +334,53 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     @VisibleForTesting
     public String request(RequestType type, String path, Map<String, String> headers, String data) throws IOException {
+        return request(type, path, headers, data, null);
+    }
+
+    @VisibleForTesting
+    public <T> T request(RequestType type, String path, Map<String, String> headers, String data,
+                         Converter<Reader, T> decoder) throws IOException {
+
+        Future<T> future = requestAsync(type, path, headers, data, decoder);
+
+        try {
+
+            return future.get(getTimeout().toMillis(), MILLISECONDS);
+
+        } catch (TimeoutException e) {
+
+            future.cancel(true);
+
+            throw new InterruptedIOException("Timed out : " + path);
+
+        } catch (InterruptedException e) {
+
+            future.cancel(true);
 
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted : " + path);
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+
+        }
+
+    }
+
+    @VisibleForTesting
+    public CompletableFuture<String> requestAsync(RequestType type, String path, Map<String, String> headers, String data) {
+        return requestAsync(type, path, headers, data, null);
+    }
+
+    @VisibleForTesting
+    public <T> CompletableFuture<T> requestAsync(RequestType type, String path, Map<String, String> headers, String data,
+                                                 Converter<Reader, T> decoder) {
         LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
 
         Instant start = Instant.now();
@@ -265,54 +393,191 @@ public abstract class TemplateContext extends AbstractService implements Context
                 .setConnectTimeout(t).setConnectionRequestTimeout(t).setSocketTimeout(t).build()
         );
 
-        return client.execute(request, response -> {
+        int pending = getIntProperty("request.pending", REQUEST_PENDING);
+
+        int capacity = pending > 0 ? pending : Integer.MAX_VALUE;
+
+        double rate = trimToZero(getDecimalProperty("request.rate", REQUEST_RATE)).doubleValue();
+
+        double burst = trimToZero(getDecimalProperty("request.burst", REQUEST_BURST)).doubleValue();
+
+        CompletableFuture<T> future = new CompletableFuture<>();
 
-            String body = EntityUtils.toString(response.getEntity(), UTF_8);
+        CountDownLatch written = new CountDownLatch(1);
 
-            StatusLine statusLine = response.getStatusLine();
+        future.whenComplete((v, e) -> written.countDown());
 
-            Duration elapsed = Duration.between(start, Instant.now());
+        if (limiter.getQueueSize() + client.getPending(id) >= capacity) {
 
-            LOG.trace("[RECV][{}][{}][{}ms][{}] {}",
-                    path, statusLine, elapsed.toMillis(), response.getAllHeaders(), body);
+            future.completeExceptionally(new RejectedExecutionException("Too many queued requests : " + id));
 
-            if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+            return future;
 
-                String trimmed = body.replaceAll("[\r\n]", "");
+        }
 
-                throw new IOException(statusLine + " : " + trimmed);
+        limiter.submit(rate, burst, REQUEST_PRIORITY.get(), () -> {
 
+            if (future.isDone()) {
+                return;
             }
 
-            return body;
+            CompletableFuture<T> response = client.execute(id, capacity, request, r -> {
 
-        });
+                StatusLine statusLine = r.getStatusLine();
+
+                if (decoder != null && HttpStatus.SC_OK == statusLine.getStatusCode() && !LOG.isTraceEnabled()) {
+                    return decode(r.getEntity(), decoder);
+                }
+
+                String body = r.getEntity() == null ? "" : EntityUtils.toString(r.getEntity(), UTF_8);
+
+                Duration elapsed = Duration.between(start, Instant.now());
+
+                LOG.trace("[RECV][{}][{}][{}ms][{}] {}",
+                        path, statusLine, elapsed.toMillis(), r.getAllHeaders(), body);
+
+                if (HttpStatus.SC_OK != statusLine.getStatusCode()) {
+
+                    String trimmed = body.replaceAll("[\r\n]", "");
+
+                    throw new IOException(statusLine + " : " + trimmed);
+
+                }
+
+                if (decoder == null) {
+
+                    @SuppressWarnings("unchecked")
+                    T result = (T) body;
+
+                    return result;
+
+                }
+
+                return decode(new StringEntity(body, UTF_8), decoder);
+
+            }, executor, written::countDown);
+
+            response.whenComplete((v, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(v);
+                }
+            });
+
+            future.whenComplete((v, e) -> {
+                if (e != null) {
+                    response.cancel(true);
+                }
+            });
+
+        }, future::completeExceptionally);
+
+        if (REQUEST_SEQUENCE.get()) {
+
+            try {
+
+                // Hold the sequence until written out, so that the next request is not sent ahead of this one.
+                if (!written.await(getTimeout().toMillis(), MILLISECONDS)) {
+                    future.completeExceptionally(new InterruptedIOException("Timed out sending : " + path));
+                }
+
+            } catch (InterruptedException e) {
+
+                future.cancel(true);
+
+                Thread.currentThread().interrupt();
+
+            }
+
+        }
+
+        return future;
 
     }
 
-    @VisibleForTesting
-    public Future<String> requestAsync(RequestType type, String path, Map<String, String> headers, String data) {
+    private <T> T decode(HttpEntity entity, Converter<Reader, T> decoder) throws IOException {
 
-        LOG.trace("[SEND][{}][{}][{}] {}", type, path, headers, data);
+        if (entity == null) {
+            return null;
+        }
+
+        Charset charset = Optional.ofNullable(ContentType.get(entity)).map(ContentType::getCharset).orElse(UTF_8);
+
+        try (Reader reader = new InputStreamReader(entity.getContent(), charset)) {
+
+            return decoder.convert(reader);
+
+        } catch (IOException | RuntimeException e) {
+
+            throw e;
+
+        } catch (Exception e) {
+
+            throw new IOException(e);
+
+        }
+
+    }
+
+    protected <V> V prioritize(Callable<V> callable) throws Exception {
+
+        Boolean previous = REQUEST_PRIORITY.get();
+
+        REQUEST_PRIORITY.set(Boolean.TRUE);
+
+        try {
+            return callable.call();
+        } finally {
+            REQUEST_PRIORITY.set(previous);
+        }
+
+    }
 
-        CompletableFuture<String> future = new CompletableFuture<>();
+    /**
+     * Runs a blocking client call off the caller's thread, such as a batch request of a venue library.
+     */
+    protected <V> CompletableFuture<V> executeAsync(Callable<V> callable) {
+
+        CompletableFuture<V> future = new CompletableFuture<>();
 
         try {
+
             executor.execute(() -> {
+
                 try {
-                    future.complete(request(type, path, headers, data));
-                } catch (IOException e) {
+                    future.complete(callable.call());
+                } catch (Exception e) {
                     future.completeExceptionally(e);
                 }
+
             });
+
         } catch (RejectedExecutionException e) {
+
             future.completeExceptionally(e);
+
         }
 
         return future;
 
     }
 
+    @VisibleForTesting
+    public int getQueuedRequests() {
+        return limiter.getQueueSize();
+    }
+
+    @VisibleForTesting
+    public Duration getRequestWait() {
+        return limiter.getLastWait();
+    }
+
+    @VisibleForTesting
+    public int getPendingRequests() {
+        return client.getPending(id);
+    }
+
     @VisibleForTesting
     public void clear() {
 
@@ -322,6 +587,10 @@ public abstract class TemplateContext extends AbstractService implements Context
 
         listCache.forEach((k, v) -> v.invalidateAll());
 
+        singleFresh.clear();
+
+        listFresh.clear();
+
         singleLast.clear();
 
         listLast.clear();
@@ -338,61 +607,81 @@ public abstract class TemplateContext extends AbstractService implements Context
             return null;
         }
 
-        Pair lastKey = Pair.of(type, Key.build(key).timestamp(null).build());
+        Pair<Class<?>, Key> lastKey = Pair.of(type, Key.build(key).timestamp(null).build());
 
-        Cache<Key, Optional<?>> cache = singleCache.computeIfAbsent(type, this::createCache);
+        Duration freshness = getFreshness(type);
 
-        synchronized (cache) {
+        Pair<Class<?>, Key> loadKey;
 
-            int retry = 0;
+        Supplier<Optional<?>> lookup;
 
-            try {
+        Consumer<Optional<?>> store;
 
-                while (true) {
+        if (isPositive(freshness)) {
 
-                    try {
+            loadKey = lastKey;
 
-                        Optional<?> cached = cache.get(key, () -> {
+            lookup = () -> findFresh(singleFresh, lastKey, freshness);
 
-                            T value = c.call();
+            store = v -> singleFresh.put(lastKey, Pair.of(getNow(), v));
 
-                            log.trace("Cached : {} - {}", key, value);
+        } else {
 
-                            return Optional.ofNullable(value);
+            Cache<Key, Optional<?>> cache = singleCache.computeIfAbsent(type, this::createCache);
 
-                        });
+            loadKey = Pair.of(type, key);
 
-                        if (cacheLast) {
-                            singleLast.put(lastKey, cached);
-                        }
+            lookup = () -> cache.getIfPresent(key);
 
-                        return cached.map(type::cast).orElse(null);
+            store = v -> cache.put(key, v);
 
-                    } catch (Exception e) {
+        }
 
-                        if (CACHE_RETRY < ++retry) {
+        if (cacheLast) {
 
-                            log.warn("Failed to cache : {} - {}", type, e);
+            Consumer<Optional<?>> save = store;
 
-                            break;
+            // Stamped when loaded, not when hit, and before the value becomes visible to the lookups.
+            store = v -> {
+                singleLast.put(lastKey, Pair.of(getNow(), v));
+                save.accept(v);
+            };
 
-                        }
+        }
 
-                        Thread.sleep(CACHE_SLEEP.toMillis());
+        Callable<Optional<?>> loader = () -> {
 
-                    }
+            T value = c.call();
 
-                }
+            log.trace("Cached : {} - {}", key, value);
 
-            } catch (InterruptedException e) {
-                // Do nothing.
+            return Optional.ofNullable(value);
+
+        };
+
+        try {
+
+            Optional<?> cached = cacheLast ? findStale(singleFlight, singleLast, lastKey, loadKey, lookup, store, loader) : null;
+
+            if (cached == null) {
+                cached = loadCached(singleFlight, loadKey, lookup, store, loader);
             }
 
+            return cached.map(type::cast).orElse(null);
+
+        } catch (InterruptedException e) {
+
+            // Do nothing.
+
+        } catch (Exception e) {
+
+            log.warn("Failed to cache : {} - {}", type, e);
+
         }
 
-        Optional<?> last = singleLast.getOrDefault(lastKey, Optional.empty());
+        Pair<Instant, Optional<?>> last = singleLast.get(lastKey);
 
-        return last.map(type::cast).orElse(null);
+        return last == null ? null : last.getRight().map(type::cast).orElse(null);
 
     }
 
@@ -406,67 +695,260 @@ public abstract class TemplateContext extends AbstractService implements Context
             return null;
         }
 
-        Pair lastKey = Pair.of(type, Key.build(key).timestamp(null).build());
+        Pair<Class<?>, Key> lastKey = Pair.of(type, Key.build(key).timestamp(null).build());
 
-        Cache<Key, Optional<List<?>>> cache = listCache.computeIfAbsent(type, this::createCache);
+        Duration freshness = getFreshness(type);
 
-        synchronized (cache) {
+        Pair<Class<?>, Key> loadKey;
 
-            int retry = 0;
+        Supplier<Optional<List<?>>> lookup;
+
+        Consumer<Optional<List<?>>> store;
+
+        if (isPositive(freshness)) {
+
+            loadKey = lastKey;
+
+            lookup = () -> findFresh(listFresh, lastKey, freshness);
+
+            store = v -> listFresh.put(lastKey, Pair.of(getNow(), v));
+
+        } else {
+
+            Cache<Key, Optional<List<?>>> cache = listCache.computeIfAbsent(type, this::createCache);
+
+            loadKey = Pair.of(type, key);
+
+            lookup = () -> cache.getIfPresent(key);
+
+            store = v -> cache.put(key, v);
+
+        }
+
+        if (cacheLast) {
+
+            Consumer<Optional<List<?>>> save = store;
+
+            // Stamped when loaded, not when hit, and before the value becomes visible to the lookups.
+            store = v -> {
+                listLast.put(lastKey, Pair.of(getNow(), v));
+                save.accept(v);
+            };
+
+        }
+
+        Callable<Optional<List<?>>> loader = () -> {
+
+            List<T> values = c.call();
+
+            log.trace("Cached list : {} ({})", key, values == null ? null : values.size());
+
+            return Optional.ofNullable(values).map(Collections::unmodifiableList);
+
+        };
+
+        try {
+
+            Optional<List<?>> cached = cacheLast ? findStale(listFlight, listLast, lastKey, loadKey, lookup, store, loader) : null;
+
+            if (cached == null) {
+                cached = loadCached(listFlight, loadKey, lookup, store, loader);
+            }
+
+            @SuppressWarnings("unchecked")
+            List<T> result = (List<T>) cached.orElse(null);
+
+            return result;
+
+        } catch (InterruptedException e) {
+
+            // Do nothing.
+
+        } catch (Exception e) {
+
+            log.warn("Failed to cache list : {} - {}", type, e);
+
+        }
+
+        Pair<Instant, Optional<List<?>>> last = listLast.get(lastKey);
+
+        @SuppressWarnings("unchecked")
+        List<T> result = last == null ? null : (List<T>) last.getRight().orElse(null);
+
+        return result;
+
+    }
+
+    public Duration getCacheAge(Class<?> type, Key key) {
+
+        if (type == null || key == null) {
+            return null;
+        }
+
+        Pair<Class<?>, Key> lastKey = Pair.of(type, Key.build(key).timestamp(null).build());
+
+        Pair<Instant, ?> last = trim(singleLast.get(lastKey), listLast.get(lastKey));
+
+        return last == null ? null : Duration.between(last.getLeft(), getNow());
+
+    }
+
+    protected Duration getStaleness(Class<?> type) {
+
+        long millis = getLongProperty("cache.stale." + ClassUtils.getShortClassName(type), CACHE_STALE.toMillis());
+
+        return Duration.ofMillis(millis);
+
+    }
+
+    protected Duration getFreshness(Class<?> type) {
+
+        long millis = getLongProperty("cache.fresh." + ClassUtils.getShortClassName(type), CACHE_FRESH.toMillis());
+
+        return Duration.ofMillis(millis);
+
+    }
+
+    private boolean isPositive(Duration duration) {
+        return duration != null && !duration.isNegative() && !duration.isZero();
+    }
+
+    private <V> V findFresh(Map<Pair<Class<?>, Key>, Pair<Instant, V>> values, Pair<Class<?>, Key> key, Duration age) {
+
+        Pair<Instant, V> value = values.get(key);
+
+        if (value == null || Duration.between(value.getLeft(), getNow()).compareTo(age) > 0) {
+            return null;
+        }
+
+        return value.getRight();
+
+    }
+
+    private <V> V findStale(Map<Pair<Class<?>, Key>, CompletableFuture<V>> flights,
+                            Map<Pair<Class<?>, Key>, Pair<Instant, V>> lasts, Pair<Class<?>, Key> lastKey,
+                            Pair<Class<?>, Key> loadKey, Supplier<V> lookup, Consumer<V> store, Callable<V> loader) {
+
+        Class<?> type = lastKey.getLeft();
+
+        Duration staleness = getStaleness(type);
+
+        if (!isPositive(staleness)) {
+            return null;
+        }
+
+        V cached = lookup.get();
+
+        if (cached != null) {
+            return cached;
+        }
+
+        V last = findFresh(lasts, lastKey, staleness);
+
+        if (last == null) {
+            return null;
+        }
+
+        if (!flights.containsKey(loadKey)) {
 
             try {
 
-                while (true) {
+                executor.execute(() -> {
 
                     try {
 
-                        Optional<List<?>> cached = cache.get(key, () -> {
+                        loadCached(flights, loadKey, lookup, store, loader);
 
-                            List<T> values = c.call();
+                    } catch (Exception e) {
 
-                            log.trace("Cached list : {} ({})", key, values == null ? null : values.size());
+                        log.debug("Failed to refresh : {} - {}", type, e);
 
-                            return Optional.ofNullable(values).map(Collections::unmodifiableList);
+                    }
 
-                        });
+                });
 
-                        if (cacheLast) {
-                            listLast.put(lastKey, cached);
-                        }
+            } catch (RejectedExecutionException e) {
 
-                        @SuppressWarnings("unchecked")
-                        List<T> result = (List<T>) cached.orElse(null);
+                log.trace("Skipped refresh : {}", type);
 
-                        return result;
+            }
 
-                    } catch (Exception e) {
+        }
+
+        return last;
+
+    }
+
+    private <V> V loadCached(Map<Pair<Class<?>, Key>, CompletableFuture<V>> flights, Pair<Class<?>, Key> loadKey,
+                             Supplier<V> lookup, Consumer<V> store, Callable<V> loader) throws Exception {
+
+        V cached = lookup.get();
+
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+
+        CompletableFuture<V> inflight = flights.putIfAbsent(loadKey, future);
+
+        if (inflight != null) {
+
+            try {
+                return inflight.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+
+        }
+
+        try {
 
-                        if (CACHE_RETRY < ++retry) {
+            int retry = 0;
+
+            while (true) {
+
+                cached = lookup.get();
+
+                if (cached != null) {
+                    break;
+                }
+
+                try {
 
-                            log.warn("Failed to cache list : {} - {}", type, e);
+                    cached = loader.call();
 
-                            break;
+                    store.accept(cached);
 
-                        }
+                    break;
 
-                        Thread.sleep(CACHE_SLEEP.toMillis());
+                } catch (Exception e) {
 
+                    if (CACHE_RETRY < ++retry) {
+                        throw e;
                     }
 
+                    Thread.sleep(CACHE_SLEEP.toMillis());
+
                 }
 
-            } catch (InterruptedException e) {
-                // Do nothing.
             }
 
-        }
+            future.complete(cached);
 
-        Optional<List<?>> last = listLast.getOrDefault(lastKey, Optional.empty());
+            return cached;
 
-        @SuppressWarnings("unchecked")
-        List<T> result = (List<T>) last.orElse(null);
+        } catch (Throwable e) {
 
-        return result;
+            future.completeExceptionally(e);
+
+            throw e;
+
+        } finally {
+
+            flights.remove(loadKey, future);
+
+        }
 
     }
 
@@ -608,6 +1090,52 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     }
 
+    public Book getBook(Key key) {
+        return findCached(Book.class, key, () -> Book.of(getAskPrices(key), getBidPrices(key)));
+    }
+
+    private <T> T forBook(Key key, Function<Book, T> function) {
+
+        Book book = getBook(key);
+
+        return book == null ? null : function.apply(book);
+
+    }
+
+    @Override
+    public BigDecimal getAskDepth(Key key, BigDecimal price) {
+        return price == null ? null : forBook(key, b -> toDecimal(b.getAsks().getCumulativeSize(price)));
+    }
+
+    @Override
+    public BigDecimal getBidDepth(Key key, BigDecimal price) {
+        return price == null ? null : forBook(key, b -> toDecimal(b.getBids().getCumulativeSize(price)));
+    }
+
+    @Override
+    public BigDecimal getAskAverage(Key key, BigDecimal size) {
+        return size == null ? null : forBook(key, b -> toDecimal(b.getAsks().getAverage(size.doubleValue())));
+    }
+
+    @Override
+    public BigDecimal getBidAverage(Key key, BigDecimal size) {
+        return size == null ? null : forBook(key, b -> toDecimal(b.getBids().getAverage(size.doubleValue())));
+    }
+
+    @Override
+    public BigDecimal getAskPriceAt(Key key, BigDecimal size) {
+        return size == null ? null : forBook(key, b -> b.getAsks().getPriceAt(size.doubleValue()));
+    }
+
+    @Override
+    public BigDecimal getBidPriceAt(Key key, BigDecimal size) {
+        return size == null ? null : forBook(key, b -> b.getBids().getPriceAt(size.doubleValue()));
+    }
+
+    private BigDecimal toDecimal(double value) {
+        return Double.isFinite(value) ? BigDecimal.valueOf(value) : null;
+    }
+
     @Override
     public List<Trade> listTrades(Key key, Instant fromTime) {
         return null;
@@ -707,7 +1235,7 @@ public abstract class TemplateContext extends AbstractService implements Context
 
             try {
 
-                futures.put(i, execute.convert(i));
+                futures.put(i, prioritize(() -> execute.convert(i)));
 
             } catch (Exception e) {
 
@@ -776,7 +1304,7 @@ public abstract class TemplateContext extends AbstractService implements Context
 
             try {
 
-                futures.put(i, execute.convert(i));
+                futures.put(i, prioritize(() -> execute.convert(i)));
 
             } catch (Exception e) {
 
@@ -822,4 +1350,84 @@ public abstract class TemplateContext extends AbstractService implements Context
 
     }
 
+    /**
+     * Sends the valid instructions in batches of up to the limit, one request per batch, and maps each result back.
+     * Instructions missing from the batch result, or in a failed batch, are mapped to null.
+     */
+    protected <I extends Instruction> Map<I, String> handleBatches(Set<I> instructions, int limit,
+                                                                  Predicate<I> validator,
+                                                                  Converter<List<I>, Future<Map<I, String>>> execute) {
+
+        Map<I, String> results = new IdentityHashMap<>();
+
+        List<I> valids = new ArrayList<>();
+
+        for (I i : trimToEmpty(instructions)) {
+
+            if (i == null) {
+                continue;
+            }
+
+            if (validator.test(i)) {
+                valids.add(i);
+            } else {
+                results.put(i, null);
+            }
+
+        }
+
+        Map<List<I>, Future<Map<I, String>>> futures = new IdentityHashMap<>();
+
+        for (List<I> batch : Lists.partition(valids, Math.max(limit, 1))) {
+
+            try {
+
+                futures.put(batch, prioritize(() -> execute.convert(batch)));
+
+            } catch (Exception e) {
+
+                futures.put(batch, Futures.immediateFailedFuture(e));
+
+            }
+
+        }
+
+        Instant cutoff = getNow().plus(getTimeout());
+
+        for (Entry<List<I>, Future<Map<I, String>>> entry : futures.entrySet()) {
+
+            Map<I, String> values;
+
+            try {
+
+                Duration remaining = Duration.between(getNow(), cutoff);
+
+                long millis = Math.max(remaining.toMillis(), FUTURE_MINIMUM.toMillis());
+
+                values = trimToEmpty(entry.getValue().get(millis, MILLISECONDS));
+
+            } catch (TimeoutException e) {
+
+                log.warn("Order batch timeout : " + entry.getKey());
+
+                values = emptyMap();
+
+            } catch (Exception e) {
+
+                log.warn("Order batch failure : " + entry.getKey(), e);
+
+                values = emptyMap();
+
+            }
+
+            for (I i : entry.getKey()) {
+                results.put(i, values.get(i));
+            }
+
+        }
+
+        return results;
+
+    }
+
 }
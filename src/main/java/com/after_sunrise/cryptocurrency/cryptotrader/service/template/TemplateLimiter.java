@@ -0,0 +1,229 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.apache.commons.lang3.tuple.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+class TemplateLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TemplateLimiter.class);
+
+    /**
+     * Only times the refills. The queued tasks are dispatched on the executor of each limiter.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        t.setName(TemplateLimiter.class.getSimpleName());
+        return t;
+    });
+
+    private final Deque<Triple<Long, Runnable, Consumer<Throwable>>> priorityQueue = new ArrayDeque<>();
+
+    private final Deque<Triple<Long, Runnable, Consumer<Throwable>>> defaultQueue = new ArrayDeque<>();
+
+    private final Deque<Runnable> readyQueue = new ArrayDeque<>();
+
+    private final AtomicLong lastWait = new AtomicLong();
+
+    private final Executor executor;
+
+    private double tokens;
+
+    private long refilled;
+
+    private boolean scheduled;
+
+    private boolean draining;
+
+    TemplateLimiter(Executor executor) {
+        this.executor = executor;
+    }
+
+    synchronized int getQueueSize() {
+        return priorityQueue.size() + defaultQueue.size();
+    }
+
+    Duration getLastWait() {
+        return Duration.ofNanos(lastWait.get());
+    }
+
+    void submit(double rate, double burst, boolean priority, Runnable task) {
+        submit(rate, burst, priority, task, e -> {
+        });
+    }
+
+    /**
+     * @param failure Notified if the task is discarded without being run.
+     */
+    void submit(double rate, double burst, boolean priority, Runnable task, Consumer<Throwable> failure) {
+
+        synchronized (this) {
+            (priority ? priorityQueue : defaultQueue).add(Triple.of(System.nanoTime(), task, failure));
+        }
+
+        dispatch(rate, burst);
+
+    }
+
+    private void dispatch(double rate, double burst) {
+
+        synchronized (this) {
+
+            long now = System.nanoTime();
+
+            double capacity = Math.max(burst, 1.0);
+
+            tokens = refilled == 0 ? capacity : Math.min(capacity, tokens + (now - refilled) * rate / SECONDS.toNanos(1));
+
+            refilled = now;
+
+            while (rate <= 0 || tokens >= 1.0) {
+
+                Triple<Long, Runnable, Consumer<Throwable>> entry = priorityQueue.isEmpty() ? defaultQueue.poll() : priorityQueue.poll();
+
+                if (entry == null) {
+                    break;
+                }
+
+                tokens = rate <= 0 ? tokens : tokens - 1.0;
+
+                lastWait.set(now - entry.getLeft());
+
+                readyQueue.add(entry.getMiddle());
+
+            }
+
+            if (!scheduled && getQueueSize() > 0) {
+
+                scheduled = true;
+
+                long delay = (long) Math.ceil((1.0 - tokens) * SECONDS.toNanos(1) / rate);
+
+                SCHEDULER.schedule(() -> {
+
+                    try {
+
+                        executor.execute(() -> {
+
+                            synchronized (this) {
+                                scheduled = false;
+                            }
+
+                            dispatch(rate, burst);
+
+                        });
+
+                    } catch (RuntimeException e) {
+
+                        LOG.warn("Failed to schedule dispatch.", e);
+
+                        reject(e);
+
+                    }
+
+                }, delay, NANOSECONDS);
+
+            }
+
+        }
+
+        drain();
+
+    }
+
+    /**
+     * Discards the queued tasks, which would otherwise never be dispatched.
+     */
+    private void reject(Throwable cause) {
+
+        List<Triple<Long, Runnable, Consumer<Throwable>>> entries = new ArrayList<>();
+
+        synchronized (this) {
+
+            scheduled = false;
+
+            entries.addAll(priorityQueue);
+
+            entries.addAll(defaultQueue);
+
+            priorityQueue.clear();
+
+            defaultQueue.clear();
+
+        }
+
+        for (Triple<Long, Runnable, Consumer<Throwable>> entry : entries) {
+
+            try {
+                entry.getRight().accept(cause);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to reject request.", e);
+            }
+
+        }
+
+    }
+
+    /**
+     * Runs the dispatched tasks in order, by one thread at a time.
+     */
+    private void drain() {
+
+        synchronized (this) {
+
+            if (draining) {
+                return;
+            }
+
+            draining = true;
+
+        }
+
+        while (true) {
+
+            Runnable task;
+
+            synchronized (this) {
+
+                task = readyQueue.poll();
+
+                if (task == null) {
+
+                    draining = false;
+
+                    return;
+
+                }
+
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to dispatch request.", e);
+            }
+
+        }
+
+    }
+
+}
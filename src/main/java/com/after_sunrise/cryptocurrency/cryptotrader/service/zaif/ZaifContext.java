@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.zaif;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book.Side;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
@@ -23,13 +25,13 @@ import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 
+import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.GET;
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.POST;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
 import static java.util.Collections.*;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -70,19 +72,19 @@ public class ZaifContext extends TemplateContext implements ZaifService {
     }
 
     @VisibleForTesting
-    Optional<ZaifDepth> queryDepth(Key key) {
+    Optional<Book> queryDepth(Key key) {
 
         ProductType product = ProductType.find(key.getInstrument());
 
         if (product == null) {
-            return null;
+            return Optional.empty();
         }
 
-        ZaifDepth value = findCached(ZaifDepth.class, key, () -> {
+        Book value = findCached(Book.class, key, () -> {
 
-            String data = request(URL_DEPTH + product.getId());
+            ZaifDepth depth = request(GET, URL_DEPTH + product.getId(), null, null, r -> gson.fromJson(r, ZaifDepth.class));
 
-            return gson.fromJson(data, ZaifDepth.class);
+            return depth == null ? null : Book.of(depth.getAskPrices(), depth.getBidPrices());
 
         });
 
@@ -90,38 +92,43 @@ public class ZaifContext extends TemplateContext implements ZaifService {
 
     }
 
+    @Override
+    public Book getBook(Key key) {
+        return queryDepth(key).orElse(null);
+    }
+
     @Override
     public BigDecimal getBestAskPrice(Key key) {
-        return queryDepth(key).map(ZaifDepth::getAskPrices)
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidPrice(Key key) {
-        return queryDepth(key).map(ZaifDepth::getBidPrices)
+        return queryDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getKey).orElse(null);
     }
 
     @Override
     public BigDecimal getBestAskSize(Key key) {
-        return queryDepth(key).map(ZaifDepth::getAskPrices)
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public BigDecimal getBestBidSize(Key key) {
-        return queryDepth(key).map(ZaifDepth::getBidPrices)
+        return queryDepth(key).map(Book::getBids).map(Side::asMap)
                 .map(NavigableMap::firstEntry).map(Entry::getValue).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getAskPrices(Key key) {
-        return queryDepth(key).map(ZaifDepth::getAskPrices).orElse(null);
+        return queryDepth(key).map(Book::getAsks).map(Side::asMap).orElse(null);
     }
 
     @Override
     public Map<BigDecimal, BigDecimal> getBidPrices(Key key) {
-        return queryDepth(key).map(ZaifDepth::getBidPrices).orElse(null);
+        return queryDepth(key).map(Book::getBids).map(Side::asMap).orElse(null);
     }
 
     @Override
@@ -244,15 +251,10 @@ public class ZaifContext extends TemplateContext implements ZaifService {
             return null;
         }
 
-        Future<String> result;
-
-        synchronized (URL_POST) {
-
-            // Avoid duplicate nonce
-            MILLISECONDS.sleep(5);
+        return sequence(() -> {
 
             Map<String, String> map = new LinkedHashMap<>(trimToEmpty(parameters));
-            map.put("nonce", BigDecimal.valueOf(getNow().toEpochMilli()).movePointLeft(3).toPlainString());
+            map.put("nonce", BigDecimal.valueOf(getNonce()).movePointLeft(3).toPlainString());
             map.put("method", method);
             String data = buildQueryParameter(map, "");
 
@@ -261,11 +263,9 @@ public class ZaifContext extends TemplateContext implements ZaifService {
             headers.put("key", apiKey);
             headers.put("sign", computeHash("HmacSHA512", secret.getBytes(), data.getBytes()));
 
-            result = requestAsync(POST, URL_POST, headers, data);
-
-        }
+            return requestAsync(POST, URL_POST, headers, data);
 
-        return result;
+        });
 
     }
 
@@ -824,6 +824,38 @@ public class PropertyManagerImplTest {
 
     }
 
+    @Test
+    public void testGetTradingGap() throws Exception {
+
+        assertEquals(target.getTradingGap(site, inst), Duration.ofMillis(0));
+
+        // Specific
+        doReturn(valueOf(1500L)).when(conf).getBigDecimal(TRADING_GAP.getKey());
+        assertEquals(target.getTradingGap(site, inst), Duration.ofMillis(1500));
+
+        // Ceiling
+        doReturn(valueOf(Long.MAX_VALUE)).when(conf).getBigDecimal(TRADING_GAP.getKey());
+        assertEquals(target.getTradingGap(site, inst), Duration.ofMillis(Long.MAX_VALUE));
+
+        // Floor
+        doReturn(valueOf(Long.MIN_VALUE)).when(conf).getBigDecimal(TRADING_GAP.getKey());
+        assertEquals(target.getTradingGap(site, inst), Duration.ZERO);
+
+        // Error
+        doThrow(new RuntimeException("test")).when(conf).getBigDecimal(TRADING_GAP.getKey());
+        assertEquals(target.getTradingGap(site, inst), Duration.ZERO);
+        reset(conf);
+
+        // Override
+        target.setTradingGap(site, inst, Duration.ofMillis(1));
+        assertEquals(target.getTradingGap(site, inst), Duration.ofMillis(1));
+
+        // Clear
+        target.setTradingGap(site, inst, null);
+        assertEquals(target.getTradingGap(site, inst), Duration.ofMillis(0));
+
+    }
+
     @Test
     public void testGetFundingOffset() throws Exception {
 
@@ -0,0 +1,83 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework;
+
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BarTest {
+
+    private Trade trade(long millis, String price, String size) {
+
+        Trade trade = mock(Trade.class);
+        when(trade.getTimestamp()).thenReturn(Instant.ofEpochMilli(millis));
+        when(trade.getPrice()).thenReturn(price == null ? null : new BigDecimal(price));
+        when(trade.getSize()).thenReturn(size == null ? null : new BigDecimal(size));
+        return trade;
+
+    }
+
+    @Test
+    public void testCeiling() throws Exception {
+
+        assertEquals(Bar.ceiling(0, 1000), 0);
+        assertEquals(Bar.ceiling(1, 1000), 1000);
+        assertEquals(Bar.ceiling(1000, 1000), 1000);
+        assertEquals(Bar.ceiling(1001, 1000), 2000);
+        assertEquals(Bar.ceiling(-1, 1000), 0);
+        assertEquals(Bar.ceiling(-1000, 1000), -1000);
+        assertEquals(Bar.ceiling(-1001, 1000), -1000);
+
+    }
+
+    @Test
+    public void testAggregator() throws Exception {
+
+        List<Bar> bars = new ArrayList<>();
+
+        Bar.Aggregator target = new Bar.Aggregator(
+                Duration.ofSeconds(1), Instant.ofEpochMilli(2000), Instant.ofEpochMilli(5000), bars::add);
+
+        target.accept(trade(1000, "1", "1")); // Before
+        target.accept(trade(1001, "2", "1"));
+        target.accept(trade(1500, "4", "3"));
+        target.accept(trade(1800, "3", "1"));
+        target.accept(trade(2000, "5", "1"));
+        target.accept(trade(2500, "6", null));
+        target.accept(trade(2500, null, "1"));
+        target.accept(trade(2500, "6", "0"));
+        target.accept(null);
+        target.accept(trade(3800, "7", "2"));
+        target.accept(trade(3800, "10", "1")); // Same time
+        target.accept(trade(1900, "9", "1")); // Older bar
+        target.accept(trade(4001, "8", "1")); // After
+        target.flush();
+        target.flush();
+
+        assertEquals(bars.size(), 2);
+        assertEquals(bars.get(0).getTimestamp(), Instant.ofEpochMilli(2000));
+        assertEquals(bars.get(0).getOpen(), 2.0);
+        assertEquals(bars.get(0).getHigh(), 5.0);
+        assertEquals(bars.get(0).getLow(), 2.0);
+        assertEquals(bars.get(0).getClose(), 5.0);
+        assertEquals(bars.get(0).getVolume(), 6.0);
+        assertEquals(bars.get(0).getNotional(), 2.0 + 12.0 + 3.0 + 5.0);
+        assertEquals(bars.get(1).getTimestamp(), Instant.ofEpochMilli(4000));
+        assertEquals(bars.get(1).getHigh(), 10.0);
+        assertEquals(bars.get(1).getClose(), 8.0);
+        assertEquals(bars.get(1).getVolume(), 3.0);
+
+    }
+
+}
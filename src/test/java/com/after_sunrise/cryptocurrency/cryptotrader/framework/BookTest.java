@@ -0,0 +1,190 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static java.math.BigDecimal.ONE;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BookTest {
+
+    private Book target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        Map<BigDecimal, BigDecimal> asks = new HashMap<>();
+        asks.put(new BigDecimal("102.5"), new BigDecimal("2"));
+        asks.put(new BigDecimal("101.0"), new BigDecimal("1"));
+        asks.put(new BigDecimal("103"), new BigDecimal("3"));
+        asks.put(new BigDecimal("104"), new BigDecimal("0"));
+        asks.put(new BigDecimal("105"), null);
+        asks.put(null, ONE);
+
+        Map<BigDecimal, BigDecimal> bids = new HashMap<>();
+        bids.put(new BigDecimal("99"), new BigDecimal("4"));
+        bids.put(new BigDecimal("100"), new BigDecimal("0.5"));
+        bids.put(new BigDecimal("98.25"), new BigDecimal("6"));
+
+        target = Book.of(asks, bids);
+
+    }
+
+    @Test
+    public void testLevels() throws Exception {
+
+        Book.Side asks = target.getAsks();
+        assertTrue(asks.isAscending());
+        assertEquals(asks.size(), 3);
+        assertEquals(asks.getBestPrice(), new BigDecimal("101.0"));
+        assertEquals(asks.getBestSize(), 1.0);
+        assertEquals(asks.getPrice(1), new BigDecimal("102.5"));
+        assertEquals(asks.getPrice(2), new BigDecimal("103.0"));
+        assertEquals(asks.getPrice(3), null);
+        assertEquals(asks.getSize(-1), 0.0);
+
+        Book.Side bids = target.getBids();
+        assertFalse(bids.isAscending());
+        assertEquals(bids.size(), 3);
+        assertEquals(bids.getBestPrice(), new BigDecimal("100.00"));
+        assertEquals(bids.getBestSize(), 0.5);
+        assertEquals(bids.getPrice(2), new BigDecimal("98.25"));
+
+        assertEquals(Book.EMPTY.getAsks().size(), 0);
+        assertEquals(Book.EMPTY.getBids().getBestPrice(), null);
+        assertEquals(Book.of(null, null).getAsks().getBestSize(), 0.0);
+
+    }
+
+    @Test
+    public void testLevels_Scale() throws Exception {
+
+        Map<BigDecimal, BigDecimal> asks = new HashMap<>();
+        asks.put(new BigDecimal("1000000"), new BigDecimal("1"));
+        asks.put(new BigDecimal("0.00000000000000000001"), new BigDecimal("2"));
+        asks.put(new BigDecimal("1E+30"), new BigDecimal("3")); // Not indexable
+
+        Map<BigDecimal, BigDecimal> bids = new HashMap<>();
+        bids.put(new BigDecimal("999999.000000000000000009"), new BigDecimal("4"));
+        bids.put(new BigDecimal("999999"), new BigDecimal("5"));
+
+        Book book = Book.of(asks, bids);
+        assertEquals(book.getAsks().size(), 2);
+        assertEquals(book.getAsks().getBestPrice().compareTo(new BigDecimal("0.000000000001")), 0);
+        assertEquals(book.getAsks().getPrice(1).compareTo(new BigDecimal("1000000")), 0);
+        assertEquals(book.getBids().size(), 1);
+        assertEquals(book.getBids().getBestPrice().compareTo(new BigDecimal("999999")), 0);
+        assertEquals(book.getBids().getBestSize(), 9.0);
+
+    }
+
+    @Test
+    public void testCumulative() throws Exception {
+
+        Book.Side asks = target.getAsks();
+        assertEquals(asks.countLevels(new BigDecimal("102.5"), true), 2);
+        assertEquals(asks.countLevels(new BigDecimal("102.5"), false), 1);
+        assertEquals(asks.countLevels(new BigDecimal("102.49"), true), 1);
+        assertEquals(asks.countLevels(new BigDecimal("102.51"), false), 2);
+        assertEquals(asks.countLevels(new BigDecimal("1E+30"), true), 3);
+        assertEquals(asks.countLevels(new BigDecimal("-1E+30"), true), 0);
+        assertEquals(asks.countLevels(null, true), 0);
+        assertEquals(asks.getCumulativeSize(2), 3.0);
+        assertEquals(asks.getCumulativeSize(9), 6.0);
+        assertEquals(asks.getCumulativeSize(-1), 0.0);
+        assertEquals(asks.getCumulativeNotional(2), 101 + 205.0);
+        assertEquals(asks.getCumulativeSize(new BigDecimal("103")), 6.0);
+
+        Book.Side bids = target.getBids();
+        assertEquals(bids.countLevels(new BigDecimal("99"), true), 2);
+        assertEquals(bids.countLevels(new BigDecimal("99"), false), 1);
+        assertEquals(bids.getCumulativeSize(new BigDecimal("98.5")), 4.5);
+        assertEquals(bids.getCumulativeNotional(new BigDecimal("98.5")), 50 + 396.0);
+
+    }
+
+    @Test
+    public void testFindLevel() throws Exception {
+
+        Book.Side asks = target.getAsks();
+        assertEquals(asks.findLevel(0.5), 0);
+        assertEquals(asks.findLevel(1.0), 0);
+        assertEquals(asks.findLevel(1.5), 1);
+        assertEquals(asks.findLevel(6.0), 2);
+        assertEquals(asks.findLevel(6.5), -1);
+        assertEquals(asks.findLevel(0.0), -1);
+        assertEquals(asks.findLevel(Double.NaN), -1);
+        assertEquals(asks.getPriceAt(3.5), new BigDecimal("103.0"));
+        assertEquals(asks.getPriceAt(9), null);
+        assertEquals(asks.getAverage(1.0), 101.0);
+        assertEquals(asks.getAverage(2.0), (101.0 + 102.5) / 2);
+        assertEquals(asks.getAverage(6.0), (101.0 + 205.0 + 309.0) / 6);
+        assertEquals(asks.getAverage(7.0), Double.NaN);
+
+        Book.Side bids = target.getBids();
+        assertEquals(bids.getPriceAt(0.5), new BigDecimal("100.00"));
+        assertEquals(bids.getPriceAt(0.6), new BigDecimal("99.00"));
+        assertEquals(bids.getAverage(2.5), (50.0 + 198.0) / 2.5);
+
+        assertEquals(Book.EMPTY.getBids().findLevel(1.0), -1);
+
+    }
+
+    @Test
+    public void testAsMap() throws Exception {
+
+        NavigableMap<BigDecimal, BigDecimal> asks = target.getAsks().asMap();
+        assertEquals(asks.size(), 3);
+        assertEquals(asks.firstKey(), new BigDecimal("101.0"));
+        assertEquals(asks.lastKey(), new BigDecimal("103.0"));
+        assertEquals(asks.get(new BigDecimal("102.50")), new BigDecimal("2.0"));
+        assertEquals(asks.get(new BigDecimal("102.4")), null);
+        assertEquals(asks.get("102.5"), null);
+        assertTrue(asks.containsKey(new BigDecimal("103")));
+        assertEquals(asks.lowerKey(new BigDecimal("102.5")), new BigDecimal("101.0"));
+        assertEquals(asks.floorKey(new BigDecimal("102.5")), new BigDecimal("102.5"));
+        assertEquals(asks.ceilingKey(new BigDecimal("102.6")), new BigDecimal("103.0"));
+        assertEquals(asks.higherKey(new BigDecimal("103")), null);
+        assertEquals(asks.headMap(new BigDecimal("103")).size(), 2);
+        assertEquals(asks.headMap(new BigDecimal("103"), true).size(), 3);
+        assertEquals(asks.tailMap(new BigDecimal("102.5"), false).firstKey(), new BigDecimal("103.0"));
+        assertEquals(asks.subMap(new BigDecimal("101"), new BigDecimal("103")).keySet(),
+                new HashSet<>(Arrays.asList(new BigDecimal("101.0"), new BigDecimal("102.5"))));
+        assertEquals(asks.descendingMap().firstKey(), new BigDecimal("103.0"));
+        assertEquals(asks.descendingMap().headMap(new BigDecimal("102")).size(), 2);
+        assertEquals(asks.comparator().compare(ONE, BigDecimal.TEN), -1);
+
+        NavigableMap<BigDecimal, BigDecimal> bids = target.getBids().asMap();
+        assertEquals(new ArrayList<>(bids.keySet()), Arrays.asList(
+                new BigDecimal("100.00"), new BigDecimal("99.00"), new BigDecimal("98.25")));
+        assertEquals(bids.firstEntry().getValue(), new BigDecimal("0.5"));
+        assertEquals(bids.higherKey(new BigDecimal("99")), new BigDecimal("98.25"));
+        assertEquals(bids.headMap(new BigDecimal("99"), true).size(), 2);
+        assertEquals(bids.descendingKeySet().first(), new BigDecimal("98.25"));
+
+        assertEquals(new TreeMap<>(bids), bids);
+
+        try {
+            bids.pollFirstEntry();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Success
+        }
+
+        try {
+            bids.put(ONE, ONE);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Success
+        }
+
+    }
+
+}
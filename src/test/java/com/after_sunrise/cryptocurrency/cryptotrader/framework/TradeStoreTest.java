@@ -0,0 +1,304 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.math.BigDecimal.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TradeStoreTest {
+
+    private TradeStore target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new TradeStore(3);
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+
+        assertTrue(target.isEmpty());
+        assertFalse(target.contains("s", "i"));
+        assertFalse(target.append("s", "i", Instant.ofEpochSecond(1), ONE, ONE));
+        assertEquals(target.list("s", "i", null, true).size(), 0);
+        assertEquals(target.size("s", "i"), 0);
+
+        assertTrue(target.register("s", "i"));
+        assertFalse(target.register("s", "i"));
+        assertFalse(target.isEmpty());
+        assertTrue(target.contains("s", "i"));
+        assertFalse(target.contains("s", "j"));
+        assertFalse(target.contains("t", "i"));
+
+        Trade t1 = mock(Trade.class);
+        when(t1.getTimestamp()).thenReturn(Instant.ofEpochSecond(2));
+        when(t1.getPrice()).thenReturn(TEN);
+        when(t1.getSize()).thenReturn(ONE);
+        Trade t2 = mock(Trade.class);
+        when(t2.getTimestamp()).thenReturn(Instant.ofEpochSecond(1));
+        when(t2.getPrice()).thenReturn(ONE);
+        when(t2.getSize()).thenReturn(TEN);
+        Trade t3 = mock(Trade.class);
+        when(t3.getTimestamp()).thenReturn(Instant.ofEpochSecond(3));
+        when(t3.getPrice()).thenReturn(ONE);
+        when(t3.getSize()).thenReturn(ZERO);
+
+        assertTrue(target.register("s", "j", Arrays.asList(t1, null, t2, t3)));
+        List<Trade> values = target.list("s", "j", null, false);
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochSecond(1));
+        assertEquals(values.get(1).getTimestamp(), Instant.ofEpochSecond(2));
+
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+
+        target.register("s", "i");
+
+        assertTrue(target.append("s", "i", Instant.ofEpochSecond(10), new BigDecimal("100"), new BigDecimal("1")));
+        assertTrue(target.append("s", "i", Instant.ofEpochSecond(20), new BigDecimal("200"), new BigDecimal("2")));
+        assertTrue(target.append("s", "i", Instant.ofEpochSecond(10), new BigDecimal("400"), new BigDecimal("3")));
+        assertFalse(target.append("s", "i", Instant.ofEpochSecond(15), new BigDecimal("100"), new BigDecimal("1")));
+        assertFalse(target.append("s", "i", null, ONE, ONE));
+        assertFalse(target.append("s", "i", Instant.ofEpochSecond(30), null, ONE));
+        assertFalse(target.append("s", "i", Instant.ofEpochSecond(30), ONE, ZERO));
+        assertEquals(target.size("s", "i"), 2);
+
+        List<Trade> values = target.list("s", "i", null, false);
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochSecond(10));
+        assertEquals(values.get(0).getPrice(), new BigDecimal("325.0"));
+        assertEquals(values.get(0).getSize(), new BigDecimal("4.0"));
+        assertEquals(values.get(1).getTimestamp(), Instant.ofEpochSecond(20));
+        assertEquals(values.get(1).getPrice(), new BigDecimal("200.0"));
+        assertEquals(values.get(1).getSize(), new BigDecimal("2.0"));
+        assertEquals(target.list("s", "i", null, false), values);
+
+        // Range
+        assertEquals(target.list("s", "i", Instant.ofEpochSecond(10), true).size(), 2);
+        assertEquals(target.list("s", "i", Instant.ofEpochSecond(10), false).size(), 1);
+        assertEquals(target.list("s", "i", Instant.ofEpochSecond(15), true).size(), 1);
+        assertEquals(target.list("s", "i", Instant.ofEpochSecond(20), false).size(), 0);
+
+        // Ring
+        assertTrue(target.append("s", "i", Instant.ofEpochSecond(30), ONE, ONE));
+        assertTrue(target.append("s", "i", Instant.ofEpochSecond(40), ONE, ONE));
+        assertEquals(target.size("s", "i"), 3);
+        values = target.list("s", "i", null, false);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochSecond(20));
+        assertEquals(values.get(2).getTimestamp(), Instant.ofEpochSecond(40));
+        assertFalse(target.append("s", "i", Instant.ofEpochSecond(10), ONE, ONE));
+        assertTrue(target.append("s", "i", Instant.ofEpochSecond(20), ONE, ONE));
+
+        try {
+            values.add(null);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Success
+        }
+
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+
+        target = new TradeStore(4);
+
+        target.register("s", "i");
+
+        for (int i = 1; i <= 6; i++) {
+            target.append("s", "i", Instant.ofEpochSecond(i * 10), valueOf(i), ONE);
+        }
+
+        List<Trade> values = new ArrayList<>();
+        target.forEach("s", "i", null, null, values::add);
+        assertEquals(values, target.list("s", "i", null, true));
+        assertEquals(values.size(), 4);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochSecond(30));
+
+        // Range [from, to)
+        values.clear();
+        target.forEach("s", "i", Instant.ofEpochSecond(40), Instant.ofEpochSecond(60), values::add);
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochSecond(40));
+        assertEquals(values.get(1).getTimestamp(), Instant.ofEpochSecond(50));
+
+        values.clear();
+        target.forEach("s", "i", Instant.ofEpochSecond(45), Instant.ofEpochSecond(41), values::add);
+        target.forEach("s", "j", null, null, values::add);
+        target.forEach("s", "i", null, null, null);
+        assertEquals(values.size(), 0);
+
+    }
+
+    @Test
+    public void testForEachBar() throws Exception {
+
+        target = new TradeStore(10);
+
+        List<Bar> bars = new ArrayList<>();
+        assertFalse(target.forEachBar("s", "i", Duration.ofSeconds(1), null, null, bars::add));
+
+        target.register("s", "i", Arrays.asList(
+                trade(Instant.ofEpochMilli(1000), "1", "1"),
+                trade(Instant.ofEpochMilli(3000), "3", "1")
+        ));
+
+        target.append("s", "i", Instant.ofEpochMilli(4000), new BigDecimal("5"), new BigDecimal("2"));
+        target.append("s", "i", Instant.ofEpochMilli(4000), new BigDecimal("4"), new BigDecimal("1"));
+        target.append("s", "i", Instant.ofEpochMilli(2000), new BigDecimal("2"), new BigDecimal("1")); // Older
+        target.append("s", "i", Instant.ofEpochMilli(6000), new BigDecimal("6"), new BigDecimal("1"));
+
+        // 1 second, folded from the tape which keeps a trade per millisecond.
+        assertTrue(target.forEachBar("s", "i", Duration.ofSeconds(1), null, null, bars::add));
+        assertEquals(bars.size(), 4);
+        assertEquals(bars.get(2).getTimestamp(), Instant.ofEpochMilli(4000));
+        assertEquals(bars.get(2).getOpen(), 14.0 / 3);
+        assertEquals(bars.get(2).getLow(), 14.0 / 3);
+        assertEquals(bars.get(2).getClose(), 14.0 / 3);
+        assertEquals(bars.get(2).getVolume(), 3.0);
+
+        // 5 seconds : (0, 5000] and (5000, 10000]
+        bars.clear();
+        assertTrue(target.forEachBar("s", "i", Duration.ofSeconds(5), null, null, bars::add));
+        assertEquals(bars.size(), 2);
+        assertEquals(bars.get(0).getTimestamp(), Instant.ofEpochMilli(5000));
+        assertEquals(bars.get(0).getOpen(), 1.0);
+        assertEquals(bars.get(0).getHigh(), 5.0);
+        assertEquals(bars.get(0).getLow(), 1.0);
+        assertEquals(bars.get(0).getClose(), 14.0 / 3);
+        assertEquals(bars.get(0).getVolume(), 6.0);
+        assertEquals(bars.get(0).getNotional(), 1.0 + 3.0 + 10.0 + 4.0 + 2.0);
+        assertEquals(bars.get(1).getTimestamp(), Instant.ofEpochMilli(10000));
+        assertEquals(bars.get(1).getClose(), 6.0);
+
+        // Range [from, to)
+        bars.clear();
+        assertTrue(target.forEachBar("s", "i", Duration.ofSeconds(1),
+                Instant.ofEpochMilli(3000), Instant.ofEpochMilli(6000), bars::add));
+        assertEquals(bars.size(), 2);
+        assertEquals(bars.get(0).getTimestamp(), Instant.ofEpochMilli(3000));
+        assertEquals(bars.get(1).getTimestamp(), Instant.ofEpochMilli(4000));
+
+        // Unsupported
+        assertFalse(target.forEachBar("s", "i", Duration.ofSeconds(2), null, null, bars::add));
+        assertFalse(target.forEachBar("s", "i", null, null, null, bars::add));
+        assertFalse(target.forEachBar("s", "i", Duration.ofSeconds(1), null, null, null));
+
+    }
+
+    @Test
+    public void testAppend_Rebase() throws Exception {
+
+        target.register("s", "i");
+
+        // The int offsets reach about 24.8 days from the base.
+        Instant t1 = Instant.parse("2017-01-01T00:00:00.001Z");
+        Instant t2 = t1.plus(Duration.ofDays(20));
+        Instant t3 = t2.plus(Duration.ofDays(10));
+        Instant t4 = t3.plus(Duration.ofDays(1));
+
+        assertTrue(target.append("s", "i", t1, new BigDecimal("1.5"), new BigDecimal("0.008")));
+        assertTrue(target.append("s", "i", t2, new BigDecimal("2.5"), new BigDecimal("0.5")));
+        assertEquals(target.list("s", "i", null, true).get(0).getSize(), new BigDecimal("0.008"));
+
+        // Out of reach, hence dropped.
+        assertTrue(target.append("s", "i", t3, new BigDecimal("3.5"), new BigDecimal("1")));
+        assertEquals(target.size("s", "i"), 2);
+        assertFalse(target.append("s", "i", t1, ONE, ONE));
+
+        // Kept on the next move.
+        assertTrue(target.append("s", "i", t4, new BigDecimal("4.5"), new BigDecimal("1")));
+        assertEquals(target.size("s", "i"), 3);
+
+        List<Trade> values = target.list("s", "i", null, true);
+        assertEquals(values.get(0).getTimestamp(), t2);
+        assertEquals(values.get(0).getPrice(), new BigDecimal("2.5"));
+        assertEquals(values.get(1).getTimestamp(), t3);
+        assertEquals(values.get(2).getTimestamp(), t4);
+        assertEquals(target.list("s", "i", t3, false).size(), 1);
+
+        List<Bar> bars = new ArrayList<>();
+        assertTrue(target.forEachBar("s", "i", Duration.ofMinutes(1), null, null, bars::add));
+        assertEquals(bars.size(), 2);
+        assertEquals(bars.get(0).getTimestamp(), t3.plusMillis(59999));
+        assertEquals(bars.get(1).getTimestamp(), t4.plusMillis(59999));
+        assertEquals(bars.get(1).getClose(), 4.5);
+
+    }
+
+    private Trade trade(Instant time, String price, String size) {
+
+        Trade trade = mock(Trade.class);
+        when(trade.getTimestamp()).thenReturn(time);
+        when(trade.getPrice()).thenReturn(new BigDecimal(price));
+        when(trade.getSize()).thenReturn(new BigDecimal(size));
+        return trade;
+
+    }
+
+    @Test(timeOut = 10000L)
+    public void testAppend_Concurrent() throws Exception {
+
+        target = new TradeStore(5000);
+
+        target.register("s", "i");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            Future<?> future = executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    target.append("s", "i", Instant.ofEpochMilli(i), valueOf(i + 1), ONE);
+                }
+            });
+
+            while (!future.isDone()) {
+
+                List<Trade> values = target.list("s", "i", null, true);
+
+                for (int i = 1; i < values.size(); i++) {
+
+                    Trade t0 = values.get(i - 1);
+                    Trade t1 = values.get(i);
+
+                    assertEquals(t1.getTimestamp().toEpochMilli(), t0.getTimestamp().toEpochMilli() + 1);
+                    assertEquals(t1.getPrice().doubleValue(), t1.getTimestamp().toEpochMilli() + 1.0);
+
+                }
+
+            }
+
+            future.get();
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Trade> values = target.list("s", "i", null, true);
+        assertEquals(values.size(), 5000);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochMilli(15000));
+        assertEquals(values.get(4999).getTimestamp(), Instant.ofEpochMilli(19999));
+
+    }
+
+}
@@ -1,6 +1,11 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import org.apache.commons.configuration2.MapConfiguration;
 import org.testng.annotations.BeforeMethod;
@@ -11,12 +16,12 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.TEN;
 import static org.mockito.Mockito.*;
-import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.assertNull;
+import static org.testng.Assert.*;
 
 /**
  * @author takanori.takase
@@ -78,6 +83,61 @@ public class AbstractServiceTest {
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMemoize() throws Exception {
+
+        Context context = mock(Context.class);
+        Instant now = Instant.now();
+        Request r1 = Request.builder().site("s").instrument("i").currentTime(now).targetTime(now).build();
+        Request r2 = Request.build(r1).tradingSpread(ONE).build();
+        Request r3 = Request.build(r1).instrument("j").build();
+        Request r4 = Request.build(r1).currentTime(now.plusMillis(1)).build();
+        Estimation estimation = Estimation.builder().build();
+
+        BiFunction<Context, Request, Estimation> function = mock(BiFunction.class);
+        when(function.apply(any(), any())).thenReturn(estimation);
+
+        assertSame(target.memoize("e", context, r1, function), estimation);
+        assertSame(target.memoize("e", context, r2, function), estimation);
+        verify(function, times(1)).apply(any(), any());
+
+        target.memoize("f", context, r1, function);
+        target.memoize("e", context, r3, function);
+        target.memoize("e", context, r4, function);
+        target.memoize("e", mock(Context.class), r1, function);
+        target.memoize("e", context, Request.build(r1).currentTime(null).build(), function);
+        target.memoize("e", context, Request.build(r1).currentTime(null).build(), function);
+        verify(function, times(7)).apply(any(), any());
+
+        // Failures are not memoized.
+        Request r5 = Request.build(r1).site("t").build();
+        doThrow(new IllegalStateException("test")).doReturn(estimation).when(function).apply(context, r5);
+
+        try {
+            target.memoize("e", context, r5, function);
+            fail();
+        } catch (IllegalStateException e) {
+            // Success
+        }
+
+        assertSame(target.memoize("e", context, r5, function), estimation);
+
+        // Errors release the waiting callers too.
+        Request r6 = Request.build(r1).site("u").build();
+        doThrow(new LinkageError("test")).doReturn(estimation).when(function).apply(context, r6);
+
+        try {
+            target.memoize("e", context, r6, function);
+            fail();
+        } catch (LinkageError e) {
+            // Success
+        }
+
+        assertSame(target.memoize("e", context, r6, function), estimation);
+
+    }
+
     @Test
     public void testCalculateComposite() {
 
@@ -268,6 +328,149 @@ public class AbstractServiceTest {
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCollapsePrices_Context() throws Exception {
+
+        List<Trade> trades = new ArrayList<>();
+
+        for (int i = 1; i <= 20; i++) {
+            Trade t = mock(Trade.class);
+            when(t.getTimestamp()).thenReturn(Instant.ofEpochMilli(i + 11000));
+            when(t.getPrice()).thenReturn(BigDecimal.valueOf(i + 1000));
+            when(t.getSize()).thenReturn(BigDecimal.valueOf(i + 100));
+            trades.add(t);
+        }
+
+        Key key = Key.builder().site("s").instrument("i").build();
+        Duration interval = Duration.ofMillis(4);
+        Instant fromTime = Instant.ofEpochMilli(10990);
+        Instant toTime = Instant.ofEpochMilli(11035);
+
+        Context context = mock(Context.class);
+        doAnswer(i -> {
+            trades.forEach(i.getArgumentAt(3, Consumer.class));
+            return null;
+        }).when(context).forEachTrade(eq(key), eq(fromTime.minus(interval)), eq(toTime), any());
+
+        assertEquals(target.collapsePrices(context, key, interval, fromTime, toTime, false),
+                target.collapsePrices(trades, interval, fromTime, toTime, false));
+        assertEquals(target.collapsePrices(context, key, interval, fromTime, toTime, true),
+                target.collapsePrices(trades, interval, fromTime, toTime, true));
+
+        // No trades
+        NavigableMap<Instant, BigDecimal> result = target.collapsePrices(context, null, interval, fromTime, toTime, true);
+        assertEquals(result.size(), 12);
+        assertEquals(new HashSet<>(result.values()), Collections.singleton(null));
+
+    }
+
+    @Test
+    public void testFindResolution() throws Exception {
+
+        Instant aligned = Instant.ofEpochSecond(1500000000);
+        assertEquals(target.findResolution(Duration.ofMinutes(10), aligned), Duration.ofMinutes(5));
+        assertEquals(target.findResolution(Duration.ofMinutes(2), aligned), Duration.ofMinutes(1));
+        assertEquals(target.findResolution(Duration.ofSeconds(15), aligned), Duration.ofSeconds(5));
+        assertEquals(target.findResolution(Duration.ofSeconds(3), aligned), Duration.ofSeconds(1));
+        assertEquals(target.findResolution(Duration.ofMillis(1500), aligned), null);
+
+        Instant unaligned = aligned.plusMillis(1);
+        assertEquals(target.findResolution(Duration.ofMinutes(10), unaligned), null);
+        assertEquals(target.findResolution(Duration.ofMinutes(10), aligned.plusSeconds(1)), Duration.ofSeconds(1));
+        assertEquals(target.findResolution(Duration.ofMillis(1500), unaligned), null);
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCollapsePrices_Bar() throws Exception {
+
+        List<Trade> trades = new ArrayList<>();
+
+        for (int i = 1; i <= 20; i++) {
+            Trade t = mock(Trade.class);
+            when(t.getTimestamp()).thenReturn(Instant.ofEpochSecond(i * 7 + 1000));
+            when(t.getPrice()).thenReturn(BigDecimal.valueOf(i + 1000));
+            when(t.getSize()).thenReturn(BigDecimal.valueOf(i + 100));
+            trades.add(t);
+        }
+
+        // Trades at the same time close the bucket at their average price, on both paths.
+        Trade same = mock(Trade.class);
+        when(same.getTimestamp()).thenReturn(Instant.ofEpochSecond(1028));
+        when(same.getPrice()).thenReturn(BigDecimal.valueOf(1100));
+        when(same.getSize()).thenReturn(BigDecimal.valueOf(100));
+        trades.add(4, same);
+
+        Key key = Key.builder().site("s").instrument("i").build();
+        Duration interval = Duration.ofSeconds(10);
+        Instant fromTime = Instant.ofEpochSecond(1000);
+        Instant toTime = Instant.ofEpochSecond(1150);
+
+        Context context = mock(Context.class);
+        doAnswer(i -> {
+            Bar.Aggregator aggregator = new Bar.Aggregator(i.getArgumentAt(1, Duration.class),
+                    i.getArgumentAt(2, Instant.class), i.getArgumentAt(3, Instant.class), i.getArgumentAt(4, Consumer.class));
+            trades.forEach(aggregator);
+            aggregator.flush();
+            return null;
+        }).when(context).forEachBar(eq(key), eq(Duration.ofSeconds(5)), eq(fromTime.minus(interval)), eq(toTime), any());
+
+        NavigableMap<Instant, BigDecimal> expect = target.collapsePrices(trades, interval, fromTime, toTime, false);
+        NavigableMap<Instant, BigDecimal> actual = target.collapsePrices(context, key, interval, fromTime, toTime, false);
+        assertEquals(actual.size(), 15);
+        assertEquals(actual, expect);
+        assertEquals(actual.get(Instant.ofEpochSecond(1020)), new BigDecimal("1002.0000000000"));
+        assertEquals(actual.get(Instant.ofEpochSecond(1030)), new BigDecimal("1051.0588235294"));
+
+        // Sum Price Mode
+        expect = target.collapsePrices(trades, interval, fromTime, toTime, true);
+        actual = target.collapsePrices(context, key, interval, fromTime, toTime, true);
+        assertEquals(actual.keySet(), expect.keySet());
+        assertEquals(actual.get(Instant.ofEpochSecond(1000)), null);
+        for (Instant k : expect.tailMap(Instant.ofEpochSecond(1010)).keySet()) {
+            assertEquals(actual.get(k).doubleValue(), expect.get(k).doubleValue(), 1E-8);
+        }
+
+        verify(context, never()).forEachTrade(any(), any(), any(), any());
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCollapsePrices_Unaligned() throws Exception {
+
+        List<Trade> trades = new ArrayList<>();
+
+        for (int i = 1; i <= 20; i++) {
+            Trade t = mock(Trade.class);
+            when(t.getTimestamp()).thenReturn(Instant.ofEpochMilli(i * 6900 + 1000000));
+            when(t.getPrice()).thenReturn(BigDecimal.valueOf(i + 1000));
+            when(t.getSize()).thenReturn(BigDecimal.valueOf(i + 100));
+            trades.add(t);
+        }
+
+        Key key = Key.builder().site("s").instrument("i").build();
+        Duration interval = Duration.ofSeconds(10);
+        Instant fromTime = Instant.ofEpochMilli(1000250);
+        Instant toTime = Instant.ofEpochMilli(1150250);
+
+        Context context = mock(Context.class);
+        doAnswer(i -> {
+            trades.forEach(i.getArgumentAt(3, Consumer.class));
+            return null;
+        }).when(context).forEachTrade(eq(key), eq(fromTime.minus(interval)), eq(toTime), any());
+
+        // Trades close to the bucket boundaries must not move into the next bucket.
+        assertEquals(target.collapsePrices(context, key, interval, fromTime, toTime, false),
+                target.collapsePrices(trades, interval, fromTime, toTime, false));
+        assertEquals(target.collapsePrices(context, key, interval, fromTime, toTime, true),
+                target.collapsePrices(trades, interval, fromTime, toTime, true));
+        verify(context, never()).forEachBar(any(), any(), any(), any(), any());
+
+    }
+
     @Test
     public void testCalculateReturns() throws Exception {
 
@@ -13,6 +13,7 @@ import org.testng.annotations.Test;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Collections.*;
 import static org.mockito.Mockito.*;
@@ -102,4 +103,33 @@ public class AgentImplTest {
 
     }
 
+
+    @Test
+    public void testReconcileAsync() throws Exception {
+
+        Request.RequestBuilder builder = module.createRequestBuilder();
+        Request request = builder.site("s").instrument("i").build();
+        Map<Instruction, String> values = emptyMap();
+        Map<Instruction, Boolean> results = new HashMap<>();
+        CompletableFuture<Map<Instruction, Boolean>> future = new CompletableFuture<>();
+        doReturn(future).when(service).reconcileAsync(context, request, values);
+
+        // Found
+        CompletableFuture<Map<Instruction, Boolean>> result = target.reconcileAsync(context, request, values);
+        assertFalse(result.isDone());
+        future.complete(results);
+        assertSame(result.get(), results);
+        verify(service).reconcileAsync(context, request, values);
+
+        // Null future
+        doReturn(null).when(service).reconcileAsync(context, request, values);
+        assertEquals(target.reconcileAsync(context, request, values).get(), emptyMap());
+
+        // Site not found
+        request = builder.site(null).build();
+        assertEquals(target.reconcileAsync(context, request, values).get(), emptyMap());
+        verify(service, times(2)).reconcileAsync(any(), any(), any());
+
+    }
+
 }
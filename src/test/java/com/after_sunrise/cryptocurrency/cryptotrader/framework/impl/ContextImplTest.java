@@ -2,6 +2,7 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.TestModule;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
@@ -14,11 +15,14 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static java.math.BigDecimal.ONE;
 import static java.math.RoundingMode.DOWN;
@@ -112,6 +116,21 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    public void testAddListener() {
+
+        Consumer<Key> listener = k -> {
+        };
+
+        target.addListener(listener);
+
+        verify(contexts.get("c1")).addListener(listener);
+        verify(contexts.get("c2")).addListener(listener);
+        verify(contexts.get("c3")).addListener(listener);
+        verify(contexts.get("c4")).addListener(listener);
+
+    }
+
     @Test
     public void testGetState() {
 
@@ -189,6 +208,72 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    public void testGetAskDepth() {
+
+        BigDecimal value = new BigDecimal(Math.random());
+
+        when(contexts.get("c1").getAskDepth(key, ONE)).thenReturn(value);
+
+        assertEquals(target.getAskDepth(key, ONE), value);
+
+    }
+
+    @Test
+    public void testGetBidDepth() {
+
+        BigDecimal value = new BigDecimal(Math.random());
+
+        when(contexts.get("c1").getBidDepth(key, ONE)).thenReturn(value);
+
+        assertEquals(target.getBidDepth(key, ONE), value);
+
+    }
+
+    @Test
+    public void testGetAskAverage() {
+
+        BigDecimal value = new BigDecimal(Math.random());
+
+        when(contexts.get("c1").getAskAverage(key, ONE)).thenReturn(value);
+
+        assertEquals(target.getAskAverage(key, ONE), value);
+
+    }
+
+    @Test
+    public void testGetBidAverage() {
+
+        BigDecimal value = new BigDecimal(Math.random());
+
+        when(contexts.get("c1").getBidAverage(key, ONE)).thenReturn(value);
+
+        assertEquals(target.getBidAverage(key, ONE), value);
+
+    }
+
+    @Test
+    public void testGetAskPriceAt() {
+
+        BigDecimal value = new BigDecimal(Math.random());
+
+        when(contexts.get("c1").getAskPriceAt(key, ONE)).thenReturn(value);
+
+        assertEquals(target.getAskPriceAt(key, ONE), value);
+
+    }
+
+    @Test
+    public void testGetBidPriceAt() {
+
+        BigDecimal value = new BigDecimal(Math.random());
+
+        when(contexts.get("c1").getBidPriceAt(key, ONE)).thenReturn(value);
+
+        assertEquals(target.getBidPriceAt(key, ONE), value);
+
+    }
+
     @Test
     public void testListTrades() {
 
@@ -202,6 +287,44 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testForEachTrade() {
+
+        Instant from = Instant.now();
+
+        Instant to = from.plusSeconds(1);
+
+        Consumer<Trade> consumer = mock(Consumer.class);
+
+        target.forEachTrade(key, from, to, consumer);
+
+        target.forEachTrade(null, from, to, consumer);
+
+        verify(contexts.get("c1"), times(1)).forEachTrade(key, from, to, consumer);
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testForEachBar() {
+
+        Instant from = Instant.now();
+
+        Instant to = from.plusSeconds(1);
+
+        Duration resolution = Duration.ofSeconds(5);
+
+        Consumer<Bar> consumer = mock(Consumer.class);
+
+        target.forEachBar(key, resolution, from, to, consumer);
+
+        target.forEachBar(null, resolution, from, to, consumer);
+
+        verify(contexts.get("c1"), times(1)).forEachBar(key, resolution, from, to, consumer);
+
+    }
+
     @Test
     public void testGetInstrumentCurrency() {
 
@@ -326,6 +449,19 @@ public class ContextImplTest {
 
     }
 
+    @Test
+    public void testFindOrders() {
+
+        Set<String> ids = singleton("foo");
+
+        Map<String, Order> values = singletonMap("foo", mock(Order.class));
+
+        when(contexts.get("c1").findOrders(key, ids)).thenReturn(values);
+
+        assertEquals(target.findOrders(key, ids), values);
+
+    }
+
     @Test
     public void testListActiveOrders() {
 
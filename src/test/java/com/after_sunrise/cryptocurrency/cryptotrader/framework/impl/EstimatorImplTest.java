@@ -1,25 +1,41 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.TestModule;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.ServiceFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.commons.configuration2.MapConfiguration;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.math.BigDecimal.*;
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.*;
-import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.assertNull;
+import static org.testng.Assert.*;
 
 /**
  * @author takanori.takase
@@ -119,6 +135,62 @@ public class EstimatorImplTest {
                 .filter(e -> "id7".equals(e.get()))
                 .forEach(mock -> Mockito.verify(mock, never()).estimate(context, request));
 
+        // Memoized within the cycle, except for the failure.
+        result = target.estimate(context, request);
+        assertEquals(result.getPrice(), new BigDecimal("4.7500000000"));
+        services.values().stream()
+                .filter(e -> !"id7".equals(e.get()))
+                .forEach(mock -> Mockito.verify(mock, times("id4".equals(mock.get()) ? 2 : 1)).estimate(context, request));
+
+    }
+
+    @Test
+    public void testGetDataTypes() throws Exception {
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        when(manager.getEstimators(request.getSite(), request.getInstrument())).thenReturn(Sets.newHashSet("id1", "id2:0.5"));
+        when(services.get("id1").getDataTypes(request)).thenReturn(EnumSet.of(DataType.TICK));
+        when(services.get("id2").getDataTypes(request)).thenReturn(EnumSet.of(DataType.TRADE, DataType.TICK));
+        when(services.get("id3").getDataTypes(request)).thenReturn(EnumSet.of(DataType.BOOK));
+
+        assertEquals(target.getDataTypes(request), EnumSet.of(DataType.TICK, DataType.TRADE));
+
+        when(manager.getEstimators(request.getSite(), request.getInstrument())).thenReturn(null);
+        assertEquals(target.getDataTypes(request), EnumSet.noneOf(DataType.class));
+
+    }
+
+    @Test(timeOut = 10000L)
+    public void testEstimate_Prefetch() throws Exception {
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        when(manager.getEstimationThreshold(request.getSite(), request.getInstrument())).thenReturn(ZERO);
+        when(manager.getEstimators(request.getSite(), request.getInstrument())).thenReturn(Sets.newHashSet("id1", "id2"));
+        when(services.get("id1").getDataTypes(request)).thenReturn(EnumSet.of(DataType.TICK));
+        when(services.get("id2").getDataTypes(request)).thenReturn(EnumSet.of(DataType.TRADE));
+
+        CompletableFuture<Void> fetched = new CompletableFuture<>();
+        when(module.getMock(Prefetcher.class).fetch(context, request, EnumSet.of(DataType.TICK, DataType.TRADE)))
+                .thenReturn(fetched);
+
+        AtomicBoolean early = new AtomicBoolean();
+        services.values().forEach(e -> when(e.estimate(context, request)).thenAnswer(i -> {
+            early.compareAndSet(false, !fetched.isDone());
+            return Estimation.builder().price(ONE).confidence(ONE).build();
+        }));
+
+        new Thread(() -> {
+            Uninterruptibles.sleepUninterruptibly(100L, MILLISECONDS);
+            fetched.complete(null);
+        }).start();
+
+        // Estimators run after the shared inputs are loaded.
+        Estimation result = target.estimate(context, request);
+        assertEquals(result.getPrice(), new BigDecimal("1.0000000000"));
+        assertFalse(early.get());
+        verify(services.get("id1")).estimate(context, request);
+        verify(services.get("id2")).estimate(context, request);
+
     }
 
     @Test
@@ -135,4 +207,178 @@ public class EstimatorImplTest {
 
     }
 
+    @Test
+    public void testGetDeadline() throws Exception {
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        Instant now = Instant.ofEpochMilli(1000);
+        Request r = Request.build(request).currentTime(now).targetTime(now.plusMillis(3000)).build();
+
+        // No clock
+        assertNull(target.getDeadline(r));
+
+        when(manager.getNow()).thenReturn(now);
+        assertEquals(target.getDeadline(r), now.plusMillis(1500));
+        assertNull(target.getDeadline(Request.build(r).targetTime(null).build()));
+        assertNull(target.getDeadline(Request.build(r).currentTime(null).build()));
+
+        Map<String, Object> map = new HashMap<>();
+        target.setConfiguration(new MapConfiguration(map));
+        map.put(EstimatorImpl.class.getName() + ".deadline", "0.8");
+        assertEquals(target.getDeadline(r), now.plusMillis(2400));
+        map.put(EstimatorImpl.class.getName() + ".deadline", "2");
+        assertEquals(target.getDeadline(r), now.plusMillis(3000));
+        map.put(EstimatorImpl.class.getName() + ".deadline", "-1");
+        assertEquals(target.getDeadline(r), now);
+
+    }
+
+    @Test(timeOut = 10000L)
+    public void testEstimate_Deadline() throws Exception {
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        try {
+
+            when(module.getMock(ExecutorFactory.class).get(any(Class.class), anyInt())).thenReturn(executor);
+            target = new EstimatorImpl(module.createInjector());
+
+            PropertyManager manager = module.getMock(PropertyManager.class);
+            when(manager.getNow()).thenAnswer(i -> Instant.now());
+            when(manager.getEstimationThreshold(request.getSite(), request.getInstrument())).thenReturn(ZERO);
+            when(manager.getEstimators(request.getSite(), request.getInstrument())).thenReturn(singleton("*"));
+
+            Instant now = Instant.now();
+            Request r = Request.build(request).currentTime(now).targetTime(now.plusMillis(400)).build();
+
+            services.values().forEach(e -> when(e.estimate(context, r)).thenReturn(
+                    Estimation.builder().price(ONE).confidence(ONE).build()
+            ));
+
+            AtomicBoolean interrupted = new AtomicBoolean();
+            CountDownLatch finished = new CountDownLatch(1);
+            when(services.get("id3").estimate(context, r)).thenAnswer(i -> {
+                try {
+                    Thread.sleep(2000L);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                } finally {
+                    finished.countDown();
+                }
+                return Estimation.builder().price(TEN).confidence(ONE).build();
+            });
+
+            Estimation result = target.estimate(context, r);
+            assertEquals(result.getPrice(), new BigDecimal("1.0000000000"));
+            assertEquals(result.getConfidence(), new BigDecimal("1.0000000000"));
+            assertTrue(Instant.now().isBefore(now.plusMillis(1500)));
+
+            // Stragglers are left to finish.
+            finished.await();
+            assertFalse(interrupted.get());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test(timeOut = 10000L)
+    public void testEstimate_Concurrency() throws Exception {
+
+        int threads = Math.min(services.size(), Runtime.getRuntime().availableProcessors());
+        verify(module.getMock(ExecutorFactory.class)).get(EstimatorImpl.class, threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            when(module.getMock(ExecutorFactory.class).get(any(Class.class), anyInt())).thenReturn(executor);
+            target = new EstimatorImpl(module.createInjector());
+
+            Map<String, Object> map = new HashMap<>();
+            map.put(EstimatorImpl.class.getName() + ".concurrency", "2");
+            target.setConfiguration(new MapConfiguration(map));
+
+            PropertyManager manager = module.getMock(PropertyManager.class);
+            when(manager.getEstimationThreshold(request.getSite(), request.getInstrument())).thenReturn(ZERO);
+            when(manager.getEstimators(request.getSite(), request.getInstrument())).thenReturn(singleton("*"));
+
+            AtomicInteger current = new AtomicInteger();
+            AtomicInteger maximum = new AtomicInteger();
+
+            services.values().forEach(e -> when(e.estimate(context, request)).thenAnswer(i -> {
+                maximum.accumulateAndGet(current.incrementAndGet(), Math::max);
+                Thread.sleep(50L);
+                current.decrementAndGet();
+                return Estimation.builder().price(ONE).confidence(ONE).build();
+            }));
+
+            Estimation result = target.estimate(context, request);
+            assertEquals(result.getPrice(), new BigDecimal("1.0000000000"));
+            assertEquals(maximum.get(), 2);
+            services.values().forEach(e -> verify(e).estimate(context, request));
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test(timeOut = 10000L)
+    public void testEstimate_ConcurrencyDeadline() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            when(module.getMock(ExecutorFactory.class).get(any(Class.class), anyInt())).thenReturn(executor);
+            target = new EstimatorImpl(module.createInjector());
+
+            Map<String, Object> map = new HashMap<>();
+            map.put(EstimatorImpl.class.getName() + ".concurrency", "1");
+            target.setConfiguration(new MapConfiguration(map));
+
+            PropertyManager manager = module.getMock(PropertyManager.class);
+            when(manager.getNow()).thenAnswer(i -> Instant.now());
+            when(manager.getEstimationThreshold(request.getSite(), request.getInstrument())).thenReturn(ZERO);
+            when(manager.getEstimators(request.getSite(), request.getInstrument())).thenReturn(singleton("*"));
+
+            Instant now = Instant.now();
+            Request r1 = Request.build(request).currentTime(now).targetTime(now.plusMillis(500)).build();
+            Request r2 = Request.build(request).currentTime(now.plusMillis(1)).targetTime(now.plusMillis(5000)).build();
+
+            AtomicInteger current = new AtomicInteger();
+            AtomicInteger maximum = new AtomicInteger();
+
+            services.values().forEach(e -> {
+
+                // Ignores the interrupt of the cancel, and keeps running past the deadline.
+                when(e.estimate(context, r1)).thenAnswer(i -> {
+                    maximum.accumulateAndGet(current.incrementAndGet(), Math::max);
+                    Uninterruptibles.sleepUninterruptibly(1000L, MILLISECONDS);
+                    current.decrementAndGet();
+                    return Estimation.builder().price(TEN).confidence(ONE).build();
+                });
+
+                when(e.estimate(context, r2)).thenAnswer(i -> {
+                    maximum.accumulateAndGet(current.incrementAndGet(), Math::max);
+                    current.decrementAndGet();
+                    return Estimation.builder().price(ONE).confidence(ONE).build();
+                });
+
+            });
+
+            target.estimate(context, r1);
+
+            Estimation result = target.estimate(context, r2);
+            assertEquals(result.getPrice(), new BigDecimal("1.0000000000"));
+            assertEquals(maximum.get(), 1);
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
 }
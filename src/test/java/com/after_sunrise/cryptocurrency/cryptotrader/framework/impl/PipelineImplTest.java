@@ -6,14 +6,17 @@ import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.*;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Adviser.Advice;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
+import org.mockito.InOrder;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static java.math.BigDecimal.valueOf;
 import static java.util.Collections.emptyMap;
@@ -58,22 +61,41 @@ public class PipelineImplTest {
         Advice advice = Advice.builder().build();
         List<Instruction> instructions = Collections.emptyList();
         Map<Instruction, String> results = emptyMap();
-        Map<Instruction, Boolean> reconcile = emptyMap();
+        CompletableFuture<Map<Instruction, Boolean>> reconcile = new CompletableFuture<>();
 
         doReturn(request).when(target).createRequest(now, future, site, instrument);
         when(module.getMock(Estimator.class).estimate(context, request)).thenReturn(estimation);
         when(module.getMock(Adviser.class).advise(context, request, estimation)).thenReturn(advice);
         when(module.getMock(Instructor.class).instruct(context, request, advice)).thenReturn(instructions);
         when(module.getMock(Agent.class).manage(context, request, instructions)).thenReturn(results);
-        when(module.getMock(Agent.class).reconcile(context, request, results)).thenReturn(reconcile);
-
-        target.process(now, future, site, instrument);
-
-        verify(module.getMock(Estimator.class)).estimate(context, request);
-        verify(module.getMock(Adviser.class)).advise(context, request, estimation);
-        verify(module.getMock(Instructor.class)).instruct(context, request, advice);
-        verify(module.getMock(Agent.class)).manage(context, request, instructions);
-        verify(module.getMock(Agent.class)).reconcile(context, request, results);
+        when(module.getMock(Agent.class).reconcileAsync(context, request, results)).thenReturn(reconcile);
+        List<CompletableFuture<Void>> fetches = Arrays.asList(
+                new CompletableFuture<>(), new CompletableFuture<>(), new CompletableFuture<>(), new CompletableFuture<>()
+        );
+        when(module.getMock(Prefetcher.class).prefetch(any(), any(), any())).thenReturn(fetches);
+
+        // Returns without waiting for the reconcile.
+        CompletableFuture<?> result = target.process(now, future, site, instrument);
+        assertFalse(result.isDone());
+        reconcile.complete(emptyMap());
+        assertTrue(result.isDone());
+
+        verify(module.getMock(Prefetcher.class)).prefetch(context, request, Arrays.asList(
+                module.getMock(Estimator.class), module.getMock(Adviser.class),
+                module.getMock(Instructor.class), module.getMock(Agent.class)
+        ));
+        InOrder inOrder = inOrder(module.getMock(Prefetcher.class), module.getMock(Estimator.class),
+                module.getMock(Adviser.class), module.getMock(Instructor.class), module.getMock(Agent.class));
+        inOrder.verify(module.getMock(Prefetcher.class)).await(request, fetches.get(0));
+        inOrder.verify(module.getMock(Estimator.class)).estimate(context, request);
+        inOrder.verify(module.getMock(Prefetcher.class)).await(request, fetches.get(1));
+        inOrder.verify(module.getMock(Adviser.class)).advise(context, request, estimation);
+        inOrder.verify(module.getMock(Prefetcher.class)).await(request, fetches.get(2));
+        inOrder.verify(module.getMock(Instructor.class)).instruct(context, request, advice);
+        inOrder.verify(module.getMock(Prefetcher.class)).await(request, fetches.get(3));
+        inOrder.verify(module.getMock(Agent.class)).manage(context, request, instructions);
+        verify(module.getMock(Agent.class)).reconcileAsync(context, request, results);
+        verify(module.getMock(Agent.class), never()).reconcile(any(), any(), any());
 
     }
 
@@ -82,7 +104,7 @@ public class PipelineImplTest {
 
         doReturn(null).when(target).createRequest(any(), any(), any(), any());
 
-        target.process(null, null, null, null);
+        assertTrue(target.process(null, null, null, null).isDone());
 
         verifyZeroInteractions(
                 module.getMock(Estimator.class),
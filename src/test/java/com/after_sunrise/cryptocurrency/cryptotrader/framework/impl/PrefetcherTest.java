@@ -0,0 +1,243 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
+
+import com.after_sunrise.cryptocurrency.cryptotrader.TestModule;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.DataType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Service;
+import org.mockito.InOrder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class PrefetcherTest {
+
+    private Prefetcher target;
+
+    private TestModule module;
+
+    private Context context;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        module = new TestModule();
+
+        context = module.getMock(Context.class);
+
+        target = new Prefetcher(module.createInjector());
+
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        assertEquals(target.get(), "Prefetcher");
+    }
+
+    private Service stage(DataType... types) {
+
+        Service service = mock(Service.class);
+
+        when(service.getDataTypes(any())).thenReturn(types.length == 0 ? null : EnumSet.copyOf(Arrays.asList(types)));
+
+        return service;
+
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+
+        Instant now = Instant.now();
+        when(module.getMock(PropertyManager.class).getNow()).thenReturn(now);
+
+        Request request = Request.builder().site("s").instrument("i").currentTime(now).targetTime(now.plusSeconds(5))
+                .estimatorComposites(Arrays.asList(new Composite("*t", "j"), new Composite("@s", "i"))).build();
+        Key key = Key.from(request);
+        Key composite = Key.build(key).site("t").instrument("j").build();
+
+        Service estimator = stage(DataType.TRADE);
+        Service adviser = stage(DataType.TRADE, DataType.TICK, DataType.STATE);
+        Service instructor = stage();
+        Service agent = stage(DataType.STATE);
+
+        List<CompletableFuture<Void>> futures = target.prefetch(
+                context, request, Arrays.asList(estimator, adviser, instructor, agent));
+        assertEquals(futures.size(), 4);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[4])).get(3, SECONDS);
+
+        // Estimation inputs first, for the composite products too.
+        InOrder inOrder = inOrder(context);
+        inOrder.verify(context).listTrades(key, null);
+        inOrder.verify(context).getBestAskPrice(key);
+        inOrder.verify(context).getLastPrice(key);
+        verify(context).listTrades(composite, null);
+        verify(context).getState(key);
+        verify(context, never()).getState(composite);
+        verify(context, never()).getBestAskPrice(composite);
+        verify(context, never()).getAskPrices(any());
+        verify(context, never()).listActiveOrders(any());
+        verify(context, never()).getInstrumentPosition(any());
+
+        // Past cutoff
+        reset(context);
+        when(module.getMock(PropertyManager.class).getNow()).thenReturn(now.plusSeconds(5));
+        futures = target.prefetch(context, request, Arrays.asList(estimator, adviser, instructor, agent));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[4])).get(3, SECONDS);
+        verifyZeroInteractions(context);
+
+        // No target
+        assertEquals(target.prefetch(context, Request.build(request).targetTime(null).build(),
+                Arrays.asList(estimator, adviser)).size(), 0);
+        assertEquals(target.prefetch(null, request, Arrays.asList(estimator, adviser)).size(), 0);
+        assertEquals(target.prefetch(context, request, null).size(), 0);
+        verifyZeroInteractions(context);
+
+    }
+
+    @Test
+    public void testPrefetch_Failure() throws Exception {
+
+        Instant now = Instant.now();
+        Request request = Request.builder().site("s").instrument("i").currentTime(now).targetTime(now).build();
+        Key key = Key.from(request);
+        when(context.getBestAskPrice(key)).thenThrow(new RuntimeException("test"));
+
+        target.prefetch(context, request, Arrays.asList(stage(DataType.TICK)));
+
+        verify(context).getBestAskPrice(key);
+        verify(context).getLastPrice(key);
+
+    }
+
+    @Test
+    public void testFetch() throws Exception {
+
+        Instant now = Instant.now();
+        when(module.getMock(PropertyManager.class).getNow()).thenReturn(now);
+
+        Request request = Request.builder().site("s").instrument("i").currentTime(now).targetTime(now.plusSeconds(5))
+                .estimatorComposites(Arrays.asList(new Composite("*t", "j"))).build();
+        Key key = Key.from(request);
+        Key composite = Key.build(key).site("t").instrument("j").build();
+
+        CompletableFuture<Void> future = target.fetch(context, request, EnumSet.of(DataType.TRADE));
+        future.get(3, SECONDS);
+        verify(context).listTrades(key, null);
+        verify(context).listTrades(composite, null);
+        verify(context, never()).getBestAskPrice(any());
+
+        // Completed when skipped or not applicable.
+        reset(context);
+        when(module.getMock(PropertyManager.class).getNow()).thenReturn(now.plusSeconds(5));
+        target.fetch(context, request, EnumSet.of(DataType.TRADE)).get(3, SECONDS);
+        target.fetch(context, request, null).get(3, SECONDS);
+        target.fetch(null, request, EnumSet.of(DataType.TRADE)).get(3, SECONDS);
+        verifyZeroInteractions(context);
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testAwait() throws Exception {
+
+        Instant now = Instant.now();
+        when(module.getMock(PropertyManager.class).getNow()).thenAnswer(i -> Instant.now());
+        Request request = Request.builder().currentTime(now).targetTime(now.plusMillis(200)).build();
+
+        // Done
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        target.await(request, future);
+
+        // Failed
+        future = new CompletableFuture<>();
+        future.completeExceptionally(new RuntimeException("test"));
+        target.await(request, future);
+
+        // Gives up at the deadline.
+        future = new CompletableFuture<>();
+        target.await(request, future);
+        assertFalse(future.isDone());
+        assertFalse(Instant.now().isBefore(now.plusMillis(50)));
+
+        // No deadline
+        target.await(Request.builder().build(), future);
+        target.await(request, null);
+
+    }
+
+    @Test
+    public void testGetDeadline() throws Exception {
+
+        Instant now = Instant.now();
+        when(module.getMock(PropertyManager.class).getNow()).thenReturn(now);
+        Request request = Request.builder().currentTime(now).targetTime(now.plusSeconds(10)).build();
+
+        assertEquals(target.getDeadline(request), now.plusSeconds(5));
+
+        assertNull(target.getDeadline(Request.build(request).currentTime(null).build()));
+        assertNull(target.getDeadline(Request.build(request).targetTime(null).build()));
+
+        when(module.getMock(PropertyManager.class).getNow()).thenReturn(null);
+        assertNull(target.getDeadline(request));
+
+    }
+
+    @Test
+    public void testGetEstimationKeys() throws Exception {
+
+        Request request = Request.builder().site("s").instrument("i").estimatorComposites(Arrays.asList(
+                new Composite("*t", "j"), new Composite("/t", "j"), new Composite("t", "k"),
+                new Composite(null, "k"), new Composite("*u", null), new Composite("@u", "k")
+        )).build();
+
+        List<Key> keys = target.getEstimationKeys(request);
+        assertEquals(keys.size(), 3);
+        assertEquals(keys.get(0), Key.from(request));
+        assertEquals(keys.get(1), Key.builder().site("t").instrument("j").build());
+        assertEquals(keys.get(2), Key.builder().site("u").instrument("k").build());
+
+    }
+
+    @Test
+    public void testCreateFetches() throws Exception {
+
+        Key key = Key.builder().site("s").instrument("i").build();
+
+        int total = 0;
+
+        for (DataType type : DataType.values()) {
+
+            List<Runnable> fetches = target.createFetches(context, key, type);
+
+            fetches.forEach(Runnable::run);
+
+            total += fetches.size();
+
+        }
+
+        assertEquals(total, 19);
+        verify(context).getState(key);
+        verify(context).getAskPrices(key);
+        verify(context).getExpiry(key);
+        verify(context).getFundingPosition(key);
+        verify(context).listExecutions(key);
+
+    }
+
+}
@@ -2,16 +2,28 @@ package com.after_sunrise.cryptocurrency.cryptotrader.framework.impl;
 
 import com.after_sunrise.cryptocurrency.cryptotrader.TestModule;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.Composite;
+import com.after_sunrise.cryptocurrency.cryptotrader.core.ExecutorFactory;
 import com.after_sunrise.cryptocurrency.cryptotrader.core.PropertyManager;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Pipeline;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.singletonList;
@@ -200,7 +212,7 @@ public class TraderImplTest {
         when(module.getMock(PropertyManager.class).getTradingFrequency(site, instrument)).thenReturn(3);
         when(module.getMock(PropertyManager.class).getTradingSeed(site, instrument)).thenReturn(0);
 
-        doNothing().when(module.getMock(Pipeline.class)).process(any(), any(), any(), any());
+        doReturn(null).when(module.getMock(Pipeline.class)).process(any(), any(), any(), any());
 
         // 0
         target.processPipeline(now);
@@ -228,4 +240,213 @@ public class TraderImplTest {
 
     }
 
+    @Test(timeOut = 5000)
+    public void testDispatch() throws Exception {
+
+        Instant now = Instant.now();
+        Composite slow = new Composite("s", "i");
+        Composite fast = new Composite("t", "i");
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        when(manager.getTradingTargets()).thenReturn(Arrays.asList(slow, fast));
+        when(manager.getTradingInterval()).thenReturn(Duration.ofMillis(100));
+        when(manager.getTradingExtension()).thenReturn(1);
+        when(manager.getNow()).thenReturn(now.plusMillis(300));
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ExecutorFactory factory = module.getMock(ExecutorFactory.class);
+        when(factory.get(any(Class.class), anyInt())).thenReturn(executor);
+        target = new TraderImpl(module.createInjector());
+        verify(factory).get(TraderImpl.class, 2);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        BlockingQueue<Instant> targets = new LinkedBlockingQueue<>();
+        doAnswer(i -> {
+            targets.add(i.getArgumentAt(1, Instant.class));
+            latch.await();
+            return null;
+        }).when(pipeline).process(any(), any(), eq("s"), any());
+
+        CountDownLatch count = new CountDownLatch(3);
+        doAnswer(i -> {
+            count.countDown();
+            return null;
+        }).when(pipeline).process(any(), any(), eq("t"), any());
+
+        try {
+
+            assertTrue(target.dispatch(slow, now, 1));
+            assertFalse(target.dispatch(slow, now, 1)); // Overrun
+
+            // Not blocked by the slow target.
+            for (int i = 0; i < 3; i++) {
+                while (!target.dispatch(fast, now, 1)) {
+                    Thread.sleep(1);
+                }
+            }
+
+            count.await();
+            assertEquals(targets.take(), now.plusMillis(100));
+
+            latch.countDown();
+
+            while (!target.dispatch(slow, now, 1)) {
+                Thread.sleep(1);
+            }
+
+            // Extended with its own elapsed time (300 - 100)
+            assertEquals(targets.take(), now.plusMillis(300));
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test(timeOut = 5000)
+    public void testDispatch_Reconcile() throws Exception {
+
+        Instant now = Instant.now();
+        Composite key = new Composite("s", "i");
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        when(manager.getTradingInterval()).thenReturn(Duration.ofMillis(100));
+        when(manager.getNow()).thenReturn(now);
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        when(module.getMock(ExecutorFactory.class).get(any(Class.class), anyInt())).thenReturn(executor);
+        target = new TraderImpl(module.createInjector());
+
+        Semaphore processed = new Semaphore(0);
+        CompletableFuture<Void> reconciled = new CompletableFuture<>();
+        doAnswer(i -> {
+            processed.release();
+            return reconciled;
+        }).when(pipeline).process(any(), any(), any(), any());
+
+        try {
+
+            assertTrue(target.dispatch(key, now, 1));
+            processed.acquire();
+
+            // Busy until the orders are reconciled.
+            assertFalse(target.dispatch(key, now, 1));
+
+            reconciled.complete(null);
+
+            // The overrun slot is processed on completion.
+            when(manager.getTradingTargets()).thenReturn(singletonList(key));
+            when(manager.getTradingFrequency("s", "i")).thenReturn(1);
+            while (processed.availablePermits() == 0) {
+                target.processEvents();
+                Thread.sleep(1);
+            }
+
+            processed.acquire();
+            verify(pipeline, times(2)).process(any(), any(), any(), any());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test(timeOut = 5000)
+    public void testProcessEvents() throws Exception {
+
+        Instant now = Instant.now();
+        String site = "s";
+        String instrument = "i";
+        Key key = Key.builder().site(site).instrument(instrument).build();
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        when(manager.getNow()).thenReturn(now);
+        when(manager.getTradingTargets()).thenReturn(singletonList(new Composite(site, instrument)));
+        when(manager.getTradingInterval()).thenReturn(Duration.ofMillis(123));
+        when(manager.getTradingFrequency(site, instrument)).thenReturn(2);
+        verify(module.getMock(Context.class)).addListener(any());
+
+        // Disabled
+        target.mark(key);
+        assertNull(target.processEvents());
+        verifyNoMoreInteractions(pipeline);
+
+        // Coalesced
+        when(manager.getTradingGap(any(), any())).thenReturn(Duration.ofSeconds(1));
+        target.mark(key);
+        target.mark(key);
+        target.mark(Key.builder().site("t").instrument(instrument).build());
+        target.mark(null);
+        assertNull(target.processEvents());
+        verify(pipeline).process(now, now.plusMillis(123 * 2), site, instrument);
+
+        // Within gap
+        target.mark(key);
+        assertEquals(target.processEvents(), Duration.ofSeconds(1));
+        when(manager.getNow()).thenReturn(now.plusMillis(999));
+        assertEquals(target.processEvents(), Duration.ofMillis(1));
+        verifyNoMoreInteractions(pipeline);
+
+        // Elapsed
+        when(manager.getNow()).thenReturn(now.plusSeconds(1));
+        assertNull(target.processEvents());
+        verify(pipeline).process(now.plusSeconds(1), now.plusSeconds(1).plusMillis(123 * 2), site, instrument);
+
+        // Heartbeat
+        target.mark(key);
+        target.processPipeline(now.plusSeconds(5));
+        assertNull(target.processEvents());
+        verify(pipeline, times(3)).process(any(), any(), any(), any());
+
+    }
+
+    @Test(timeOut = 5000)
+    public void testAwaitEvents() throws Exception {
+
+        String site = "s";
+        String instrument = "i";
+
+        PropertyManager manager = module.getMock(PropertyManager.class);
+        when(manager.getNow()).thenReturn(Instant.now());
+        when(manager.getTradingTargets()).thenReturn(singletonList(new Composite(site, instrument)));
+        when(manager.getTradingInterval()).thenReturn(Duration.ofMillis(123));
+        when(manager.getTradingFrequency(site, instrument)).thenReturn(1);
+        when(manager.getTradingGap(site, instrument)).thenReturn(Duration.ofMillis(1));
+
+        // Timeout
+        CountDownLatch latch = new CountDownLatch(1);
+        target.awaitEvents(latch, Duration.ofMillis(10));
+        target.awaitEvents(latch, Duration.ofMillis(-1));
+        verifyNoMoreInteractions(pipeline);
+
+        CountDownLatch processed = new CountDownLatch(1);
+        doAnswer(i -> {
+            processed.countDown();
+            return null;
+        }).when(pipeline).process(any(), any(), eq(site), eq(instrument));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            Future<?> future = executor.submit(() -> {
+                target.awaitEvents(latch, Duration.ofMinutes(1));
+                return null;
+            });
+
+            // Event
+            target.mark(Key.builder().site(site).instrument(instrument).build());
+            processed.await();
+
+            // Trigger
+            latch.countDown();
+            target.trigger();
+            future.get();
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
 }
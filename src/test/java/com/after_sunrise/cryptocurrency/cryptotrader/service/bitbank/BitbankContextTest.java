@@ -1,5 +1,8 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitbank;
 
+import cc.bitbank.Bitbankcc;
+import cc.bitbank.entity.Orders;
+import cc.bitbank.entity.enums.CurrencyPair;
 import cc.bitbank.entity.enums.OrderSide;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
@@ -162,4 +165,38 @@ public class BitbankContextTest {
 
     }
 
+    @Test
+    public void testCancelOrders() throws Exception {
+
+        Key key = Key.builder().instrument(BTC_JPY.name()).build();
+
+        Bitbankcc api = mock(Bitbankcc.class);
+        doReturn(api).when(target).getLocalApi();
+
+        cc.bitbank.entity.Order o = new cc.bitbank.entity.Order();
+        o.orderId = 1;
+        Orders orders = new Orders();
+        orders.orders = new cc.bitbank.entity.Order[]{o, null};
+        when(api.cancelOrders(eq(CurrencyPair.BTC_JPY), any(long[].class))).thenReturn(orders);
+
+        CancelInstruction i1 = CancelInstruction.builder().id("1").build();
+        CancelInstruction i2 = CancelInstruction.builder().id("2").build();
+        CancelInstruction i3 = CancelInstruction.builder().id("a").build();
+        CancelInstruction i4 = CancelInstruction.builder().id(null).build();
+
+        // One request for the numeric ids.
+        Map<CancelInstruction, String> results = target.cancelOrders(key, Sets.newHashSet(i1, i2, i3, i4, null));
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(i1), "1");
+        assertEquals(results.get(i2), null);
+        assertEquals(results.get(i3), null);
+        assertEquals(results.get(i4), null);
+        verify(api).cancelOrders(eq(CurrencyPair.BTC_JPY), any(long[].class));
+
+        // Unknown product
+        assertEquals(target.cancelOrders(Key.builder().instrument("FOO").build(), Sets.newHashSet(i1)).size(), 0);
+        verifyNoMoreInteractions(api);
+
+    }
+
 }
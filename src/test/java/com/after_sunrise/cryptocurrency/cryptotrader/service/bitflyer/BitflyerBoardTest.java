@@ -0,0 +1,88 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.bitflyer;
+
+import com.after_sunrise.cryptocurrency.bitflyer4j.entity.Board;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class BitflyerBoardTest {
+
+    private BitflyerBoard target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        Board board = mock(Board.class);
+        doReturn(asList(quote("102", "2"), quote("101", "1"), quote("103", "0"), null)).when(board).getAsk();
+        doReturn(asList(quote("98", "4"), quote("99", "3"), quote(null, "5"), quote("97", null))).when(board).getBid();
+
+        target = new BitflyerBoard(Instant.ofEpochSecond(1234567890), board);
+
+    }
+
+    private Board.Quote quote(String price, String size) {
+
+        Board.Quote quote = mock(Board.Quote.class);
+        when(quote.getPrice()).thenReturn(price == null ? null : new BigDecimal(price));
+        when(quote.getSize()).thenReturn(size == null ? null : new BigDecimal(size));
+        return quote;
+
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+
+        assertEquals(target.getTimestamp(), Instant.ofEpochSecond(1234567890));
+        assertEquals(target.getAsks().size(), 2);
+        assertEquals(target.getAsks().firstKey(), new BigDecimal("101"));
+        assertEquals(target.getAsks().lastKey(), new BigDecimal("102"));
+        assertEquals(target.getBids().size(), 2);
+        assertEquals(target.getBids().firstKey(), new BigDecimal("99"));
+        assertEquals(target.getBids().lastKey(), new BigDecimal("98"));
+
+        BitflyerBoard empty = new BitflyerBoard(null, null);
+        assertNull(empty.getTimestamp());
+        assertTrue(empty.getAsks().isEmpty());
+        assertTrue(empty.getBids().isEmpty());
+
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+
+        Book copy = target.toBook();
+
+        Board delta = mock(Board.class);
+        doReturn(asList(quote("101", "0"), quote("100", "7"))).when(delta).getAsk();
+        doReturn(singletonList(quote("99", "6"))).when(delta).getBid();
+
+        assertTrue(target.update(Instant.ofEpochSecond(1234567891), delta));
+        assertTrue(target.update(Instant.ofEpochSecond(1234567892), null));
+        assertEquals(target.getTimestamp(), Instant.ofEpochSecond(1234567892));
+        assertEquals(target.getAsks().firstKey(), new BigDecimal("100"));
+        assertEquals(target.getAsks().firstEntry().getValue(), new BigDecimal("7"));
+        assertEquals(target.getBids().firstEntry().getValue(), new BigDecimal("6"));
+
+        Board crossed = mock(Board.class);
+        doReturn(singletonList(quote("100", "1"))).when(crossed).getBid();
+        assertFalse(target.update(Instant.ofEpochSecond(1234567893), crossed));
+
+        // Copy is independent.
+        assertEquals(copy.getAsks().getBestPrice(), new BigDecimal("101"));
+        assertEquals(copy.getBids().getBestSize(), 3.0);
+
+    }
+
+}
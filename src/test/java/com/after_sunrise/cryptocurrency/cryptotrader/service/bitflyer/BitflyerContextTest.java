@@ -188,29 +188,112 @@ public class BitflyerContextTest {
 
     }
 
+    @Test
+    public void testNotifyRealtime() throws Exception {
+
+        List<Key> keys = new ArrayList<>();
+        target.addListener(keys::add);
+
+        Key alias = Key.builder().instrument("BTCJPY_MAT1WK").build();
+        doReturn("BTCJPY14APR2017").when(target).convertProductAlias(alias);
+        assertEquals(target.convertRealtimeAlias(alias), "BTCJPY14APR2017");
+
+        // Aliased
+        target.notifyRealtime("BTCJPY14APR2017");
+        assertEquals(keys, singletonList(Key.builder().site(ID).instrument("BTCJPY_MAT1WK").build()));
+
+        // Unknown
+        keys.clear();
+        target.onTicks("FX_BTC_JPY", singletonList(mock(Tick.class)));
+        target.onTicks("FX_BTC_JPY", null);
+        assertEquals(keys, singletonList(Key.builder().site(ID).instrument("FX_BTC_JPY").build()));
+
+    }
+
+    @Test
+    public void testOnBoards() throws Exception {
+
+        Board snapshot = mock(Board.class);
+        doReturn(asList(quote("101", "1"), quote("102", "2"))).when(snapshot).getAsk();
+        doReturn(asList(quote("99", "3"), quote("98", "4"))).when(snapshot).getBid();
+
+        Board delta = mock(Board.class);
+        doReturn(asList(quote("101", "0"), quote("103", "5"))).when(delta).getAsk();
+        doReturn(singletonList(quote("100", "6"))).when(delta).getBid();
+
+        ZonedDateTime now = ZonedDateTime.now();
+        Key key = Key.from(Request.builder().instrument("i").currentTime(now.toInstant()).build());
+        doReturn("a").when(target).convertProductAlias(key);
+        doReturn(now.toInstant()).when(target).getNow();
+
+        // No snapshot
+        target.onBoards("a", delta);
+        target.onBoardsSnapshot("a", snapshot);
+        target.onBoards("a", delta);
+
+        Book board = target.getBoard(key);
+        assertEquals(board.getAsks().asMap().keySet(), Sets.newHashSet(new BigDecimal("102"), new BigDecimal("103")));
+        assertEquals(board.getAsks().getBestPrice(), new BigDecimal("102"));
+        assertEquals(board.getBids().getBestPrice(), new BigDecimal("100"));
+        assertEquals(board.getBids().size(), 3);
+        verify(marketService, never()).getBoard(any());
+
+        // Crossed
+        Board crossed = mock(Board.class);
+        doReturn(singletonList(quote("105", "1"))).when(crossed).getBid();
+        target.onBoards("a", crossed);
+        target.onBoards("a", delta);
+        target.clear();
+        when(marketService.getBoard(any())).thenReturn(completedFuture(snapshot));
+        assertEquals(target.getBoard(key).getAsks().getBestPrice(), new BigDecimal("101"));
+        verify(marketService, times(1)).getBoard(any());
+
+        // Resynced
+        target.onBoards("a", delta);
+        target.clear();
+        assertEquals(target.getBoard(key).getAsks().getBestPrice(), new BigDecimal("102"));
+        verify(marketService, times(1)).getBoard(any());
+
+        // Snapshot copied
+        assertEquals(board.getAsks().getBestPrice(), new BigDecimal("102"));
+        assertEquals(board.getBids().getBestPrice(), new BigDecimal("100"));
+
+    }
+
+    private Board.Quote quote(String price, String size) {
+
+        Board.Quote quote = mock(Board.Quote.class);
+        when(quote.getPrice()).thenReturn(new BigDecimal(price));
+        when(quote.getSize()).thenReturn(new BigDecimal(size));
+        return quote;
+
+    }
+
     @Test
     public void testGetBoard() throws Exception {
 
         Board board = mock(Board.class);
+        doReturn(singletonList(quote("2", "1"))).when(board).getAsk();
         ZonedDateTime now = ZonedDateTime.now();
         Key key = Key.from(Request.builder().instrument("i").currentTime(now.toInstant()).build());
         doReturn("a").when(target).convertProductAlias(key);
         when(marketService.getBoard(any())).thenReturn(completedFuture(board)).thenReturn(completedFuture(null));
 
         // Initial
-        assertSame(target.getBoard(key).getDelegate(), board);
+        Book result = target.getBoard(key);
+        assertEquals(result.getAsks().getBestPrice(), new BigDecimal("2"));
         verify(marketService, times(1)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
         // Cached
-        assertSame(target.getBoard(key).getDelegate(), board);
+        assertSame(target.getBoard(key), result);
         verify(marketService, times(1)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
-        // Not found
+        // Resynced by request/response
         target.clear();
-        assertSame(target.getBoard(key), null);
-        verify(marketService, times(2)).getBoard(any());
+        assertEquals(target.getBoard(key).getAsks().getBestPrice(), new BigDecimal("2"));
+        verify(marketService, times(1)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
         // Realtime found, but no time.
@@ -218,7 +301,7 @@ public class BitflyerContextTest {
         target.clear();
         target.onBoardsSnapshot("a", board);
         assertSame(target.getBoard(key), null);
-        verify(marketService, times(3)).getBoard(any());
+        verify(marketService, times(2)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
         // Realtime found, but old.
@@ -226,15 +309,15 @@ public class BitflyerContextTest {
         target.clear();
         target.onBoardsSnapshot("a", board);
         assertSame(target.getBoard(key), null);
-        verify(marketService, times(4)).getBoard(any());
+        verify(marketService, times(3)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
         // Realtime found.
         doReturn(now.plusMinutes(10).toInstant()).when(target).getNow();
         target.clear();
         target.onBoardsSnapshot("a", board);
-        assertSame(target.getBoard(key).getDelegate(), board);
-        verify(marketService, times(4)).getBoard(any());
+        assertEquals(target.getBoard(key).getAsks().getBestPrice(), new BigDecimal("2"));
+        verify(marketService, times(3)).getBoard(any());
         verify(realtimeService, times(1)).subscribeBoard(singletonList("a"));
 
     }
@@ -293,10 +376,17 @@ public class BitflyerContextTest {
         Key key = Key.from(Request.builder().build());
         Tick tick = mock(Tick.class);
         when(tick.getBestAskPrice()).thenReturn(ONE);
+        Board board = mock(Board.class);
+        doReturn(singletonList(quote("10", "10"))).when(board).getAsk();
+
+        doReturn(new BitflyerBoard(null, board).toBook()).when(target).getBoard(key);
+        assertEquals(target.getBestAskPrice(key), TEN);
 
+        doReturn(new BitflyerBoard(null, null).toBook()).when(target).getBoard(key);
         doReturn(tick).when(target).getTick(key);
         assertEquals(target.getBestAskPrice(key), ONE);
 
+        doReturn(null).when(target).getBoard(key);
         doReturn(null).when(target).getTick(key);
         assertEquals(target.getBestAskPrice(key), null);
 
@@ -308,10 +398,17 @@ public class BitflyerContextTest {
         Key key = Key.from(Request.builder().build());
         Tick tick = mock(Tick.class);
         when(tick.getBestBidPrice()).thenReturn(ONE);
+        Board board = mock(Board.class);
+        doReturn(singletonList(quote("10", "10"))).when(board).getBid();
 
+        doReturn(new BitflyerBoard(null, board).toBook()).when(target).getBoard(key);
+        assertEquals(target.getBestBidPrice(key), TEN);
+
+        doReturn(new BitflyerBoard(null, null).toBook()).when(target).getBoard(key);
         doReturn(tick).when(target).getTick(key);
         assertEquals(target.getBestBidPrice(key), ONE);
 
+        doReturn(null).when(target).getBoard(key);
         doReturn(null).when(target).getTick(key);
         assertEquals(target.getBestBidPrice(key), null);
 
@@ -323,10 +420,17 @@ public class BitflyerContextTest {
         Key key = Key.from(Request.builder().build());
         Tick tick = mock(Tick.class);
         when(tick.getBestAskSize()).thenReturn(ONE);
+        Board board = mock(Board.class);
+        doReturn(singletonList(quote("10", "10"))).when(board).getAsk();
+
+        doReturn(new BitflyerBoard(null, board).toBook()).when(target).getBoard(key);
+        assertEquals(target.getBestAskSize(key), new BigDecimal("10.0"));
 
+        doReturn(new BitflyerBoard(null, null).toBook()).when(target).getBoard(key);
         doReturn(tick).when(target).getTick(key);
         assertEquals(target.getBestAskSize(key), ONE);
 
+        doReturn(null).when(target).getBoard(key);
         doReturn(null).when(target).getTick(key);
         assertEquals(target.getBestAskSize(key), null);
 
@@ -338,10 +442,17 @@ public class BitflyerContextTest {
         Key key = Key.from(Request.builder().build());
         Tick tick = mock(Tick.class);
         when(tick.getBestBidSize()).thenReturn(ONE);
+        Board board = mock(Board.class);
+        doReturn(singletonList(quote("10", "10"))).when(board).getBid();
+
+        doReturn(new BitflyerBoard(null, board).toBook()).when(target).getBoard(key);
+        assertEquals(target.getBestBidSize(key), new BigDecimal("10.0"));
 
+        doReturn(new BitflyerBoard(null, null).toBook()).when(target).getBoard(key);
         doReturn(tick).when(target).getTick(key);
         assertEquals(target.getBestBidSize(key), ONE);
 
+        doReturn(null).when(target).getBoard(key);
         doReturn(null).when(target).getTick(key);
         assertEquals(target.getBestBidSize(key), null);
 
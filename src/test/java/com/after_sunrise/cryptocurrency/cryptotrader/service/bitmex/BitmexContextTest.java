@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
@@ -18,11 +19,14 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -62,6 +66,8 @@ public class BitmexContextTest {
 
         doReturn(null).when(target).request(any(), any(), any(), any());
 
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
+
     }
 
     @AfterMethod
@@ -328,8 +334,10 @@ public class BitmexContextTest {
     @Test
     public void testQueryBooks() throws Exception {
 
-        doReturn(Resources.toString(getResource("json/bitmex_book.json"), UTF_8)).when(target)
-                .request(GET, "https://www.bitmex.com/api/v1/orderBook/L2?symbol=XBTUSD&depth=10", null, null);
+        String data = Resources.toString(getResource("json/bitmex_book.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(data))).when(target)
+                .request(eq(GET), eq("https://www.bitmex.com/api/v1/orderBook/L2?symbol=XBTUSD&depth=10"),
+                        isNull(Map.class), isNull(String.class), any());
 
         Key key = Key.builder().instrument("XBT???").build();
         doReturn("XBTUSD").when(target).convertAlias(key);
@@ -351,12 +359,12 @@ public class BitmexContextTest {
 
         // Empty
         target.clear();
-        doReturn(null).when(target).request(any(), any(), any(), any());
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
         assertEquals(target.queryBooks(key).size(), 0);
 
         // Exception
         target.clear();
-        doThrow(new IOException("test")).when(target).request(any(), any(), any(), any());
+        doThrow(new IOException("test")).when(target).request(any(), any(), any(), any(), any());
         assertEquals(target.queryBooks(key).size(), 0);
 
     }
@@ -417,8 +425,11 @@ public class BitmexContextTest {
 
         // Plain
         doReturn(Optional.empty()).when(target).queryTick(key);
-        assertEquals(target.getBestAskSize(key), valueOf(17));
-        assertEquals(target.getBestBidSize(key), valueOf(27));
+        assertEquals(target.getBestAskSize(key), new BigDecimal("17.0"));
+        assertEquals(target.getBestBidSize(key), new BigDecimal("27.0"));
+        assertEquals(target.getAskPrices(key).keySet().toString(), "[7, 9]");
+        assertEquals(target.getBidPrices(key).keySet().toString(), "[3, 1]");
+        assertSame(target.getBook(key), target.getBook(key));
 
         // Unlisted
         BitmexTick tick = mock(BitmexTick.class);
@@ -430,6 +441,7 @@ public class BitmexContextTest {
         // No data
         doReturn(Optional.empty()).when(target).queryTick(key);
         doReturn(Collections.emptyList()).when(target).queryBooks(key);
+        target.clear();
         assertEquals(target.getBestAskSize(key), null);
         assertEquals(target.getBestBidSize(key), null);
 
@@ -469,14 +481,16 @@ public class BitmexContextTest {
     @Test
     public void testListTrades() throws Exception {
 
-        doReturn(Resources.toString(getResource("json/bitmex_trade.json"), UTF_8))
-                .when(target).request(GET,
-                "https://www.bitmex.com/api/v1/trade?count=500&reverse=true&symbol=XBTZ17",
-                null, null);
-        doReturn(Resources.toString(getResource("json/bitmex_bucket.json"), UTF_8))
-                .when(target).request(GET,
-                "https://www.bitmex.com/api/v1/trade/bucketed?binSize=1m&partial=true&count=500&reverse=true&symbol=XBJZ17",
-                null, null);
+        String trade = Resources.toString(getResource("json/bitmex_trade.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(trade)))
+                .when(target).request(eq(GET),
+                eq("https://www.bitmex.com/api/v1/trade?count=500&reverse=true&symbol=XBTZ17"),
+                isNull(Map.class), isNull(String.class), any());
+        String bucket = Resources.toString(getResource("json/bitmex_bucket.json"), UTF_8);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(bucket)))
+                .when(target).request(eq(GET),
+                eq("https://www.bitmex.com/api/v1/trade/bucketed?binSize=1m&partial=true&count=500&reverse=true&symbol=XBJZ17"),
+                isNull(Map.class), isNull(String.class), any());
 
         Key key = Key.builder().instrument("XBT_QT").timestamp(Instant.parse("2017-11-01T23:15:48.000Z")).build();
         BitmexTick tick = spy(BitmexTick.builder().timestamp(Instant.now()).last(TEN).build());
@@ -699,9 +713,9 @@ public class BitmexContextTest {
                     "6ef0c2129a11f4dcd8d92ddfa35481a923767e98bbcdd075718dde54e600017a");
             assertEquals(headers.size(), 0, headers.toString());
 
-            return body;
+            return CompletableFuture.completedFuture(body);
 
-        }).when(target).request(any(), any(), any(), any());
+        }).when(target).requestAsync(any(), any(), any(), any());
 
         // Proper request
         assertEquals(target.executePrivate(PUT, path, parameters, data), body);
@@ -1102,9 +1116,9 @@ public class BitmexContextTest {
             assertEquals(m.remove("symbol"), "XBTZ17");
             assertEquals(m.size(), 0, map.toString());
 
-            return new Gson().toJson(singleton(singletonMap("clOrdID", "uid1")));
+            return CompletableFuture.completedFuture(new Gson().toJson(singleton(singletonMap("clOrdID", "uid1"))));
 
-        }).when(target).executePrivate(any(), any(), any(), any());
+        }).when(target).executePrivateAsync(any(), any(), any(), any());
 
         CreateInstruction i1 = CreateInstruction.builder().price(ZERO).size(TEN).strategy("LastPrice").build();
         CreateInstruction i2 = CreateInstruction.builder().price(null).size(TEN).strategy("LastPrice").build();
@@ -1153,9 +1167,9 @@ public class BitmexContextTest {
             assertEquals(m.remove("symbol"), "XBTZ17");
             assertEquals(m.size(), 0, map.toString());
 
-            return new Gson().toJson(singleton(singletonMap("clOrdID", "uid1")));
+            return CompletableFuture.completedFuture(new Gson().toJson(singleton(singletonMap("clOrdID", "uid1"))));
 
-        }).when(target).executePrivate(any(), any(), any(), any());
+        }).when(target).executePrivateAsync(any(), any(), any(), any());
 
         CreateInstruction i1 = CreateInstruction.builder().price(ZERO).size(TEN).strategy("Fixed").build();
         CreateInstruction i2 = CreateInstruction.builder().price(null).size(TEN).strategy("Fixed").build();
@@ -1186,11 +1200,11 @@ public class BitmexContextTest {
 
             Map<String, Set<String>> map = new Gson().fromJson(data, new TypeToken<Map<String, Set<String>>>() {
             }.getType());
-            assertEquals(map.remove("clOrdID"), Sets.newHashSet(null, "uid1"));
+            assertEquals(map.remove("clOrdID"), Sets.newHashSet("uid1"));
 
-            return new Gson().toJson(singleton(singletonMap("clOrdID", "uid1")));
+            return CompletableFuture.completedFuture(new Gson().toJson(singleton(singletonMap("clOrdID", "uid1"))));
 
-        }).when(target).executePrivate(any(), any(), any(), any());
+        }).when(target).executePrivateAsync(any(), any(), any(), any());
 
         CancelInstruction i1 = CancelInstruction.builder().id(null).build();
         CancelInstruction i2 = CancelInstruction.builder().id("uid1").build();
@@ -1203,4 +1217,47 @@ public class BitmexContextTest {
 
     }
 
+    @Test(timeOut = 10000L)
+    public void testCancelOrders_Batches() throws Exception {
+
+        configuration.setProperty("com.after_sunrise.cryptocurrency.cryptotrader.service.bitmex.BitmexContext.batch", "1");
+
+        // Each batch completes only after both are sent, which requires them to be in flight together.
+        CountDownLatch latch = new CountDownLatch(2);
+
+        doAnswer(i -> {
+
+            String data = i.getArgumentAt(3, String.class);
+
+            Map<String, List<String>> map = new Gson().fromJson(data, new TypeToken<Map<String, List<String>>>() {
+            }.getType());
+
+            latch.countDown();
+
+            return CompletableFuture.supplyAsync(() -> {
+
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                return new Gson().toJson(singleton(singletonMap("clOrdID", map.get("clOrdID").get(0))));
+
+            });
+
+        }).when(target).executePrivateAsync(any(), any(), any(), any());
+
+        CancelInstruction i1 = CancelInstruction.builder().id("uid1").build();
+        CancelInstruction i2 = CancelInstruction.builder().id("uid2").build();
+
+        Key key = Key.builder().instrument("XBTZ17").build();
+        Map<CancelInstruction, String> result = target.cancelOrders(key, Sets.newHashSet(i1, i2));
+        assertEquals(result.size(), 2);
+        assertEquals(result.get(i1), "uid1");
+        assertEquals(result.get(i2), "uid2");
+        verify(target, times(2)).executePrivateAsync(any(), any(), any(), any());
+
+    }
+
 }
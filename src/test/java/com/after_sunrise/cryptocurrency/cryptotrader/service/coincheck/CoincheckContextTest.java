@@ -1,5 +1,7 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.coincheck;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CancelInstruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
@@ -15,11 +17,13 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -36,6 +40,7 @@ import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.DOWN;
 import static java.math.RoundingMode.UP;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
@@ -58,6 +63,7 @@ public class CoincheckContextTest {
         target.setConfiguration(conf);
 
         doReturn(null).when(target).request(any(), any(), any(), any());
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
         doNothing().when(target).scheduleSocket(any(), any());
 
     }
@@ -170,21 +176,22 @@ public class CoincheckContextTest {
     public void testQueryBook() throws Exception {
 
         String data = Resources.toString(getResource("json/coincheck_book.json"), UTF_8);
-        doReturn(data).when(target).request(GET, "https://coincheck.com/api/order_books", null, null);
+        doAnswer(i -> i.getArgumentAt(4, Converter.class).convert(new StringReader(data))).when(target)
+                .request(eq(GET), eq("https://coincheck.com/api/order_books"), isNull(Map.class), isNull(String.class), any());
 
         // Found
-        CoincheckBook book = target.queryBook(Key.builder().instrument(BTC_JPY.name()).build()).get();
-        assertEquals(book.getBestAskPrice(), new BigDecimal("1613281.0"));
-        assertEquals(book.getBestBidPrice(), new BigDecimal("1613120.0"));
-        assertEquals(book.getBestAskSize(), new BigDecimal("0.008"));
-        assertEquals(book.getBestBidSize(), new BigDecimal("0.2032985"));
+        Book book = target.queryBook(Key.builder().instrument(BTC_JPY.name()).build()).get();
+        assertEquals(book.getAsks().getBestPrice(), new BigDecimal("1613281"));
+        assertEquals(book.getBids().getBestPrice(), new BigDecimal("1613120"));
+        assertEquals(book.getAsks().getBestSize(), 0.008);
+        assertEquals(book.getBids().getBestSize(), 0.2032985);
 
         // Not found
         assertFalse(target.queryBook(Key.builder().instrument("FOO_BAR").build()).isPresent());
 
         // Cached
-        doReturn(null).when(target).request(any(), any(), any(), any());
-        CoincheckBook cached = target.queryBook(Key.builder().instrument(BTC_JPY.name()).build()).get();
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
+        Book cached = target.queryBook(Key.builder().instrument(BTC_JPY.name()).build()).get();
         assertSame(cached, book);
 
     }
@@ -194,11 +201,10 @@ public class CoincheckContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        CoincheckBook book = mock(CoincheckBook.class);
-        when(book.getBestAskPrice()).thenReturn(TEN);
+        Book book = Book.of(singletonMap(TEN, ONE), null);
 
         doReturn(Optional.of(book)).when(target).queryBook(key);
-        assertEquals(target.getBestAskPrice(key), book.getBestAskPrice());
+        assertEquals(target.getBestAskPrice(key), TEN);
 
         doReturn(Optional.empty()).when(target).queryBook(key);
         assertNull(target.getBestAskPrice(key));
@@ -210,11 +216,10 @@ public class CoincheckContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        CoincheckBook book = mock(CoincheckBook.class);
-        when(book.getBestBidPrice()).thenReturn(TEN);
+        Book book = Book.of(null, singletonMap(TEN, ONE));
 
         doReturn(Optional.of(book)).when(target).queryBook(key);
-        assertEquals(target.getBestBidPrice(key), book.getBestBidPrice());
+        assertEquals(target.getBestBidPrice(key), TEN);
 
         doReturn(Optional.empty()).when(target).queryBook(key);
         assertNull(target.getBestBidPrice(key));
@@ -226,11 +231,10 @@ public class CoincheckContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        CoincheckBook book = mock(CoincheckBook.class);
-        when(book.getBestAskSize()).thenReturn(TEN);
+        Book book = Book.of(singletonMap(TEN, ONE), null);
 
         doReturn(Optional.of(book)).when(target).queryBook(key);
-        assertEquals(target.getBestAskSize(key), book.getBestAskSize());
+        assertEquals(target.getBestAskSize(key), new BigDecimal("1.0"));
 
         doReturn(Optional.empty()).when(target).queryBook(key);
         assertNull(target.getBestAskSize(key));
@@ -242,11 +246,10 @@ public class CoincheckContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        CoincheckBook book = mock(CoincheckBook.class);
-        when(book.getBestBidSize()).thenReturn(TEN);
+        Book book = Book.of(null, singletonMap(TEN, ONE));
 
         doReturn(Optional.of(book)).when(target).queryBook(key);
-        assertEquals(target.getBestBidSize(key), book.getBestBidSize());
+        assertEquals(target.getBestBidSize(key), new BigDecimal("1.0"));
 
         doReturn(Optional.empty()).when(target).queryBook(key);
         assertNull(target.getBestBidSize(key));
@@ -325,6 +328,29 @@ public class CoincheckContextTest {
 
     }
 
+    @Test
+    public void testOnWebSocketMessage() throws Exception {
+
+        List<Key> keys = new ArrayList<>();
+        target.addListener(keys::add);
+
+        // Rejected
+        doReturn(false).when(target).appendCache(any(), any());
+        target.onWebSocketMessage(new StringReader("[1,\"btc_jpy\",\"123\",\"0.5\",\"buy\"]"));
+        assertEquals(keys.size(), 0);
+
+        // Appended
+        doReturn(true).when(target).appendCache(any(), any());
+        target.onWebSocketMessage(new StringReader("[2,\"btc_jpy\",\"123\",\"0.5\",\"sell\"]"));
+        assertEquals(keys, Collections.singletonList(Key.builder().site("coincheck").instrument("BTC_JPY").build()));
+
+        // Unknown
+        keys.clear();
+        target.onWebSocketMessage(new StringReader("[3,\"foo_bar\",\"123\",\"0.5\",\"sell\"]"));
+        assertEquals(keys.size(), 0);
+
+    }
+
     @Test
     public void testGetInstrumentCurrency() {
 
@@ -392,7 +418,7 @@ public class CoincheckContextTest {
         headers.put("ACCESS-KEY", "my_id");
         headers.put("ACCESS-NONCE", "1234567890");
         headers.put("ACCESS-SIGNATURE", "c1882128a3b8bcf13cec68d2dabf0ab867064f97afc90162624d32273a05b65a");
-        doReturn("test").when(target).request(GET, path + "?foo=bar", headers, data);
+        doReturn(CompletableFuture.completedFuture("test")).when(target).requestAsync(GET, path + "?foo=bar", headers, data);
 
         assertEquals(target.executePrivate(GET, path, params, data), "test");
 
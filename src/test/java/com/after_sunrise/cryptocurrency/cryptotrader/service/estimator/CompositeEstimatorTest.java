@@ -20,8 +20,7 @@ import static java.math.BigDecimal.ZERO;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.*;
-import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.fail;
+import static org.testng.Assert.*;
 
 /**
  * @author takanori.takase
@@ -171,6 +170,48 @@ public class CompositeEstimatorTest {
 
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompositeEstimator_EstimateMemoized() {
+
+        List<Composite> composites = new ArrayList<>();
+        composites.add(new Composite("@a", "1"));
+        composites.add(new Composite("@a", "1"));
+        Request request = Request.builder().currentTime(Instant.now()).estimatorComposites(composites).build();
+
+        Estimator.Estimation estimation = Estimator.Estimation.builder().price(ONE).confidence(ONE).build();
+        BiFunction<Context, Request, Estimator.Estimation> function = mock(BiFunction.class);
+        when(function.apply(same(context), any())).thenReturn(estimation);
+
+        CompositeEstimator target = CompositeEstimator.INSTANCE;
+
+        Estimator mid = new CompositeMidEstimator();
+
+        Estimator.Estimation result = target.estimate(context, request, mid, function);
+        assertEquals(result.getPrice(), new BigDecimal("1.0000000000"));
+        assertEquals(result.getConfidence(), new BigDecimal("1.0000000000"));
+        verify(function, times(1)).apply(same(context), any());
+
+        // Shared with the other composites of the same cycle.
+        composites.add(new Composite("@b", "2"));
+        result = target.estimate(context, request, mid, function);
+        assertEquals(result.getPrice(), new BigDecimal("1.0000000000"));
+        verify(function, times(2)).apply(same(context), any());
+
+        // Keyed by the concrete estimator.
+        target.estimate(context, request, new CompositeLastEstimator(), function);
+        verify(function, times(4)).apply(same(context), any());
+
+        // Not shared with the variants of the same underlying estimator, whose properties may differ.
+        target.estimate(context, request, new CompositeMidEstimator() {
+        }, function);
+        verify(function, times(6)).apply(same(context), any());
+
+        target.estimate(context, request, new CompositeMidEstimator(), function);
+        verify(function, times(6)).apply(same(context), any());
+
+    }
+
     @Test
     public void testCompositeMidEstimator() {
 
@@ -7,8 +7,6 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key.from;
 import static org.mockito.Mockito.*;
@@ -43,25 +41,13 @@ public class DepthEstimatorTest {
             doReturn(new BigDecimal("0.1")).when(target).calculateDeviation(context, request);
             doReturn(new BigDecimal("200")).when(context).getMidPrice(from(request));
 
-            Map<BigDecimal, BigDecimal> asks = new HashMap<>();
-            asks.put(null, new BigDecimal("01")); // Exclude
-            asks.put(new BigDecimal("222"), new BigDecimal("12")); // Exclude
-            asks.put(new BigDecimal("221"), new BigDecimal("43")); // Exclude
-            asks.put(new BigDecimal("220"), new BigDecimal("56"));
-            asks.put(new BigDecimal("219"), new BigDecimal("87"));
-            asks.put(new BigDecimal("218"), new BigDecimal("90"));
-            asks.put(new BigDecimal("217"), null); // Exclude
-            doReturn(asks).when(context).getAskPrices(from(request));
-
-            Map<BigDecimal, BigDecimal> bids = new HashMap<>();
-            bids.put(new BigDecimal("183"), null); // Exclude
-            bids.put(new BigDecimal("182"), new BigDecimal("12"));
-            bids.put(new BigDecimal("181"), new BigDecimal("43"));
-            bids.put(new BigDecimal("180"), new BigDecimal("56"));
-            bids.put(new BigDecimal("179"), new BigDecimal("87")); // Exclude
-            bids.put(new BigDecimal("178"), new BigDecimal("90")); // Exclude
-            bids.put(null, new BigDecimal("01")); // Exclude
-            doReturn(bids).when(context).getBidPrices(from(request));
+            // Asks within 220 : {220=56, 219=87, 218=90}
+            doReturn(new BigDecimal("233")).when(context).getAskDepth(from(request), new BigDecimal("220.0"));
+            doReturn(new BigDecimal("218.8540772532189")).when(context).getAskAverage(from(request), new BigDecimal("233"));
+
+            // Bids within 180 : {182=12, 181=43, 180=56}
+            doReturn(new BigDecimal("111")).when(context).getBidDepth(from(request), new BigDecimal("180.0"));
+            doReturn(new BigDecimal("180.6036036036036")).when(context).getBidAverage(from(request), new BigDecimal("111"));
 
         };
 
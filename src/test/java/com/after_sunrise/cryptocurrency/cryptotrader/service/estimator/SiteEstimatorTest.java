@@ -9,8 +9,8 @@ import java.time.Instant;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Service.CurrencyType.BTC;
 import static com.after_sunrise.cryptocurrency.cryptotrader.framework.Service.CurrencyType.JPY;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 
 /**
@@ -49,6 +49,10 @@ public class SiteEstimatorTest {
         assertEquals(result.getInstrument(), "JPY/BTC");
         assertEquals(result.getTimestamp(), now);
 
+        // Resolved once per cycle
+        assertEquals(target.getKey(context, request), result);
+        verify(context, times(1)).findProduct(any(), any(), any());
+
     }
 
 }
@@ -4,8 +4,8 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
-import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import org.apache.commons.configuration2.MapConfiguration;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -103,32 +103,96 @@ public class UnivariateEstimatorTest {
         Instant now = parseDate("2017-05-31");
         Instant est = parseDate("2017-06-01");
         Duration interval = Duration.between(now, est);
-        Instant from = parseDate("2017-04-01");
+        Instant from = now.minus(interval.multipliedBy(60));
 
         Request request = Request.builder().currentTime(now).targetTime(est).build();
         Key key = Key.from(request);
 
-        List<Trade> trades = Collections.singletonList(mock(Trade.class));
-        when(context.listTrades(key, from.minus(interval))).thenReturn(trades);
-        doReturn(prices).when(target).collapsePrices(trades, interval, from, now, false);
+        doReturn(prices).when(target).collapsePrices(context, key, interval, from, now, false);
 
         Estimation estimation = target.estimate(context, request);
         assertEquals(estimation.getPrice().toPlainString(), "19682.3911085423");
         assertEquals(estimation.getConfidence().toPlainString(), "0.0035580603");
 
+        // Shared within the family.
+        UnivariateEstimator other = spy(new UnivariateEstimator.Univariate010Estimator());
+        estimation = other.estimate(context, request);
+        assertEquals(estimation.getPrice().toPlainString(), "19622.3521574710");
+        assertEquals(estimation.getConfidence().toPlainString(), "0.0310022861");
+        verify(other, never()).collapsePrices(any(Context.class), any(), any(), any(), any(), anyBoolean());
+        verify(target, times(1)).collapsePrices(context, key, interval, from, now, false);
+
         // Not enough samples
         configuration.put(
-                "com.after_sunrise.cryptocurrency.cryptotrader.service.estimator.UnivariateEstimator.samples",
-                prices.size() * 2
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.estimator.UnivariateEstimator.samples", 2
         );
         assertSame(target.estimate(context, request), AbstractEstimator.BAIL);
 
         // No trades
-        doReturn(null).when(context).listTrades(any(), any());
+        configuration.clear();
+        context = mock(Context.class);
+        doCallRealMethod().when(target).collapsePrices(context, key, interval, from, now, false);
         assertSame(target.estimate(context, request), AbstractEstimator.BAIL);
 
     }
 
+    @Test
+    public void testGetLargest() throws Exception {
+
+        Instant now = Instant.now();
+        Key key = Key.builder().site("s").instrument("i").timestamp(now).build();
+        Duration interval = Duration.ofMinutes(1);
+
+        assertEquals(target.getLargest(context, key, interval, 60), 60);
+        assertEquals(target.getLargest(context, key, interval, 10), 60);
+        assertEquals(target.getLargest(context, key, interval, 720), 720);
+
+        // Remembered for the later cycles.
+        Key next = Key.build(key).timestamp(now.plusSeconds(60)).build();
+        assertEquals(target.getLargest(context, next, interval, 30), 720);
+
+        // Per product and interval
+        assertEquals(target.getLargest(context, Key.build(key).instrument("j").build(), interval, 30), 30);
+        assertEquals(target.getLargest(context, key, Duration.ofMinutes(5), 30), 30);
+        assertEquals(target.getLargest(mock(Context.class), key, interval, 30), 30);
+
+    }
+
+    @Test
+    public void testSeries() throws Exception {
+
+        Instant now = parseDate("2017-05-31");
+        Duration interval = Duration.ofDays(1);
+
+        NavigableMap<Instant, BigDecimal> values = new TreeMap<>(prices);
+        NavigableMap<Instant, BigDecimal> returns = target.calculateReturns(values);
+        doReturn(values).when(target).collapsePrices(context, null, interval, now.minus(interval.multipliedBy(90)), now, false);
+
+        UnivariateEstimator.Series series = target.getSeries(context, null, now, interval, 90);
+        assertEquals(series.scale(now), 0.0);
+        assertEquals(series.scale(parseDate("2017-05-30")), -1.0);
+
+        // Returns within (from, now], whose previous price is also within.
+        for (String date : Arrays.asList("2017-04-03", "2017-04-10", "2017-05-08", "2017-05-26")) {
+
+            Instant from = parseDate(date);
+
+            SimpleRegression expect = new SimpleRegression();
+
+            returns.tailMap(values.higherKey(from), true).forEach(
+                    (k, v) -> expect.addData(series.scale(k), v.doubleValue())
+            );
+
+            UnivariateEstimator.Regression actual = series.regress(from);
+            assertEquals(actual.predict(1.0), expect.predict(1.0), 1E-12, date);
+            assertEquals(actual.getRSquare(), expect.getRSquare(), 1E-12, date);
+
+        }
+
+        assertEquals(series.regress(now).predict(1.0), Double.NaN);
+
+    }
+
     @Test
     public void testGetSamples() {
 
@@ -5,11 +5,16 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimation;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 import static java.math.BigDecimal.ZERO;
 import static java.time.temporal.ChronoUnit.HOURS;
@@ -17,9 +22,10 @@ import static java.time.temporal.ChronoUnit.MINUTES;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.apache.commons.lang3.math.NumberUtils.LONG_ONE;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 /**
  * @author takanori.takase
@@ -45,11 +51,29 @@ public class VwapEstimatorTest {
         assertEquals(target.get(), target.getClass().getSimpleName());
     }
 
+    @SuppressWarnings("unchecked")
+    private void trades(Key key, Instant from, List<Trade> trades) {
+
+        context = mock(Context.class);
+
+        doAnswer(i -> {
+
+            Consumer<Trade> consumer = i.getArgumentAt(3, Consumer.class);
+
+            trades.forEach(consumer);
+
+            return null;
+
+        }).when(context).forEachTrade(eq(key), eq(from), isNull(Instant.class), any());
+
+    }
+
     @Test
     public void testEstimate() throws Exception {
 
         Instant now = Instant.now();
         Instant from = now.minus(LONG_ONE, HOURS);
+        Instant horizon = from;
         Request request = Request.builder().currentTime(now).build();
         Key key = Key.from(request);
 
@@ -87,35 +111,117 @@ public class VwapEstimatorTest {
         when(t8.getSize()).thenReturn(new BigDecimal("+4"));
 
         // All ticks
-        when(context.listTrades(key, from)).thenReturn(asList(t1, t3, t5, t7, null, t2, t4, t6, t8));
+        trades(key, horizon, asList(t1, t2, t4, t5, t6, t7, t8));
         Estimation estimation = target.estimate(context, request);
         assertEquals(estimation.getPrice(), new BigDecimal("49.9231910345"));
         assertEquals(estimation.getConfidence(), new BigDecimal("0.9388342018"));
 
+        // Shared within the family
+        estimation = new VwapEstimator.Vwap030Estimator().estimate(context, request);
+        assertEquals(estimation.getPrice(), new BigDecimal("50.0605301286"));
+        assertEquals(estimation.getConfidence().signum(), 0);
+        verify(context, times(1)).forEachTrade(any(), any(), any(), any());
+
         // Two points
-        when(context.listTrades(key, from)).thenReturn(asList(t1, null, t2));
+        trades(key, horizon, asList(t1, t2));
         estimation = target.estimate(context, request);
         assertEquals(estimation.getPrice(), new BigDecimal("48.8298179723"));
         assertEquals(estimation.getConfidence().signum(), 0);
 
         // One point
-        when(context.listTrades(key, from)).thenReturn(asList(null, t1));
+        trades(key, horizon, asList(t4, t1));
         estimation = target.estimate(context, request);
         assertEquals(estimation.getPrice(), t1.getPrice());
         assertEquals(estimation.getConfidence(), ZERO);
 
         // Zero point
-        when(context.listTrades(key, from)).thenReturn(emptyList());
+        trades(key, horizon, asList(t5, t6));
         estimation = target.estimate(context, request);
         assertEquals(estimation.getPrice(), null);
         assertEquals(estimation.getConfidence(), ZERO);
 
-        // Null
-        when(context.listTrades(key, from)).thenReturn(null);
+        // None
+        trades(key, horizon, emptyList());
         estimation = target.estimate(context, request);
         assertEquals(estimation.getPrice(), null);
         assertEquals(estimation.getConfidence(), ZERO);
 
     }
 
+    @Test
+    public void testGetLongest() throws Exception {
+
+        Instant now = Instant.now();
+        Key key = Key.builder().site("s").instrument("i").timestamp(now).build();
+
+        assertEquals(target.getLongest(context, key, Duration.ofHours(1)), Duration.ofHours(1));
+        assertEquals(target.getLongest(context, key, Duration.ofMinutes(5)), Duration.ofHours(1));
+        assertEquals(target.getLongest(context, key, Duration.ofHours(16)), Duration.ofHours(16));
+
+        // Remembered for the later cycles.
+        Key next = Key.build(key).timestamp(now.plusSeconds(60)).build();
+        assertEquals(target.getLongest(context, next, Duration.ofMinutes(30)), Duration.ofHours(16));
+
+        // Per product
+        assertEquals(target.getLongest(context, Key.build(key).instrument("j").build(), Duration.ofMinutes(30)),
+                Duration.ofMinutes(30));
+        assertEquals(target.getLongest(mock(Context.class), key, Duration.ofMinutes(30)), Duration.ofMinutes(30));
+
+    }
+
+    @Test
+    public void testSeries() throws Exception {
+
+        Instant now = Instant.ofEpochSecond(1000);
+        Request request = Request.builder().currentTime(now).build();
+        Key key = Key.from(request);
+
+        double[] prices = {100, 101, 99, 102, 102, 98, 97, 103};
+        List<Trade> trades = new ArrayList<>();
+
+        for (int i = 0; i < prices.length; i++) {
+            Trade trade = mock(Trade.class);
+            when(trade.getTimestamp()).thenReturn(Instant.ofEpochSecond(100 * (i + 2)));
+            when(trade.getPrice()).thenReturn(BigDecimal.valueOf(prices[i]));
+            when(trade.getSize()).thenReturn(BigDecimal.valueOf(i + 1));
+            trades.add(trade);
+        }
+
+        trades(key, now.minus(16, HOURS), trades);
+
+        VwapEstimator.Series series = target.getSeries(context, key, Duration.ofHours(16));
+        assertEquals(series.size(), prices.length);
+        assertEquals(series.search(Instant.ofEpochSecond(0)), 0);
+        assertEquals(series.search(Instant.ofEpochSecond(400)), 2);
+        assertEquals(series.search(Instant.ofEpochSecond(401)), 3);
+        assertEquals(series.search(now), prices.length);
+        assertSame(target.getSeries(context, key, Duration.ofHours(16)), series);
+
+        for (int from = 0; from < prices.length; from++) {
+
+            double notional = 0;
+            double quantity = 0;
+            SummaryStatistics stats = new SummaryStatistics();
+
+            for (int i = from; i < prices.length; i++) {
+
+                double weight = 1.0 / Math.log10(Math.max(1000 - 100 * (i + 2), 10));
+                notional += prices[i] * (i + 1) * weight;
+                quantity += (i + 1) * weight;
+
+                if (i > from) {
+                    stats.addValue(Math.log(prices[i] / prices[i - 1]));
+                }
+
+            }
+
+            assertEquals(series.getVwap(from), notional / quantity, 1E-10);
+
+            double squares = stats.getN() <= 1 ? 0 : stats.getVariance() * (stats.getN() - 1);
+            assertEquals(series.getSquares(from), squares, 1E-12);
+
+        }
+
+    }
+
 }
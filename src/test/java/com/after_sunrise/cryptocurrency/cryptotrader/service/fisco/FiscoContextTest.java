@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.fisco;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
@@ -27,10 +28,12 @@ import static com.after_sunrise.cryptocurrency.cryptotrader.service.fisco.FiscoS
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType.GET;
 import static com.google.common.io.Resources.getResource;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toSet;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 
 /**
  * @author takanori.takase
@@ -130,19 +133,19 @@ public class FiscoContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        FiscoDepth value = mock(FiscoDepth.class);
-        when(value.getAskPrices()).thenReturn(new TreeMap<>());
-        value.getAskPrices().put(BigDecimal.ONE, BigDecimal.TEN);
+        Book value = Book.of(singletonMap(BigDecimal.ONE, BigDecimal.TEN), null);
 
         doReturn(Optional.of(value)).when(target).queryDepth(key);
         assertEquals(target.getBestAskPrice(key), BigDecimal.ONE);
-        assertEquals(target.getBestAskSize(key), BigDecimal.TEN);
-        assertEquals(target.getAskPrices(key), value.getAskPrices());
+        assertEquals(target.getBestAskSize(key), new BigDecimal("10.0"));
+        assertEquals(target.getAskPrices(key), value.getAsks().asMap());
+        assertSame(target.getBook(key), value);
 
         doReturn(Optional.empty()).when(target).queryDepth(key);
         assertNull(target.getBestAskPrice(key));
         assertNull(target.getBestAskSize(key));
         assertNull(target.getAskPrices(key));
+        assertNull(target.getBook(key));
 
     }
 
@@ -151,13 +154,11 @@ public class FiscoContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        FiscoDepth value = mock(FiscoDepth.class);
-        when(value.getBidPrices()).thenReturn(new TreeMap<>());
-        value.getBidPrices().put(BigDecimal.ONE, BigDecimal.TEN);
+        Book value = Book.of(null, singletonMap(BigDecimal.ONE, BigDecimal.TEN));
 
         doReturn(Optional.of(value)).when(target).queryDepth(key);
         assertEquals(target.getBestBidPrice(key), BigDecimal.ONE);
-        assertEquals(target.getBestBidSize(key), BigDecimal.TEN);
+        assertEquals(target.getBestBidSize(key), new BigDecimal("10.0"));
 
         doReturn(Optional.empty()).when(target).queryDepth(key);
         assertNull(target.getBestBidPrice(key));
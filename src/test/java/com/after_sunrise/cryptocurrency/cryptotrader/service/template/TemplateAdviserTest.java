@@ -9,7 +9,6 @@ import com.after_sunrise.cryptocurrency.cryptotrader.framework.Estimator.Estimat
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order.Execution;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Request;
-import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.MapConfiguration;
 import org.mockito.invocation.InvocationOnMock;
@@ -195,21 +194,15 @@ public class TemplateAdviserTest {
         Request.RequestBuilder b = Request.builder().currentTime(t0).targetTime(t1)
                 .tradingSigma(TEN).tradingSamples(60);
 
-        List<Trade> trades = singletonList(mock(Trade.class));
-        when(context.listTrades(any(), eq(ofEpochMilli(3900)))).thenReturn(trades);
-        when(context.listTrades(any(), eq(ofEpochMilli(6900)))).thenReturn(trades);
-        when(context.listTrades(any(), eq(ofEpochMilli(8400)))).thenReturn(trades);
-        when(context.listTrades(any(), eq(ofEpochMilli(9200)))).thenReturn(trades);
-
         Duration interval = Duration.ofMillis(100);
         NavigableMap<Instant, BigDecimal> prices60 = new TreeMap<>(singletonMap(t0, valueOf(600)));
         NavigableMap<Instant, BigDecimal> prices30 = new TreeMap<>(singletonMap(t0, valueOf(300)));
         NavigableMap<Instant, BigDecimal> prices15 = new TreeMap<>(singletonMap(t0, valueOf(150)));
         NavigableMap<Instant, BigDecimal> prices07 = new TreeMap<>(singletonMap(t0, valueOf(70)));
-        doReturn(prices60).when(target).collapsePrices(trades, interval, ofEpochMilli(4000), t0, false);
-        doReturn(prices30).when(target).collapsePrices(trades, interval, ofEpochMilli(7000), t0, false);
-        doReturn(prices15).when(target).collapsePrices(trades, interval, ofEpochMilli(8500), t0, false);
-        doReturn(prices07).when(target).collapsePrices(trades, interval, ofEpochMilli(9300), t0, false);
+        doReturn(prices60).when(target).collapsePrices(same(context), any(), eq(interval), eq(ofEpochMilli(4000)), eq(t0), eq(false));
+        doReturn(prices30).when(target).collapsePrices(same(context), any(), eq(interval), eq(ofEpochMilli(7000)), eq(t0), eq(false));
+        doReturn(prices15).when(target).collapsePrices(same(context), any(), eq(interval), eq(ofEpochMilli(8500)), eq(t0), eq(false));
+        doReturn(prices07).when(target).collapsePrices(same(context), any(), eq(interval), eq(ofEpochMilli(9300)), eq(t0), eq(false));
 
         NavigableMap<Instant, BigDecimal> returns = new TreeMap<>();
         returns.put(ofEpochMilli(10), null);
@@ -14,18 +14,29 @@ import org.mockito.InOrder;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAgent.INTERVAL;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
+import static java.math.BigDecimal.ZERO;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonMap;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -115,6 +126,179 @@ public class TemplateAgentTest {
 
     }
 
+    private Order order(String quantity, String price, String remaining) {
+
+        Order order = mock(Order.class);
+        when(order.getOrderQuantity()).thenReturn(quantity == null ? null : new BigDecimal(quantity));
+        when(order.getOrderPrice()).thenReturn(price == null ? null : new BigDecimal(price));
+        when(order.getRemainingQuantity()).thenReturn(remaining == null ? null : new BigDecimal(remaining));
+        return order;
+
+    }
+
+    private CreateInstruction create(String price, String size) {
+        return CreateInstruction.builder().price(new BigDecimal(price)).size(new BigDecimal(size)).build();
+    }
+
+    @Test(timeOut = 5000)
+    public void testManage_Pipeline() throws Exception {
+
+        configuration.setProperty(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAgent.pipeline",
+                "true"
+        );
+
+        CreateInstruction c1 = create("100", "1"); // Same price
+        CreateInstruction c2 = create("99", "1");
+        CreateInstruction c3 = create("111", "-1");
+        CreateInstruction c4 = create("98", "100"); // Insufficient
+        CancelInstruction i4 = CancelInstruction.builder().id("i4").build();
+        CancelInstruction i5 = CancelInstruction.builder().id("i5").build();
+        Request request = Request.builder().build();
+
+        Order o4 = order("2", "100", "2");
+        Order o5 = order("-1", "110", "-1");
+        Map<String, Order> orders = new HashMap<>();
+        orders.put("i4", o4);
+        orders.put("i5", o5);
+        doReturn(orders).when(context).findOrders(any(), any());
+        doReturn(asList(o4, o5)).when(context).listActiveOrders(any());
+        doReturn(FALSE).when(context).isMarginable(any());
+        doReturn(new BigDecimal("1000")).when(context).getFundingPosition(any());
+        doReturn(new BigDecimal("10")).when(context).getInstrumentPosition(any());
+
+        CountDownLatch created = new CountDownLatch(1);
+
+        when(context.createOrders(any(), any())).thenAnswer(invocation -> {
+            Map<CreateInstruction, String> results = new IdentityHashMap<>();
+            Set<?> instructions = invocation.getArgumentAt(1, Set.class);
+            instructions.stream().map(CreateInstruction.class::cast).forEach(i -> results.put(i, i.getUid()));
+            created.countDown();
+            return results;
+        });
+
+        when(context.cancelOrders(any(), any())).thenAnswer(invocation -> {
+            created.await(); // Creates are sent without waiting for the cancels.
+            Map<CancelInstruction, String> results = new IdentityHashMap<>();
+            Set<?> instructions = invocation.getArgumentAt(1, Set.class);
+            instructions.stream().map(CancelInstruction.class::cast).forEach(i -> results.put(i, i.getId()));
+            return results;
+        });
+
+        List<Instruction> values = asList(c1, c2, c3, c4, i4, i5);
+        Map<Instruction, String> results = target.manage(context, request, values);
+        assertEquals(results.size(), 4 + 2);
+
+        InOrder inOrder = inOrder(context);
+        inOrder.verify(context).createOrders(any(), eq(Sets.newHashSet(c2, c3)));
+        inOrder.verify(context).createOrders(any(), eq(Sets.newHashSet(c1, c4)));
+        verify(context).cancelOrders(any(), eq(Sets.newHashSet(i4, i5)));
+
+        // Only the dependents are dropped.
+        doReturn(singletonMap(i4, null)).when(context).cancelOrders(any(), any());
+        results = target.manage(context, request, values);
+        assertEquals(results.size(), 3);
+        assertNotNull(results.get(c2));
+        assertNotNull(results.get(c3));
+        assertNull(results.get(i4));
+
+        // Cancel failure
+        doThrow(new RuntimeException("test")).when(context).cancelOrders(any(), any());
+        results = target.manage(context, request, values);
+        assertEquals(results.size(), 2);
+        assertNotNull(results.get(c2));
+        assertNotNull(results.get(c3));
+
+    }
+
+    @Test
+    public void testResolveDependencies() throws Exception {
+
+        CreateInstruction c1 = create("100", "1");
+        CreateInstruction c2 = create("99", "1");
+        CreateInstruction c3 = create("111", "-1");
+        CreateInstruction c4 = create("98", "100");
+        CreateInstruction c5 = CreateInstruction.builder().build();
+        CancelInstruction i4 = CancelInstruction.builder().id("i4").build();
+        CancelInstruction i5 = CancelInstruction.builder().id("i5").build();
+        CancelInstruction i6 = CancelInstruction.builder().id("i6").build();
+        Key key = Key.builder().build();
+
+        Map<String, Order> orders = new HashMap<>();
+        orders.put("i4", order("2", "100", "2"));
+        orders.put("i5", order("-1", "110", "-1"));
+        doReturn(orders).when(context).findOrders(any(), any());
+        doReturn(new BigDecimal("800")).when(target).getCapacity(context, key, 1);
+        doReturn(new BigDecimal("9")).when(target).getCapacity(context, key, -1);
+
+        Set<CreateInstruction> creates = new LinkedHashSet<>(asList(c1, c2, c3, c4, c5));
+        Map<CreateInstruction, Set<CancelInstruction>> results = target.resolveDependencies(
+                context, key, creates, new LinkedHashSet<>(asList(i4, i5)));
+        assertEquals(results.size(), 5);
+        assertEquals(results.get(c1), singleton(i4));
+        assertEquals(results.get(c2), emptySet());
+        assertEquals(results.get(c3), emptySet());
+        assertEquals(results.get(c4), singleton(i4));
+        assertEquals(results.get(c5), Sets.newHashSet(i4, i5));
+
+        // Unknown order
+        results = target.resolveDependencies(context, key, creates, new LinkedHashSet<>(asList(i4, i5, i6)));
+        assertEquals(results.get(c1), Sets.newHashSet(i4, i6));
+        assertEquals(results.get(c2), singleton(i6));
+        assertEquals(results.get(c3), singleton(i6));
+        assertEquals(results.get(c4), Sets.newHashSet(i4, i6));
+
+        // Crossing the opposite side
+        CreateInstruction c6 = create("110", "1");
+        CreateInstruction c7 = create("100", "-1");
+        CreateInstruction c8 = create("101", "-1");
+        results = target.resolveDependencies(context, key,
+                new LinkedHashSet<>(asList(c6, c7, c8)), new LinkedHashSet<>(asList(i4, i5)));
+        assertEquals(results.get(c6), singleton(i5));
+        assertEquals(results.get(c7), singleton(i4));
+        assertEquals(results.get(c8), emptySet());
+
+        // Crossing and short of balance
+        CreateInstruction c9 = create("110", "10");
+        results = target.resolveDependencies(context, key, singleton(c9), new LinkedHashSet<>(asList(i4, i5)));
+        assertEquals(results.get(c9), Sets.newHashSet(i4, i5));
+
+    }
+
+    @Test
+    public void testGetCapacity() throws Exception {
+
+        Key key = Key.builder().build();
+        doReturn(FALSE).when(context).isMarginable(key);
+        doReturn(new BigDecimal("1000")).when(context).getFundingPosition(key);
+        doReturn(new BigDecimal("10")).when(context).getInstrumentPosition(key);
+        doReturn(asList(
+                order("2", "100", "1.5"), order("-3", "110", "-2"),
+                order(null, "100", "1"), order("1", "100", null), null
+        )).when(context).listActiveOrders(key);
+
+        assertEquals(target.getCapacity(context, key, 1), new BigDecimal("850.0"));
+        assertEquals(target.getCapacity(context, key, -1), new BigDecimal("8"));
+        assertEquals(target.getCapacity(context, key, 0), ZERO);
+
+        // Overcommitted
+        doReturn(new BigDecimal("1")).when(context).getInstrumentPosition(key);
+        assertEquals(target.getCapacity(context, key, -1), ZERO);
+
+        // Unknown price
+        doReturn(asList(order("1", null, "1"))).when(context).listActiveOrders(key);
+        assertEquals(target.getCapacity(context, key, 1), ZERO);
+
+        // Unknown position
+        doReturn(null).when(context).getFundingPosition(key);
+        assertEquals(target.getCapacity(context, key, 1), ZERO);
+
+        // Margin
+        doReturn(TRUE).when(context).isMarginable(key);
+        assertEquals(target.getCapacity(context, key, -1), ZERO);
+
+    }
+
     @Test
     public void testReconcile() throws Exception {
 
@@ -134,15 +318,20 @@ public class TemplateAgentTest {
         instructions.put(cancel2, null); // Skipped
         instructions.put(cancel3, "i7");
 
-        doReturn(null).when(context).getState(any());
-        doReturn(null).when(context).findOrder(any(), anyString());
+        Instant now = Instant.now();
+        AtomicReference<Instant> clock = new AtomicReference<>(now);
+        AtomicInteger polls = new AtomicInteger();
+        doAnswer(i -> clock.get()).when(target).getNow();
         doAnswer(i -> {
-            Key key = i.getArgumentAt(0, Key.class);
-            Duration interval = i.getArgumentAt(1, Duration.class);
-            return Key.build(key).timestamp(key.getTimestamp().plus(interval)).build();
-        }).when(target).nextKey(any(), any());
+            polls.incrementAndGet();
+            clock.set(clock.get().plus(i.getArgumentAt(1, Duration.class)));
+            i.getArgumentAt(0, Runnable.class).run();
+            return null;
+        }).when(target).schedule(any(), any());
+
+        doReturn(null).when(context).getState(any());
+        doReturn(emptyMap()).when(context).findOrders(any(), any());
 
-        Instant now = Instant.now();
         Request request = Request.builder().site("s").instrument("i")
                 .currentTime(now).targetTime(now.plus(INTERVAL).plus(INTERVAL).plusMillis(1)).build();
 
@@ -155,6 +344,9 @@ public class TemplateAgentTest {
         assertEquals(results.get(create2), FALSE);
         assertEquals(results.get(cancel1), TRUE);
         assertEquals(results.get(cancel3), TRUE);
+        assertEquals(polls.get(), 3);
+        verify(context).findOrders(any(), eq(Sets.newHashSet("i1", "i2", "i5", "i7")));
+        verify(context).findOrders(any(), eq(Sets.newHashSet("i1", "i2")));
 
         //
         // With orders
@@ -163,21 +355,55 @@ public class TemplateAgentTest {
         Order o2 = mock(Order.class);
         when(o1.getActive()).thenReturn(null);
         when(o2.getActive()).thenReturn(TRUE);
-        when(context.findOrder(any(), eq("i1"))).thenReturn(o1);
-        when(context.findOrder(any(), eq("i2"))).thenReturn(o2);
-        when(context.findOrder(any(), eq("i5"))).thenReturn(o1);
-        when(context.findOrder(any(), eq("i7"))).thenReturn(o2);
+        Map<String, Order> orders = new HashMap<>();
+        orders.put("i1", o1);
+        orders.put("i2", o2);
+        orders.put("i5", o1);
+        orders.put("i7", o2);
+        doReturn(orders).when(context).findOrders(any(), any());
+        clock.set(now);
+        polls.set(0);
         results = target.reconcile(context, request, instructions);
         assertEquals(results.size(), 4);
         assertEquals(results.get(create1), TRUE);
         assertEquals(results.get(create2), TRUE);
         assertEquals(results.get(cancel1), TRUE);
         assertEquals(results.get(cancel3), FALSE);
+        assertEquals(polls.get(), 3);
+
+        //
+        // Confirmed early
+        //
+        orders.remove("i5");
+        orders.remove("i7");
+        clock.set(now);
+        polls.set(0);
+        results = target.reconcile(context, request, instructions);
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(create1), TRUE);
+        assertEquals(results.get(create2), TRUE);
+        assertEquals(results.get(cancel1), TRUE);
+        assertEquals(results.get(cancel3), TRUE);
+        assertEquals(polls.get(), 1);
+
+        //
+        // Failure
+        //
+        doThrow(new RuntimeException("test")).when(context).findOrders(any(), any());
+        clock.set(now);
+        results = target.reconcile(context, request, instructions);
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(create1), FALSE);
+        assertEquals(results.get(create2), FALSE);
+        assertEquals(results.get(cancel1), FALSE);
+        assertEquals(results.get(cancel3), FALSE);
 
         //
         // Terminated
         //
+        doReturn(orders).when(context).findOrders(any(), any());
         doReturn(Context.StateType.TERMINATE).when(context).getState(any());
+        clock.set(now);
         results = target.reconcile(context, request, instructions);
         assertEquals(results.size(), 4);
         assertEquals(results.get(create1), FALSE);
@@ -186,9 +412,10 @@ public class TemplateAgentTest {
         assertEquals(results.get(cancel3), FALSE);
 
         //
-        // Interrupted
+        // Rejected
         //
-        doReturn(null).when(target).nextKey(any(), any());
+        doReturn(null).when(context).getState(any());
+        doThrow(new RejectedExecutionException("test")).when(target).schedule(any(), any());
         results = target.reconcile(context, request, instructions);
         assertEquals(results.size(), 4);
         assertEquals(results.get(create1), FALSE);
@@ -213,26 +440,51 @@ public class TemplateAgentTest {
 
     }
 
-    @Test
-    public void testNextKey() {
+    @Test(timeOut = 5000)
+    public void testReconcileAsync() throws Exception {
+
+        configuration.setProperty(
+                "com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateAgent.interval",
+                "10"
+        );
+
+        CreateInstruction create = CreateInstruction.builder().build();
+        Map<Instruction, String> instructions = singletonMap(create, "i1");
 
         Instant now = Instant.now();
-        AtomicLong count = new AtomicLong();
-        doAnswer(i -> now.plusMillis(count.addAndGet(25))).when(target).getNow();
-        Key original = Key.builder().site("s").instrument("i").timestamp(now).build();
-
-        Key result = target.nextKey(original, Duration.ofMillis(100));
-        assertEquals(result.getSite(), original.getSite());
-        assertEquals(result.getInstrument(), original.getInstrument());
-        assertEquals(result.getTimestamp(), original.getTimestamp().plusMillis(25 * 1));
-
-        result = target.nextKey(original, Duration.ofMillis(100));
-        assertEquals(result.getSite(), original.getSite());
-        assertEquals(result.getInstrument(), original.getInstrument());
-        assertEquals(result.getTimestamp(), original.getTimestamp().plusMillis(25 * 2));
-
-        Thread.currentThread().interrupt();
-        assertNull(target.nextKey(original, Duration.ofMillis(100)));
+        Request request = Request.builder().site("s").instrument("i")
+                .currentTime(now).targetTime(now.plusSeconds(60)).build();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        doAnswer(i -> {
+            latch.await();
+            return singletonMap("i1", mock(Order.class));
+        }).when(context).findOrders(any(), any());
+
+        CompletableFuture<Map<Instruction, Boolean>> future = target.reconcileAsync(context, request, instructions);
+        assertFalse(future.isDone());
+
+        latch.countDown();
+        assertEquals(future.get(), singletonMap(create, TRUE));
+
+    }
+
+    @Test(timeOut = 5000)
+    public void testSchedule() throws Exception {
+
+        CountDownLatch latch = new CountDownLatch(1);
+
+        AtomicReference<String> thread = new AtomicReference<>();
+
+        target.schedule(() -> {
+            thread.set(Thread.currentThread().getName());
+            latch.countDown();
+        }, Duration.ofMillis(10));
+
+        latch.await();
+
+        // Off the scheduler threads.
+        assertTrue(thread.get().startsWith("TemplateAgent_IO_"), thread.get());
 
     }
 
@@ -0,0 +1,119 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.jboss.resteasy.plugins.server.undertow.UndertowJaxrsServer;
+import org.jboss.resteasy.test.TestPortProvider;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateClientTest {
+
+    private TemplateClient target;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        target = new TemplateClient();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        target.close();
+    }
+
+    @Test
+    public void testAcquire() throws Exception {
+
+        TemplateClient c1 = TemplateClient.acquire();
+        TemplateClient c2 = TemplateClient.acquire();
+        assertSame(c1, c2);
+
+        TemplateClient.release(c1);
+        assertSame(TemplateClient.acquire(), c1);
+
+        TemplateClient.release(c1);
+        TemplateClient.release(c2);
+
+        // Not shared
+        TemplateClient.release(target);
+        assertNotSame(target, c1);
+
+    }
+
+    @Test
+    public void testExecute_Rejected() throws Exception {
+
+        CompletableFuture<String> future = target.execute("test", 0, new HttpGet("http://localhost"), r -> "foo", Runnable::run);
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        assertEquals(target.getPending("test"), 0);
+        assertEquals(target.getPending("hoge"), 0);
+
+    }
+
+
+    @Test
+    public void testExecute() throws Exception {
+
+        UndertowJaxrsServer server = new UndertowJaxrsServer().start();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "handler"));
+
+        try {
+
+            server.deploy(TemplateContextTest.TestApplication.class);
+
+            HttpGet request = new HttpGet("http://localhost:" + TestPortProvider.getPort() + "/foo");
+
+            CountDownLatch written = new CountDownLatch(1);
+
+            CompletableFuture<String> future = target.execute("test", 1, request,
+                    r -> Thread.currentThread().getName() + ":" + EntityUtils.toString(r.getEntity()),
+                    executor, written::countDown);
+
+            assertEquals(future.get(), "handler:{foo:bar}");
+            assertEquals(written.getCount(), 0L);
+            assertEquals(target.getPending("test"), 0);
+
+            // Handler rejected
+            future = target.execute("test", 1, request, r -> "foo", r -> {
+                throw new RejectedExecutionException("test");
+            });
+
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+
+        target.evict();
+
+    }
+
+}
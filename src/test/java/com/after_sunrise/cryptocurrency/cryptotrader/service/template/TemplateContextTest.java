@@ -1,8 +1,16 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.core.Converter;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Bar;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.StateType;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction.CreateInstruction;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Order;
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
+import com.after_sunrise.cryptocurrency.cryptotrader.service.template.TemplateContext.RequestType;
+import com.google.common.util.concurrent.Futures;
 import org.apache.commons.configuration2.ImmutableConfiguration;
 import org.jboss.resteasy.plugins.server.undertow.UndertowJaxrsServer;
 import org.jboss.resteasy.test.TestPortProvider;
@@ -14,18 +22,22 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Application;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.math.BigDecimal.*;
 import static java.math.RoundingMode.*;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.*;
 
@@ -62,6 +74,16 @@ public class TemplateContextTest {
             throw new IOException("test");
         }
 
+        @GET
+        @Path("/slow")
+        public String getSlow() throws InterruptedException {
+
+            Thread.sleep(1000L);
+
+            return "{slow:bar}";
+
+        }
+
     }
 
     private TemplateContext target;
@@ -127,7 +149,60 @@ public class TemplateContextTest {
     }
 
     @Test
-    public void testRequest() throws IOException {
+    public void testGetNonce() throws Exception {
+
+        doReturn(Instant.ofEpochMilli(1000)).when(target).getNow();
+        assertEquals(target.getNonce(), 1000L);
+        assertEquals(target.getNonce(), 1001L);
+        assertEquals(target.getNonce(), 1002L);
+
+        doReturn(Instant.ofEpochMilli(2000)).when(target).getNow();
+        assertEquals(target.getNonce(), 2000L);
+
+        doReturn(Instant.ofEpochMilli(1500)).when(target).getNow();
+        assertEquals(target.getNonce(), 2001L);
+
+    }
+
+    @Test
+    public void testNotifyListeners() throws Exception {
+
+        List<Key> keys = new ArrayList<>();
+
+        target.notifyListeners("i");
+
+        target.addListener(keys::add);
+        target.addListener(k -> {
+            throw new RuntimeException("test");
+        });
+        target.addListener(null);
+
+        target.notifyListeners("j");
+
+        assertEquals(keys, singletonList(Key.builder().site("test").instrument("j").build()));
+
+    }
+
+    @Test
+    public void testSequence() throws Exception {
+
+        assertEquals(target.sequence(() -> "foo"), "foo");
+
+        try {
+            target.sequence(() -> {
+                throw new IOException("test");
+            });
+            fail();
+        } catch (IOException e) {
+            // Success
+        }
+
+        assertEquals(target.sequence(() -> "bar"), "bar");
+
+    }
+
+    @Test
+    public void testRequest() throws Exception {
 
         UndertowJaxrsServer server = new UndertowJaxrsServer().start();
 
@@ -137,8 +212,40 @@ public class TemplateContextTest {
 
             server.deploy(TestApplication.class);
 
+            doReturn(Duration.ofSeconds(3)).when(target).getTimeout();
             assertEquals(target.request(url + "/foo"), "{foo:bar}");
 
+            // Sequenced requests are held until written, not until the response.
+            Future<String> future = target.sequence(() -> target.requestAsync(RequestType.GET, url + "/slow", null, null));
+            assertFalse(future.isDone());
+            assertEquals(future.get(), "{slow:bar}");
+
+            // Bounded by the queued and pending requests.
+            when(configuration.getInt(endsWith("request.pending"), anyInt())).thenReturn(1);
+            future = target.requestAsync(RequestType.GET, url + "/slow", null, null);
+
+            try {
+                target.requestAsync(RequestType.GET, url + "/foo", null, null).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            assertEquals(future.get(), "{slow:bar}");
+            when(configuration.getInt(endsWith("request.pending"), anyInt())).thenReturn(0);
+
+            // Bounded by the timeout.
+            doReturn(Duration.ofMillis(100)).when(target).getTimeout();
+
+            try {
+                target.request(url + "/slow");
+                fail();
+            } catch (InterruptedIOException e) {
+                // Success
+            }
+
+            doReturn(Duration.ofSeconds(3)).when(target).getTimeout();
+
             try {
                 target.request(url + "/bar");
                 fail();
@@ -146,6 +253,17 @@ public class TemplateContextTest {
                 // Success
             }
 
+            Converter<Reader, String> decoder = r -> new BufferedReader(r).readLine();
+
+            assertEquals(target.request(RequestType.GET, url + "/foo", null, null, decoder), "{foo:bar}");
+
+            try {
+                target.request(RequestType.GET, url + "/bar", null, null, decoder);
+                fail();
+            } catch (IOException e) {
+                // Success
+            }
+
         } finally {
             server.stop();
         }
@@ -220,6 +338,159 @@ public class TemplateContextTest {
 
     }
 
+    @Test(timeOut = 5000L)
+    public void testFindCached_Concurrent() throws Exception {
+
+        Key key1 = Key.builder().instrument("foo").build();
+        Key key2 = Key.builder().instrument("bar").build();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger();
+
+        Callable<BigDecimal> blocking = () -> {
+            count.incrementAndGet();
+            latch.await();
+            return ONE;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+
+            Future<BigDecimal> f1 = executor.submit(() -> target.findCached(BigDecimal.class, key1, blocking));
+            Future<BigDecimal> f2 = executor.submit(() -> target.findCached(BigDecimal.class, key1, blocking));
+
+            while (count.get() == 0) {
+                Thread.sleep(1L);
+            }
+
+            // Different key of the same type must not wait for the pending load.
+            assertEquals(target.findCached(BigDecimal.class, key2, () -> TEN), TEN);
+            assertFalse(f1.isDone());
+            assertFalse(f2.isDone());
+
+            latch.countDown();
+            assertEquals(f1.get(), ONE);
+            assertEquals(f2.get(), ONE);
+            assertEquals(count.get(), 1);
+
+            // Errors release the waiters too.
+            Key key3 = Key.builder().instrument("baz").build();
+            CountDownLatch error = new CountDownLatch(1);
+            Callable<BigDecimal> failing = () -> {
+                count.incrementAndGet();
+                error.await();
+                throw new LinkageError("test");
+            };
+
+            Future<BigDecimal> f3 = executor.submit(() -> target.findCached(BigDecimal.class, key3, failing));
+
+            while (count.get() == 1) {
+                Thread.sleep(1L);
+            }
+
+            Future<BigDecimal> f4 = executor.submit(() -> target.findCached(BigDecimal.class, key3, failing));
+            Thread.sleep(100L);
+
+            error.countDown();
+            assertNull(f4.get());
+            assertEquals(count.get(), 2);
+
+            try {
+                f3.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof LinkageError);
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testFindCached_Stale() throws Exception {
+
+        Key key1 = Key.builder().instrument("foo").timestamp(Instant.ofEpochMilli(1)).build();
+        Key key2 = Key.build(key1).timestamp(Instant.ofEpochMilli(2)).build();
+        Key key3 = Key.build(key1).timestamp(Instant.ofEpochMilli(3)).build();
+
+        Instant now = Instant.ofEpochMilli(1000);
+        doReturn(now).when(target).getNow();
+        doReturn(Duration.ofSeconds(1)).when(target).getStaleness(BigDecimal.class);
+        assertNull(target.getCacheAge(BigDecimal.class, key1));
+
+        CountDownLatch latch = new CountDownLatch(1);
+        Callable<BigDecimal> callable = mock(Callable.class);
+        when(callable.call()).thenReturn(ONE).thenAnswer(i -> {
+            latch.await();
+            return TEN;
+        });
+
+        assertEquals(target.findCached(BigDecimal.class, key1, callable), ONE);
+        verify(callable).call();
+
+        doReturn(now.plusMillis(500)).when(target).getNow();
+        assertEquals(target.getCacheAge(BigDecimal.class, key2), Duration.ofMillis(500));
+
+        // Stale value while refreshing in background.
+        assertEquals(target.findCached(BigDecimal.class, key2, callable), ONE);
+        assertEquals(target.findCached(BigDecimal.class, key2, callable), ONE);
+        latch.countDown();
+
+        while (!TEN.equals(target.findCached(BigDecimal.class, key2, callable))) {
+            Thread.sleep(1L);
+        }
+
+        assertEquals(target.getCacheAge(BigDecimal.class, key2), Duration.ZERO);
+        verify(callable, times(2)).call();
+
+        // Too stale to serve.
+        doReturn(now.plusMillis(5000)).when(target).getNow();
+        doReturn(ONE).when(callable).call();
+        assertEquals(target.findCached(BigDecimal.class, key3, callable), ONE);
+        verify(callable, times(3)).call();
+
+    }
+
+    @Test
+    public void testFindCached_Fresh() throws Exception {
+
+        Key key1 = Key.builder().instrument("foo").timestamp(Instant.ofEpochMilli(1)).build();
+        Key key2 = Key.build(key1).timestamp(Instant.ofEpochMilli(2)).build();
+        Key key3 = Key.build(key1).instrument("bar").build();
+
+        Instant now = Instant.ofEpochMilli(1000);
+        doReturn(now).when(target).getNow();
+        doReturn(Duration.ofSeconds(1)).when(target).getFreshness(BigDecimal.class);
+
+        Callable<BigDecimal> callable = mock(Callable.class);
+        when(callable.call()).thenReturn(ONE, TEN, null);
+
+        // Shared across timestamps.
+        assertEquals(target.findCached(BigDecimal.class, key1, callable), ONE);
+        assertEquals(target.findCached(BigDecimal.class, key2, callable), ONE);
+        verify(callable, times(1)).call();
+
+        // Aged since the load, not since the hit.
+        doReturn(now.plusMillis(500)).when(target).getNow();
+        assertEquals(target.findCached(BigDecimal.class, key2, callable), ONE);
+        assertEquals(target.getCacheAge(BigDecimal.class, key2), Duration.ofMillis(500));
+        verify(callable, times(1)).call();
+
+        // Separated by instrument.
+        assertEquals(target.findCached(BigDecimal.class, key3, callable), TEN);
+        verify(callable, times(2)).call();
+
+        // Expired.
+        doReturn(now.plusMillis(1001)).when(target).getNow();
+        assertNull(target.findCached(BigDecimal.class, key2, callable));
+        assertNull(target.findCached(BigDecimal.class, key1, callable));
+        verify(callable, times(3)).call();
+
+    }
+
     @Test
     public void testRound() {
 
@@ -300,6 +571,160 @@ public class TemplateContextTest {
 
     }
 
+    @Test
+    public void testGetBook() {
+
+        Key key = Key.builder().instrument("foo").build();
+        doReturn(singletonMap(TEN, ONE)).when(target).getAskPrices(key);
+        doReturn(null).when(target).getBidPrices(key);
+
+        Book result = target.getBook(key);
+        assertEquals(result.getAsks().getBestPrice(), TEN);
+        assertEquals(result.getAsks().getBestSize(), 1.0);
+        assertEquals(result.getBids().size(), 0);
+        assertSame(target.getBook(key), result);
+        verify(target, times(1)).getAskPrices(key);
+
+    }
+
+    @Test
+    public void testGetDepth() {
+
+        Key key = Key.builder().instrument("foo").build();
+        Map<BigDecimal, BigDecimal> asks = new HashMap<>();
+        asks.put(new BigDecimal("101"), new BigDecimal("1"));
+        asks.put(new BigDecimal("102"), new BigDecimal("3"));
+        Map<BigDecimal, BigDecimal> bids = new HashMap<>();
+        bids.put(new BigDecimal("99"), new BigDecimal("2"));
+        bids.put(new BigDecimal("98"), new BigDecimal("2"));
+        doReturn(asks).when(target).getAskPrices(key);
+        doReturn(bids).when(target).getBidPrices(key);
+
+        assertEquals(target.getAskDepth(key, new BigDecimal("101.5")), new BigDecimal("1.0"));
+        assertEquals(target.getAskDepth(key, new BigDecimal("100")), new BigDecimal("0.0"));
+        assertEquals(target.getAskDepth(key, null), null);
+        assertEquals(target.getBidDepth(key, new BigDecimal("98")), new BigDecimal("4.0"));
+        assertEquals(target.getBidDepth(key, null), null);
+
+        assertEquals(target.getAskAverage(key, new BigDecimal("2")), new BigDecimal("101.5"));
+        assertEquals(target.getAskAverage(key, new BigDecimal("5")), null);
+        assertEquals(target.getAskAverage(key, null), null);
+        assertEquals(target.getBidAverage(key, new BigDecimal("4")), new BigDecimal("98.5"));
+        assertEquals(target.getBidAverage(key, null), null);
+
+        assertEquals(target.getAskPriceAt(key, new BigDecimal("1.5")), new BigDecimal("102"));
+        assertEquals(target.getAskPriceAt(key, null), null);
+        assertEquals(target.getBidPriceAt(key, new BigDecimal("2")), new BigDecimal("99"));
+        assertEquals(target.getBidPriceAt(key, new BigDecimal("5")), null);
+        assertEquals(target.getBidPriceAt(key, null), null);
+
+        verify(target, times(1)).getAskPrices(key);
+        verify(target, times(1)).getBidPrices(key);
+
+
+        // No book
+        doReturn(null).when(target).getBook(key);
+        assertNull(target.getAskDepth(key, ONE));
+        assertNull(target.getBidDepth(key, ONE));
+        assertNull(target.getAskAverage(key, ONE));
+        assertNull(target.getBidAverage(key, ONE));
+        assertNull(target.getAskPriceAt(key, ONE));
+        assertNull(target.getBidPriceAt(key, ONE));
+        assertNull(target.getAskDepth(null, ONE));
+
+    }
+
+    @Test
+    public void testFindOrders() {
+
+        Key key = Key.builder().instrument("foo").build();
+        Order o1 = mock(Order.class);
+        Order o2 = mock(Order.class);
+        doReturn(o1).when(target).findOrder(key, "i1");
+        doReturn(null).when(target).findOrder(key, "i2");
+        doReturn(o2).when(target).findOrder(key, "i3");
+
+        Map<String, Order> orders = target.findOrders(key, new HashSet<>(Arrays.asList("i1", "i2", "i3", null)));
+        assertEquals(orders.size(), 2);
+        assertSame(orders.get("i1"), o1);
+        assertSame(orders.get("i3"), o2);
+
+        assertEquals(target.findOrders(key, null).size(), 0);
+
+    }
+
+    @Test
+    public void testForEachTrade() {
+
+        Key key = Key.builder().instrument("foo").build();
+        Trade t1 = mock(Trade.class);
+        Trade t2 = mock(Trade.class);
+        Trade t3 = mock(Trade.class);
+        Trade t4 = mock(Trade.class);
+        Trade t5 = mock(Trade.class);
+        when(t1.getTimestamp()).thenReturn(Instant.ofEpochMilli(300));
+        when(t2.getTimestamp()).thenReturn(Instant.ofEpochMilli(100));
+        when(t3.getTimestamp()).thenReturn(null);
+        when(t4.getTimestamp()).thenReturn(Instant.ofEpochMilli(400));
+        when(t5.getTimestamp()).thenReturn(Instant.ofEpochMilli(200));
+        doReturn(Arrays.asList(t1, t2, null, t3, t4, t5)).when(target).listTrades(key, Instant.ofEpochMilli(200));
+        doReturn(Arrays.asList(t1, t2)).when(target).listTrades(key, null);
+
+        List<Trade> values = new ArrayList<>();
+        target.forEachTrade(key, Instant.ofEpochMilli(200), Instant.ofEpochMilli(400), values::add);
+        assertEquals(values, Arrays.asList(t5, t1));
+
+        values.clear();
+        target.forEachTrade(key, null, null, values::add);
+        assertEquals(values, Arrays.asList(t2, t1));
+
+        // No consumer
+        target.forEachTrade(key, null, null, null);
+        verify(target, times(1)).listTrades(key, null);
+
+        // No trades
+        values.clear();
+        doReturn(null).when(target).listTrades(key, null);
+        target.forEachTrade(key, null, null, values::add);
+        assertEquals(values.size(), 0);
+
+    }
+
+    @Test
+    public void testForEachBar() {
+
+        Key key = Key.builder().instrument("foo").build();
+        Trade t1 = mock(Trade.class);
+        Trade t2 = mock(Trade.class);
+        Trade t3 = mock(Trade.class);
+        when(t1.getTimestamp()).thenReturn(Instant.ofEpochMilli(4500));
+        when(t2.getTimestamp()).thenReturn(Instant.ofEpochMilli(5500));
+        when(t3.getTimestamp()).thenReturn(Instant.ofEpochMilli(6000));
+        when(t1.getPrice()).thenReturn(ONE);
+        when(t2.getPrice()).thenReturn(TEN);
+        when(t3.getPrice()).thenReturn(ONE);
+        when(t1.getSize()).thenReturn(ONE);
+        when(t2.getSize()).thenReturn(ONE);
+        when(t3.getSize()).thenReturn(TEN);
+        doReturn(Arrays.asList(t3, t1, t2)).when(target).listTrades(key, Instant.ofEpochMilli(4000));
+
+        List<Bar> values = new ArrayList<>();
+        target.forEachBar(key, Duration.ofSeconds(1), Instant.ofEpochMilli(5000), Instant.ofEpochMilli(7000), values::add);
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getTimestamp(), Instant.ofEpochMilli(5000));
+        assertEquals(values.get(0).getClose(), 1.0);
+        assertEquals(values.get(1).getTimestamp(), Instant.ofEpochMilli(6000));
+        assertEquals(values.get(1).getOpen(), 10.0);
+        assertEquals(values.get(1).getClose(), 1.0);
+        assertEquals(values.get(1).getVolume(), 11.0);
+
+        values.clear();
+        target.forEachBar(key, Duration.ZERO, null, null, values::add);
+        target.forEachBar(key, Duration.ofSeconds(1), null, null, null);
+        assertEquals(values.size(), 0);
+
+    }
+
     @Test
     public void testGetMidPrice() throws Exception {
 
@@ -327,7 +752,7 @@ public class TemplateContextTest {
     public void testInterfaceMethods() throws ReflectiveOperationException {
 
         Set<String> ignores = new HashSet<>(Arrays.asList(
-                "getState", "getMidPrice", "getAskPrices", "getBidPrices"
+                "getState", "getMidPrice", "getAskPrices", "getBidPrices", "findOrders"
         ));
 
         for (Method m : Context.class.getMethods()) {
@@ -350,4 +775,82 @@ public class TemplateContextTest {
 
     }
 
+
+    @Test
+    public void testExecuteAsync() throws Exception {
+
+        assertEquals(target.executeAsync(() -> "foo").get(3, TimeUnit.SECONDS), "foo");
+
+        CompletableFuture<String> future = target.executeAsync(() -> {
+            throw new IOException("test");
+        });
+
+        try {
+            future.get(3, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        target.close();
+        assertTrue(target.executeAsync(() -> "foo").isCompletedExceptionally());
+
+    }
+
+    @Test
+    public void testHandleBatches() throws Exception {
+
+        CreateInstruction i1 = CreateInstruction.builder().price(ONE).build();
+        CreateInstruction i2 = CreateInstruction.builder().price(ONE).build();
+        CreateInstruction i3 = CreateInstruction.builder().price(ONE).build();
+        CreateInstruction i4 = CreateInstruction.builder().build(); // Invalid
+        Set<CreateInstruction> instructions = new LinkedHashSet<>(Arrays.asList(i1, null, i2, i3, i4));
+
+        List<List<CreateInstruction>> batches = new ArrayList<>();
+
+        Map<CreateInstruction, String> results = target.handleBatches(instructions, 2, i -> i.getPrice() != null, b -> {
+
+            batches.add(b);
+
+            if (b.contains(i3)) {
+                throw new IOException("test");
+            }
+
+            return CompletableFuture.completedFuture(singletonMap(i1, "id1")); // i2 missing
+
+        });
+
+        assertEquals(batches, Arrays.asList(Arrays.asList(i1, i2), singletonList(i3)));
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(i1), "id1");
+        assertNull(results.get(i2));
+        assertNull(results.get(i3));
+        assertNull(results.get(i4));
+
+        // Failed future, with minimum batch size
+        batches.clear();
+        results = target.handleBatches(instructions, 0, i -> i.getPrice() != null, b -> {
+
+            batches.add(b);
+
+            if (b.contains(i2)) {
+                return Futures.immediateFailedFuture(new IOException("test"));
+            }
+
+            return CompletableFuture.completedFuture(singletonMap(b.get(0), "id"));
+
+        });
+
+        assertEquals(batches.size(), 3);
+        assertEquals(results.size(), 4);
+        assertEquals(results.get(i1), "id");
+        assertNull(results.get(i2));
+        assertEquals(results.get(i3), "id");
+        assertNull(results.get(i4));
+
+        // No input
+        assertEquals(target.handleBatches(null, 1, i -> true, b -> null).size(), 0);
+
+    }
+
 }
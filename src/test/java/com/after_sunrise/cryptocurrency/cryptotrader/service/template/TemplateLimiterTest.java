@@ -0,0 +1,171 @@
+package com.after_sunrise.cryptocurrency.cryptotrader.service.template;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.1
+ */
+public class TemplateLimiterTest {
+
+    private TemplateLimiter target;
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        executor = Executors.newCachedThreadPool();
+
+        target = new TemplateLimiter(executor);
+
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubmit_Unlimited() throws Exception {
+
+        List<String> results = new ArrayList<>();
+
+        target.submit(0, 0, false, () -> results.add("a"));
+        target.submit(0, 0, true, () -> results.add("b"));
+        target.submit(0, 0, false, () -> results.add("c"));
+
+        assertEquals(results, asList("a", "b", "c"));
+        assertEquals(target.getQueueSize(), 0);
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testSubmit_Priority() throws Exception {
+
+        List<String> results = synchronizedList(new ArrayList<>());
+
+        CountDownLatch latch = new CountDownLatch(3);
+
+        target.submit(10, 1, false, () -> {
+            results.add("a");
+            latch.countDown();
+        });
+
+        target.submit(10, 1, false, () -> {
+            results.add("b");
+            latch.countDown();
+        });
+
+        target.submit(10, 1, true, () -> {
+            results.add("c");
+            latch.countDown();
+        });
+
+        assertEquals(results, asList("a"));
+        assertEquals(target.getQueueSize(), 2);
+
+        assertTrue(latch.await(3, SECONDS));
+        assertEquals(results, asList("a", "c", "b"));
+        assertEquals(target.getQueueSize(), 0);
+        assertTrue(target.getLastWait().compareTo(Duration.ZERO) > 0);
+
+    }
+
+
+    @Test(timeOut = 5000L)
+    public void testSubmit_Serial() throws Exception {
+
+        List<String> results = synchronizedList(new ArrayList<>());
+
+        CountDownLatch started = new CountDownLatch(1);
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> future = executor.submit(() -> target.submit(0, 0, false, () -> {
+
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            results.add("a:" + Thread.currentThread().getName());
+
+        }));
+
+        assertTrue(started.await(3, SECONDS));
+
+        // Queued behind the running dispatcher, instead of running in parallel.
+        target.submit(0, 0, true, () -> results.add("b:" + Thread.currentThread().getName()));
+        assertEquals(results.size(), 0);
+
+        release.countDown();
+        future.get();
+        assertEquals(results.size(), 2);
+        assertTrue(results.get(0).startsWith("a:"));
+        assertEquals(results.get(1), "b:" + results.get(0).substring(2));
+
+    }
+
+    @Test(timeOut = 5000L)
+    public void testSubmit_Rejected() throws Exception {
+
+        AtomicInteger rejects = new AtomicInteger(1);
+
+        target = new TemplateLimiter(r -> {
+
+            if (rejects.getAndDecrement() > 0) {
+                throw new RejectedExecutionException("test");
+            }
+
+            executor.execute(r);
+
+        });
+
+        List<String> results = synchronizedList(new ArrayList<>());
+
+        List<Throwable> failures = synchronizedList(new ArrayList<>());
+
+        target.submit(10, 1, false, () -> results.add("a"), failures::add);
+        target.submit(10, 1, false, () -> results.add("b"), failures::add);
+        assertEquals(results, asList("a"));
+        assertEquals(target.getQueueSize(), 1);
+
+        // Queued task is failed, instead of being left behind.
+        while (failures.isEmpty()) {
+            Thread.sleep(10L);
+        }
+
+        assertTrue(failures.get(0) instanceof RejectedExecutionException);
+        assertEquals(target.getQueueSize(), 0);
+
+        // Rescheduled on the next submission.
+        CountDownLatch latch = new CountDownLatch(1);
+        target.submit(10, 1, false, () -> results.add("c"), failures::add);
+        target.submit(10, 1, false, latch::countDown, failures::add);
+        assertTrue(latch.await(3, SECONDS));
+        assertEquals(failures.size(), 1);
+
+    }
+
+}
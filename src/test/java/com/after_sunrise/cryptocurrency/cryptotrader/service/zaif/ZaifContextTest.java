@@ -1,5 +1,6 @@
 package com.after_sunrise.cryptocurrency.cryptotrader.service.zaif;
 
+import com.after_sunrise.cryptocurrency.cryptotrader.framework.Book;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Context.Key;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Instruction;
 import com.after_sunrise.cryptocurrency.cryptotrader.framework.Trade;
@@ -27,10 +28,12 @@ import static com.after_sunrise.cryptocurrency.cryptotrader.service.zaif.ZaifSer
 import static com.after_sunrise.cryptocurrency.cryptotrader.service.zaif.ZaifService.ProductType.BTC_JPY;
 import static com.google.common.io.Resources.getResource;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toSet;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 
 /**
  * @author takanori.takase
@@ -47,6 +50,8 @@ public class ZaifContextTest {
 
         doReturn(null).when(target).request(any(), any(), any(), any());
 
+        doReturn(null).when(target).request(any(), any(), any(), any(), any());
+
     }
 
     @AfterMethod
@@ -129,19 +134,19 @@ public class ZaifContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        ZaifDepth value = mock(ZaifDepth.class);
-        when(value.getAskPrices()).thenReturn(new TreeMap<>());
-        value.getAskPrices().put(BigDecimal.ONE, BigDecimal.TEN);
+        Book value = Book.of(singletonMap(BigDecimal.ONE, BigDecimal.TEN), null);
 
         doReturn(Optional.of(value)).when(target).queryDepth(key);
         assertEquals(target.getBestAskPrice(key), BigDecimal.ONE);
-        assertEquals(target.getBestAskSize(key), BigDecimal.TEN);
-        assertEquals(target.getAskPrices(key), value.getAskPrices());
+        assertEquals(target.getBestAskSize(key), new BigDecimal("10.0"));
+        assertEquals(target.getAskPrices(key), value.getAsks().asMap());
+        assertSame(target.getBook(key), value);
 
         doReturn(Optional.empty()).when(target).queryDepth(key);
         assertNull(target.getBestAskPrice(key));
         assertNull(target.getBestAskSize(key));
         assertNull(target.getAskPrices(key));
+        assertNull(target.getBook(key));
 
     }
 
@@ -150,13 +155,11 @@ public class ZaifContextTest {
 
         Key key = Key.builder().instrument("foo").build();
 
-        ZaifDepth value = mock(ZaifDepth.class);
-        when(value.getBidPrices()).thenReturn(new TreeMap<>());
-        value.getBidPrices().put(BigDecimal.ONE, BigDecimal.TEN);
+        Book value = Book.of(null, singletonMap(BigDecimal.ONE, BigDecimal.TEN));
 
         doReturn(Optional.of(value)).when(target).queryDepth(key);
         assertEquals(target.getBestBidPrice(key), BigDecimal.ONE);
-        assertEquals(target.getBestBidSize(key), BigDecimal.TEN);
+        assertEquals(target.getBestBidSize(key), new BigDecimal("10.0"));
 
         doReturn(Optional.empty()).when(target).queryDepth(key);
         assertNull(target.getBestBidPrice(key));